@@ -0,0 +1,13 @@
+package net.vasilydemin.customercontacts.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class CustomerContactsReactiveApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(CustomerContactsReactiveApplication.class, args);
+    }
+
+}
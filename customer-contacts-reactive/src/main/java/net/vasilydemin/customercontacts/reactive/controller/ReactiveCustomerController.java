@@ -0,0 +1,160 @@
+package net.vasilydemin.customercontacts.reactive.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import net.vasilydemin.customercontacts.dto.CustomerDto;
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
+import net.vasilydemin.customercontacts.dto.EmailDto;
+import net.vasilydemin.customercontacts.dto.PhoneDto;
+import net.vasilydemin.customercontacts.reactive.service.ReactiveCustomerService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Read end-points of customer-contacts CustomerController on WebFlux, same paths and same responses
+ */
+@RestController
+@RequestMapping("/customer")
+@Tag(name = "Customers", description = "Customers read API")
+public class ReactiveCustomerController {
+
+    private final ReactiveCustomerService customerService;
+
+    public ReactiveCustomerController(ReactiveCustomerService customerService) {
+        this.customerService = customerService;
+    }
+
+    @Operation(
+            summary = "Stream all customers ordered by id as NDJSON (one JSON object per line). Customers are read " +
+                    "from the database as fast as the client takes them",
+            operationId = "streamCustomers",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                                    schema = @Schema(implementation = CustomerDto.class)
+                            )
+                    ),
+            },
+            tags = "Customers"
+    )
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<CustomerDto> streamCustomers(@Parameter(name = "after", description = "Customers with ids greater " +
+            "than this are returned", example = "0") @RequestParam(value = "after", defaultValue = "0") Long after) {
+        return customerService.streamCustomers(after);
+    }
+
+    @Operation(
+            summary = "Read customer from the database by id",
+            operationId = "readCustomerById",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = CustomerDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "404",
+                            description = "Not Found",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+            },
+            tags = "Customers"
+    )
+    @GetMapping("/{id}")
+    public Mono<CustomerDto> readCustomerById(@Parameter(name = "id", description = "Customer id", example = "1",
+            required = true) @PathVariable Long id) {
+        return customerService.readCustomerById(id);
+    }
+
+    @Operation(
+            summary = "Read all emails owned by customer from the database by customer id",
+            operationId = "readAllCustomerEmails",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = EmailDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "404",
+                            description = "Not Found",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+            },
+            tags = "Customers"
+    )
+    @GetMapping("/{id}/allemails")
+    public Flux<EmailDto> readAllEmailsByCustomerId(@PathVariable Long id) {
+        return customerService.findAllEmailsByCustomerId(id);
+    }
+
+    @Operation(
+            summary = "Read all phones owned by customer from the database by customer id",
+            operationId = "readAllCustomerPhones",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = PhoneDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "404",
+                            description = "Not Found",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+            },
+            tags = "Customers"
+    )
+    @GetMapping("/{id}/allphones")
+    public Flux<PhoneDto> readAllPhonesByCustomerId(@PathVariable Long id) {
+        return customerService.findAllPhonesByCustomerId(id);
+    }
+
+    @Operation(
+            summary = "Read all customer contact information from the database by customer id",
+            operationId = "readAllCustomerContacts",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = CustomerWithContactsDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "404",
+                            description = "Not Found",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+            },
+            tags = "Customers"
+    )
+    @GetMapping("/{id}/allcontacts")
+    public Mono<CustomerWithContactsDto> readAllContactsByCustomerId(@PathVariable Long id) {
+        return customerService.readAllContactsByCustomerId(id);
+    }
+
+}
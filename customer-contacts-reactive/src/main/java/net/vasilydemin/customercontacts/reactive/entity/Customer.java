@@ -0,0 +1,23 @@
+package net.vasilydemin.customercontacts.reactive.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * Customer entity class (id, name), read-only mapping of table customers
+ */
+@Table("customers")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class Customer {
+
+    @Id
+    private Long id;
+
+    private String name;
+
+}
@@ -0,0 +1,25 @@
+package net.vasilydemin.customercontacts.reactive.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * Customer email entity class (id, customer id, email), read-only mapping of table emails
+ */
+@Table("emails")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class Email {
+
+    @Id
+    private Long id;
+
+    private Long customerId;
+
+    private String email;
+
+}
@@ -0,0 +1,25 @@
+package net.vasilydemin.customercontacts.reactive.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * Customer phone entity class (id, customer id, phone), read-only mapping of table phones
+ */
+@Table("phones")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class Phone {
+
+    @Id
+    private Long id;
+
+    private Long customerId;
+
+    private String phone;
+
+}
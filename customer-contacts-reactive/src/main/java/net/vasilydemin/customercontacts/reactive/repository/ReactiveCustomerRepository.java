@@ -0,0 +1,28 @@
+package net.vasilydemin.customercontacts.reactive.repository;
+
+import net.vasilydemin.customercontacts.dto.CustomerDto;
+import net.vasilydemin.customercontacts.reactive.entity.Customer;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Customer repository on R2DBC. Queries return DTOs of customer-contacts, columns are mapped to DTO constructor
+ * parameters by name
+ */
+public interface ReactiveCustomerRepository extends ReactiveCrudRepository<Customer, Long> {
+
+    @Query("SELECT id, name FROM customers WHERE id = :id")
+    Mono<CustomerDto> findCustomerDtoById(@Param("id") Long id);
+
+    /**
+     * Customers after specified id ordered by id. Rows are fetched from the database cursor as the subscriber
+     * requests them (fetch size is set by spring.r2dbc.properties.fetchSize), so a slow client slows down the
+     * query instead of rows piling up in memory
+     */
+    @Query("SELECT id, name FROM customers WHERE id > :id ORDER BY id")
+    Flux<CustomerDto> findAllCustomerDtosByIdGreaterThan(@Param("id") Long id);
+
+}
@@ -0,0 +1,18 @@
+package net.vasilydemin.customercontacts.reactive.repository;
+
+import net.vasilydemin.customercontacts.dto.EmailDto;
+import net.vasilydemin.customercontacts.reactive.entity.Email;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Email repository on R2DBC. Queries return DTOs of customer-contacts
+ */
+public interface ReactiveEmailRepository extends ReactiveCrudRepository<Email, Long> {
+
+    @Query("SELECT id, customer_id, email FROM emails WHERE customer_id = :customerId ORDER BY id")
+    Flux<EmailDto> findAllEmailDtosByCustomerId(@Param("customerId") Long customerId);
+
+}
@@ -0,0 +1,18 @@
+package net.vasilydemin.customercontacts.reactive.repository;
+
+import net.vasilydemin.customercontacts.dto.PhoneDto;
+import net.vasilydemin.customercontacts.reactive.entity.Phone;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Phone repository on R2DBC. Queries return DTOs of customer-contacts
+ */
+public interface ReactivePhoneRepository extends ReactiveCrudRepository<Phone, Long> {
+
+    @Query("SELECT id, customer_id, phone FROM phones WHERE customer_id = :customerId ORDER BY id")
+    Flux<PhoneDto> findAllPhoneDtosByCustomerId(@Param("customerId") Long customerId);
+
+}
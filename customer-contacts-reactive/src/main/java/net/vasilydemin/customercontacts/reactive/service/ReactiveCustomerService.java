@@ -0,0 +1,112 @@
+package net.vasilydemin.customercontacts.reactive.service;
+
+import net.vasilydemin.customercontacts.constant.UserMessages;
+import net.vasilydemin.customercontacts.dto.CustomerDto;
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
+import net.vasilydemin.customercontacts.dto.EmailDto;
+import net.vasilydemin.customercontacts.dto.PhoneDto;
+import net.vasilydemin.customercontacts.exception.CustomerWithSuchIdNotFoundException;
+import net.vasilydemin.customercontacts.reactive.repository.ReactiveCustomerRepository;
+import net.vasilydemin.customercontacts.reactive.repository.ReactiveEmailRepository;
+import net.vasilydemin.customercontacts.reactive.repository.ReactivePhoneRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Read operations of customer-contacts without blocking threads: the methods return publishers and the queries are
+ * executed when the response is subscribed to
+ */
+@Service
+public class ReactiveCustomerService {
+
+    private final Logger logger = LoggerFactory.getLogger(ReactiveCustomerService.class);
+
+    private final ReactiveCustomerRepository customerRepository;
+    private final ReactiveEmailRepository emailRepository;
+    private final ReactivePhoneRepository phoneRepository;
+
+    public ReactiveCustomerService(ReactiveCustomerRepository customerRepository,
+                                   ReactiveEmailRepository emailRepository,
+                                   ReactivePhoneRepository phoneRepository) {
+        this.customerRepository = customerRepository;
+        this.emailRepository = emailRepository;
+        this.phoneRepository = phoneRepository;
+    }
+
+    /**
+     * Read customer with selected id from the database
+     * @param id Customer id
+     * @return CustomerDto object with found data
+     * @throws CustomerWithSuchIdNotFoundException (as error signal) if customer with such id was not found
+     */
+    public Mono<CustomerDto> readCustomerById(Long id) {
+        return customerRepository.findCustomerDtoById(id)
+                .switchIfEmpty(Mono.error(() -> customerWithSuchIdNotFound(id)));
+    }
+
+    /**
+     * Streams customers ordered by id. Next rows are read from the database only when the client has taken the
+     * previous ones
+     * @param afterId customers with ids greater than this are returned
+     * @return CustomerDto objects
+     */
+    public Flux<CustomerDto> streamCustomers(Long afterId) {
+        return customerRepository.findAllCustomerDtosByIdGreaterThan(afterId);
+    }
+
+    /**
+     * Read all emails owned by customer
+     * @param customerId Customer id
+     * @return EmailDto objects
+     * @throws CustomerWithSuchIdNotFoundException (as error signal) if customer with such id was not found
+     */
+    public Flux<EmailDto> findAllEmailsByCustomerId(Long customerId) {
+        return checkCustomerExists(customerId)
+                .thenMany(Flux.defer(() -> emailRepository.findAllEmailDtosByCustomerId(customerId)));
+    }
+
+    /**
+     * Read all phones owned by customer
+     * @param customerId Customer id
+     * @return PhoneDto objects
+     * @throws CustomerWithSuchIdNotFoundException (as error signal) if customer with such id was not found
+     */
+    public Flux<PhoneDto> findAllPhonesByCustomerId(Long customerId) {
+        return checkCustomerExists(customerId)
+                .thenMany(Flux.defer(() -> phoneRepository.findAllPhoneDtosByCustomerId(customerId)));
+    }
+
+    /**
+     * Read customer with all his emails and phones. Customer, emails and phones are read by three queries at once,
+     * each on its own connection of the pool; if customer doesn't exist the other queries are cancelled
+     * @param id Customer id
+     * @return CustomerWithContactsDto object
+     * @throws CustomerWithSuchIdNotFoundException (as error signal) if customer with such id was not found
+     */
+    public Mono<CustomerWithContactsDto> readAllContactsByCustomerId(Long id) {
+        return Mono.zip(readCustomerById(id),
+                emailRepository.findAllEmailDtosByCustomerId(id).map(EmailDto::getEmail).collectList(),
+                phoneRepository.findAllPhoneDtosByCustomerId(id).map(PhoneDto::getPhone).collectList())
+                .map(contacts -> new CustomerWithContactsDto(contacts.getT1().getId(), contacts.getT1().getName(),
+                        contacts.getT2(), contacts.getT3()));
+    }
+
+    /**
+     * Completes empty if customer exists. Queries following it must be created lazily (Flux.defer), otherwise the
+     * repository is called when the pipeline is assembled, even for a missing customer
+     */
+    private Mono<Void> checkCustomerExists(Long id) {
+        return customerRepository.existsById(id)
+                .flatMap(exists -> exists ? Mono.<Void>empty() : Mono.error(customerWithSuchIdNotFound(id)));
+    }
+
+    private CustomerWithSuchIdNotFoundException customerWithSuchIdNotFound(Long id) {
+        String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage().replace("%id%", id.toString());
+        logger.error(msg);
+        return new CustomerWithSuchIdNotFoundException(msg);
+    }
+
+}
@@ -0,0 +1,87 @@
+package net.vasilydemin.customercontacts.reactive;
+
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Standalone load generator for comparing the read API of customer-contacts (MVC, port 8080) and
+ * customer-contacts-reactive (WebFlux, port 8081) over the same database; not a test, surefire does not run it.
+ * Sends requests to path with random customer ids from 1 to maxid keeping concurrency of them in flight over as
+ * many connections, reports throughput, latency percentiles and the number of failed (not 2xx) requests.
+ * Run both applications against the same PostgreSQL, then after mvn test-compile, e.g.
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt;
+ * net.vasilydemin.customercontacts.reactive.ReadApiLoadBenchmark http://localhost:8081 /customer/{id}/allcontacts
+ * 5000 200000 100000
+ */
+public class ReadApiLoadBenchmark {
+
+    public static void main(String[] args) {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8081";
+        String path = args.length > 1 ? args[1] : "/customer/{id}/allcontacts";
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 200_000;
+        long maxId = args.length > 4 ? Long.parseLong(args[4]) : 100_000L;
+
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("benchmark")
+                .maxConnections(concurrency)
+                .pendingAcquireMaxCount(-1)
+                .pendingAcquireTimeout(Duration.ofMinutes(1))
+                .build();
+        WebClient webClient = WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                .build();
+        try {
+            // warm-up of both sides
+            run(webClient, path, concurrency, Math.max(1, requests / 10), maxId);
+            long start = System.nanoTime();
+            long[] latencies = run(webClient, path, concurrency, requests, maxId);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long failed = Arrays.stream(latencies).filter(latency -> latency < 0).count();
+            long[] succeeded = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+            System.out.printf("%s%s: %d requests, concurrency %d: %.0f requests/s, p50 %.1f ms, p99 %.1f ms, "
+                            + "max %.1f ms, %d failed%n",
+                    baseUrl, path, requests, concurrency, requests / seconds, percentile(succeeded, 0.5),
+                    percentile(succeeded, 0.99), percentile(succeeded, 1.0), failed);
+        } finally {
+            connectionProvider.dispose();
+        }
+    }
+
+    /**
+     * @return latency of every request in nanoseconds, -1 for failed ones
+     */
+    private static long[] run(WebClient webClient, String path, int concurrency, int requests, long maxId) {
+        long[] latencies = new long[requests];
+        long[] ids = new SplittableRandom(1).longs(requests, 1, maxId + 1).toArray();
+        Flux.range(0, requests)
+                .flatMap(i -> {
+                    long start = System.nanoTime();
+                    return webClient.get().uri(path, ids[i])
+                            .exchangeToMono(response -> response.releaseBody()
+                                    .thenReturn(response.statusCode().is2xxSuccessful()))
+                            .onErrorReturn(false)
+                            .doOnNext(ok -> latencies[i] = ok ? System.nanoTime() - start : -1)
+                            .then(Mono.empty());
+                }, concurrency)
+                .blockLast();
+        return latencies;
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        if(sortedLatencies.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, index)] / 1e6;
+    }
+
+}
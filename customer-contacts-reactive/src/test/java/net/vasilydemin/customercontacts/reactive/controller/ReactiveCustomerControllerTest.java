@@ -0,0 +1,132 @@
+package net.vasilydemin.customercontacts.reactive.controller;
+
+import net.vasilydemin.customercontacts.dto.CustomerDto;
+import net.vasilydemin.customercontacts.dto.EmailDto;
+import net.vasilydemin.customercontacts.dto.PhoneDto;
+import net.vasilydemin.customercontacts.reactive.repository.ReactiveCustomerRepository;
+import net.vasilydemin.customercontacts.reactive.repository.ReactiveEmailRepository;
+import net.vasilydemin.customercontacts.reactive.repository.ReactivePhoneRepository;
+import net.vasilydemin.customercontacts.reactive.service.ReactiveCustomerService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@WebFluxTest(controllers = ReactiveCustomerController.class)
+public class ReactiveCustomerControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private ReactiveCustomerRepository customerRepository;
+
+    @MockBean
+    private ReactiveEmailRepository emailRepository;
+
+    @MockBean
+    private ReactivePhoneRepository phoneRepository;
+
+    @SpyBean
+    private ReactiveCustomerService customerService;
+
+    @Test
+    public void readCustomerByIdTest() {
+        when(customerRepository.findCustomerDtoById(1L)).thenReturn(Mono.just(new CustomerDto(1L, "Vasily Demin")));
+        when(customerRepository.findCustomerDtoById(2L)).thenReturn(Mono.empty());
+
+        webTestClient.get().uri("/customer/{id}", 1L)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().json("{'id':1,'name':'Vasily Demin'}");
+        webTestClient.get().uri("/customer/{id}", 2L)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void readAllEmailsByCustomerIdTest() {
+        when(customerRepository.existsById(1L)).thenReturn(Mono.just(true));
+        when(customerRepository.existsById(2L)).thenReturn(Mono.just(false));
+        when(emailRepository.findAllEmailDtosByCustomerId(1L)).thenReturn(Flux.just(
+                new EmailDto(1L, 1L, "vvdemin@t2.ru"), new EmailDto(2L, 1L, "vasily@mail.org")));
+
+        webTestClient.get().uri("/customer/{id}/allemails", 1L)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().json("[{'id':1,'customerId':1,'email':'vvdemin@t2.ru'}," +
+                        "{'id':2,'customerId':1,'email':'vasily@mail.org'}]");
+        webTestClient.get().uri("/customer/{id}/allemails", 2L)
+                .exchange()
+                .expectStatus().isNotFound();
+        verify(emailRepository, never()).findAllEmailDtosByCustomerId(2L);
+    }
+
+    @Test
+    public void readAllPhonesByCustomerIdTest() {
+        when(customerRepository.existsById(1L)).thenReturn(Mono.just(true));
+        when(customerRepository.existsById(2L)).thenReturn(Mono.just(false));
+        when(phoneRepository.findAllPhoneDtosByCustomerId(1L)).thenReturn(Flux.just(
+                new PhoneDto(1L, 1L, "+79012345678")));
+
+        webTestClient.get().uri("/customer/{id}/allphones", 1L)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().json("[{'id':1,'customerId':1,'phone':'+79012345678'}]");
+        webTestClient.get().uri("/customer/{id}/allphones", 2L)
+                .exchange()
+                .expectStatus().isNotFound();
+        verify(phoneRepository, never()).findAllPhoneDtosByCustomerId(2L);
+    }
+
+    @Test
+    public void readAllContactsByCustomerIdTest() {
+        when(customerRepository.findCustomerDtoById(1L)).thenReturn(Mono.just(new CustomerDto(1L, "Vasily Demin")));
+        when(customerRepository.findCustomerDtoById(2L)).thenReturn(Mono.empty());
+        when(emailRepository.findAllEmailDtosByCustomerId(1L)).thenReturn(Flux.just(
+                new EmailDto(1L, 1L, "vvdemin@t2.ru")));
+        when(emailRepository.findAllEmailDtosByCustomerId(2L)).thenReturn(Flux.empty());
+        when(phoneRepository.findAllPhoneDtosByCustomerId(1L)).thenReturn(Flux.just(
+                new PhoneDto(1L, 1L, "+79012345678"), new PhoneDto(2L, 1L, "+79102345678")));
+        when(phoneRepository.findAllPhoneDtosByCustomerId(2L)).thenReturn(Flux.empty());
+
+        webTestClient.get().uri("/customer/{id}/allcontacts", 1L)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().json("{'id':1,'name':'Vasily Demin','emails':['vvdemin@t2.ru']," +
+                        "'phones':['+79012345678','+79102345678']}");
+        webTestClient.get().uri("/customer/{id}/allcontacts", 2L)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void streamCustomersTest() {
+        when(customerRepository.findAllCustomerDtosByIdGreaterThan(2L)).thenReturn(
+                Flux.range(3, 10_000).map(id -> new CustomerDto((long) id, "Customer " + id)));
+
+        Flux<String> customers = webTestClient.get().uri("/customer?after={after}", 2L)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(String.class)
+                .getResponseBody();
+
+        StepVerifier.create(customers)
+                .expectNext("{\"id\":3,\"name\":\"Customer 3\"}")
+                .expectNextCount(9_999)
+                .verifyComplete();
+    }
+
+}
@@ -2,8 +2,10 @@ package net.vasilydemin.customercontacts;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class CustomerContactsApplication {
 
     public static void main(String[] args) {
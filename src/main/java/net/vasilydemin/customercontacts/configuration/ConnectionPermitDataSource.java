@@ -0,0 +1,150 @@
+package net.vasilydemin.customercontacts.configuration;
+
+import net.vasilydemin.customercontacts.dto.ConnectionPermitStatsDto;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Data source which lets at most permits connections be open at once. With virtual threads every request has its
+ * own thread, so thousands of them may ask for a connection together; they wait for a permit in a fair queue
+ * instead of piling up inside the connection pool, and time spent waiting is counted.
+ * Permit is taken before the connection is requested from the target data source and is returned when the
+ * connection is closed
+ */
+public class ConnectionPermitDataSource extends DelegatingDataSource {
+
+    private final Semaphore semaphore;
+    private final int permits;
+    private final long timeoutMillis;
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder waited = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param permits maximum number of open connections, usually maximum size of the connection pool
+     * @param timeoutMillis how long getConnection waits for a permit before it fails
+     */
+    public ConnectionPermitDataSource(DataSource targetDataSource, int permits, long timeoutMillis) {
+        super(targetDataSource);
+        this.semaphore = new Semaphore(permits, true);
+        this.permits = permits;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return withPermit(() -> obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return withPermit(() -> obtainTargetDataSource().getConnection(username, password));
+    }
+
+    public ConnectionPermitStatsDto getStats() {
+        long count = acquired.sum();
+        long timeouts = timedOut.sum();
+        return new ConnectionPermitStatsDto(true, permits, semaphore.availablePermits(), semaphore.getQueueLength(),
+                count, waited.sum(), timeouts, count + timeouts == 0 ? 0 : waitNanos.sum() / 1e6 / (count + timeouts),
+                maxWaitNanos.get() / 1e6);
+    }
+
+    private interface ConnectionSupplier {
+        Connection get() throws SQLException;
+    }
+
+    private Connection withPermit(ConnectionSupplier connectionSupplier) throws SQLException {
+        acquire();
+        Connection connection;
+        try {
+            connection = connectionSupplier.get();
+        } catch (SQLException | RuntimeException | Error e) {
+            semaphore.release();
+            throw e;
+        }
+        return releasingOnClose(connection);
+    }
+
+    /**
+     * Takes a permit without waiting if nobody waits already, otherwise waits in the queue up to timeoutMillis
+     */
+    private void acquire() throws SQLException {
+        try {
+            if(!semaphore.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                long start = System.nanoTime();
+                boolean acquiredInTime = semaphore.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+                long wait = System.nanoTime() - start;
+                waitNanos.add(wait);
+                maxWaitNanos.accumulate(wait);
+                if(!acquiredInTime) {
+                    timedOut.increment();
+                    throw new SQLTransientConnectionException("Connection permit is not available, request timed out "
+                            + "after " + timeoutMillis + "ms (" + semaphore.getQueueLength() + " waiting)");
+                }
+                waited.increment();
+            }
+            acquired.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for connection permit", e);
+        }
+    }
+
+    /**
+     * @return proxy of the connection which returns the permit on the first close
+     */
+    private Connection releasingOnClose(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+                new Class<?>[] {ConnectionProxy.class}, (proxy, method, args) -> {
+                    switch(method.getName()) {
+                        case "equals" -> {
+                            return proxy == args[0];
+                        }
+                        case "hashCode" -> {
+                            return System.identityHashCode(proxy);
+                        }
+                        case "getTargetConnection" -> {
+                            return connection;
+                        }
+                        case "isClosed" -> {
+                            if(released.get()) {
+                                return true;
+                            }
+                        }
+                        case "close" -> {
+                            if(released.compareAndSet(false, true)) {
+                                try {
+                                    connection.close();
+                                } finally {
+                                    semaphore.release();
+                                }
+                            }
+                            return null;
+                        }
+                        default -> {
+                        }
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,63 @@
+package net.vasilydemin.customercontacts.configuration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lag guard for read replicas: periodically compares WAL position of the primary with WAL replay position of every
+ * replica and excludes replicas lagging more than application.datasource.replicas.maxlagbytes from routing.
+ * Replicas which can't be reached are excluded as well
+ */
+public class ReplicaLagMonitor {
+
+    private final Logger logger = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private final ReplicaRoutingDataSource routingDataSource;
+    private final JdbcTemplate primary;
+    private final Map<String, JdbcTemplate> replicas = new LinkedHashMap<>();
+    private final long maxLagBytes;
+
+    public ReplicaLagMonitor(ReplicaRoutingDataSource routingDataSource, long maxLagBytes) {
+        this.routingDataSource = routingDataSource;
+        Map<Object, DataSource> dataSources = routingDataSource.getResolvedDataSources();
+        this.primary = new JdbcTemplate(dataSources.get(ReplicaRoutingDataSource.PRIMARY));
+        for(String replica : routingDataSource.getReplicas()) {
+            replicas.put(replica, new JdbcTemplate(dataSources.get(replica)));
+        }
+        this.maxLagBytes = maxLagBytes;
+    }
+
+    @Scheduled(fixedDelayString = "${application.datasource.replicas.lagcheckinterval}")
+    public void checkReplicationLag() {
+        String primaryPosition;
+        try {
+            primaryPosition = primary.queryForObject("SELECT pg_current_wal_lsn()::text", String.class);
+        } catch (RuntimeException e) {
+            logger.error("Can't read WAL position of the primary database", e);
+            return;
+        }
+        replicas.forEach((name, replica) -> {
+            boolean available;
+            try {
+                Long lag = replica.queryForObject(
+                        "SELECT pg_wal_lsn_diff(?::pg_lsn, pg_last_wal_replay_lsn())::bigint", Long.class,
+                        primaryPosition);
+                available = lag != null && lag <= maxLagBytes;
+                if(!available) {
+                    logger.warn("Replica {} lags behind the primary by {} bytes, reads are routed elsewhere", name, lag);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Can't read WAL replay position of replica {}", name, e);
+                available = false;
+            }
+            routingDataSource.setReplicaAvailable(name, available);
+        });
+    }
+
+}
@@ -0,0 +1,101 @@
+package net.vasilydemin.customercontacts.configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read replicas support. Enabled with application.datasource.replicas.enabled=true, replicas are listed in
+ * application.datasource.replicas.urls (comma separated JDBC urls), they use the same credentials and pool
+ * settings as the primary database (spring.datasource.*)
+ */
+@Configuration
+@ConditionalOnProperty(name = "application.datasource.replicas.enabled", havingValue = "true")
+public class ReplicaRoutingConfiguration {
+
+    @Value("${application.datasource.replicas.urls}")
+    private List<String> replicaUrls;
+
+    @Value("${application.datasource.replicas.maxlagbytes}")
+    private long maxLagBytes;
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class).build();
+        primary.setPoolName(ReplicaRoutingDataSource.PRIMARY);
+        return primary;
+    }
+
+    /**
+     * Replica pools copy pool settings of the primary one, they are closed together with the routing data source
+     */
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource) {
+        Map<Object, Object> targetDataSources = new LinkedHashMap<>();
+        List<String> replicas = new ArrayList<>();
+        for(int i = 0; i < replicaUrls.size(); i++) {
+            HikariDataSource replica = new HikariDataSource();
+            primaryDataSource.copyStateTo(replica);
+            replica.setJdbcUrl(replicaUrls.get(i).trim());
+            replica.setPoolName("replica-" + i);
+            replica.setReadOnly(true);
+            targetDataSources.put(replica.getPoolName(), replica);
+            replicas.add(replica.getPoolName());
+        }
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(replicas);
+        targetDataSources.put(ReplicaRoutingDataSource.PRIMARY, primaryDataSource);
+        routingDataSource.setTargetDataSources(targetDataSources);
+        routingDataSource.setDefaultTargetDataSource(primaryDataSource);
+        return routingDataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new ReplicaLagMonitor(replicaRoutingDataSource, maxLagBytes);
+    }
+
+    /**
+     * Releases read-your-writes pinning to the primary database at the end of every http request
+     */
+    @Bean
+    public OncePerRequestFilter replicaRoutingFilter() {
+        return new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                            FilterChain filterChain) throws ServletException, IOException {
+                try {
+                    filterChain.doFilter(request, response);
+                } finally {
+                    ReplicaRoutingDataSource.unpin();
+                }
+            }
+        };
+    }
+
+}
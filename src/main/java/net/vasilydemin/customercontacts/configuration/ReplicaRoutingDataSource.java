@@ -0,0 +1,102 @@
+package net.vasilydemin.customercontacts.configuration;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Routing data source: read-only transactions go to one of the replicas (round robin), all others go to the
+ * primary database. Replicas which lag behind the primary too much are skipped (see ReplicaLagMonitor).
+ * After the first write transaction the thread is pinned to the primary until unpin() is called (at the end of
+ * the http request), so the request reads its own writes.
+ * Must be wrapped in LazyConnectionDataSourceProxy, otherwise the connection is taken before transaction
+ * read-only flag is set
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    public static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> PINNED_TO_PRIMARY = new ThreadLocal<>();
+
+    private final List<String> replicas;
+    private final Set<String> unavailableReplicas = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(List<String> replicas) {
+        this.replicas = List.copyOf(replicas);
+    }
+
+    public List<String> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicaAvailable(String replica, boolean available) {
+        if(available) {
+            unavailableReplicas.remove(replica);
+        } else {
+            unavailableReplicas.add(replica);
+        }
+    }
+
+    /**
+     * Closes replica pools, primary pool is a separate bean and is closed by the application context
+     */
+    @Override
+    public void close() throws Exception {
+        for(String replica : replicas) {
+            if(getResolvedDataSources().get(replica) instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    public static void unpin() {
+        PINNED_TO_PRIMARY.remove();
+    }
+
+    public static boolean isPinnedToPrimary() {
+        return Boolean.TRUE.equals(PINNED_TO_PRIMARY.get());
+    }
+
+    /**
+     * Runs the action with reads of the current thread routed to the primary database, e.g. to read data just
+     * changed by another request. Pinning of the thread is the same as before afterwards
+     */
+    public static <T> T readFromPrimary(Supplier<T> action) {
+        if(isPinnedToPrimary()) {
+            return action.get();
+        }
+        PINNED_TO_PRIMARY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            PINNED_TO_PRIMARY.remove();
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if(!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if(TransactionSynchronizationManager.isActualTransactionActive()) {
+                PINNED_TO_PRIMARY.set(Boolean.TRUE);
+            }
+            return PRIMARY;
+        }
+        if(isPinnedToPrimary()) {
+            return PRIMARY;
+        }
+        for(int attempt = 0; attempt < replicas.size(); attempt++) {
+            String replica = replicas.get(Math.floorMod(nextReplica.getAndIncrement(), replicas.size()));
+            if(!unavailableReplicas.contains(replica)) {
+                return replica;
+            }
+        }
+        return PRIMARY;
+    }
+
+}
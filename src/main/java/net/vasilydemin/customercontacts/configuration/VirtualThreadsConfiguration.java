@@ -0,0 +1,44 @@
+package net.vasilydemin.customercontacts.configuration;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Virtual threads mode. spring.threads.virtual.enabled=true makes Spring Boot run Tomcat requests (so controllers
+ * and services) and scheduled tasks on virtual threads; this configuration adds connection permits to the main
+ * data source, so requests wait for a connection in one fair queue with measured waiting time
+ * (/stats/connectionpermits). Number of permits is application.connectionpermits.permits, or maximum size of the
+ * connection pool (spring.datasource.hikari.maximum-pool-size) if it is 0. With read replicas replica pools are
+ * used too, so the permits may be set higher than the pool size
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadsConfiguration {
+
+    private static final String DATA_SOURCE_BEAN_NAME = "dataSource";
+
+    @Bean
+    public static BeanPostProcessor connectionPermitPostProcessor(
+            @Value("${application.connectionpermits.permits}") int permits,
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int maximumPoolSize,
+            @Value("${application.connectionpermits.timeout}") long timeoutMillis) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                if(DATA_SOURCE_BEAN_NAME.equals(beanName) && bean instanceof DataSource dataSource
+                        && !(bean instanceof ConnectionPermitDataSource)) {
+                    return new ConnectionPermitDataSource(dataSource, permits > 0 ? permits : maximumPoolSize,
+                            timeoutMillis);
+                }
+                return bean;
+            }
+        };
+    }
+
+}
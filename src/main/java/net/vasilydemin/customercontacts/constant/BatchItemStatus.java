@@ -0,0 +1,28 @@
+package net.vasilydemin.customercontacts.constant;
+
+import lombok.Getter;
+
+/**
+ * Enum with outcomes of one item of batch request. CREATED, EXISTS, UPDATED and DELETED are successful outcomes
+ */
+@Getter
+public enum BatchItemStatus {
+
+    CREATED(true),
+    EXISTS(true),
+    UPDATED(true),
+    DELETED(true),
+    INVALID(false),
+    NOT_FOUND(false),
+    CUSTOMER_NOT_FOUND(false),
+    CONFLICT(false),
+    NOT_APPLIED(false),
+    FAILED(false);
+
+    private final boolean success;
+
+    BatchItemStatus(boolean success) {
+        this.success = success;
+    }
+
+}
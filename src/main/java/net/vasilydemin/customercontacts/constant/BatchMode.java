@@ -0,0 +1,38 @@
+package net.vasilydemin.customercontacts.constant;
+
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Enum with modes of batch requests: atomic (nothing is written if any item fails) or besteffort (successful items
+ * are written, failed items are reported)
+ */
+@Getter
+public enum BatchMode {
+
+    ATOMIC("atomic"), BEST_EFFORT("besteffort");
+
+    public static final String DESCRIPTION = "atomic (default): nothing is written if any item fails, " +
+            "besteffort: successful items are written and failed items are reported";
+
+    private final String name;
+
+    BatchMode(String name) {
+        this.name = name;
+    }
+
+    private static final Map<String, BatchMode> BATCH_MODE_BY_NAME = new HashMap<>();
+
+    static {
+        for(BatchMode bm : BatchMode.values()) {
+            BATCH_MODE_BY_NAME.put(bm.name, bm);
+        }
+    }
+
+    public static BatchMode getBatchModeByName(String name) {
+        return BATCH_MODE_BY_NAME.get(name);
+    }
+
+}
@@ -10,13 +10,32 @@ public enum UserMessages {
 
     CUSTOMER_WITH_SUCH_ID_NOT_FOUND("Error: customer with id %id% not found in the database"),
     CUSTOMER_WITH_SUCH_NAME_NOT_FOUND("Error: customer with name \"%name%\" not found in the database"),
+    CUSTOMER_WITH_SUCH_CONTACT_NOT_FOUND("Error: customer with email or phone %value% not found in the database"),
     EMAIL_WITH_SUCH_ID_NOT_FOUND("Error: email with id %id% not found in the database"),
     SUCH_EMAIL_NOT_FOUND("Error: Such email %email% not found in the database"),
     CUSTOMER_ID_MUST_NOT_BE_NULL("Error: Customer id mustn't be null"),
     EMAIL_ADDRESS_IS_IN_THE_DATABASE_ALREADY1("Error: email %email% is in the database already and owned by another customer"),
     PHONE_NUMBER_IS_IN_THE_DATABASE_ALREADY1("Error: phone number %phone% is in the database already and owned by another customer"),
     PHONE_WITH_SUCH_ID_NOT_FOUND("Error: email with id %id% not found in the database"),
-    CONTACT_TYPE_IS_WRONG("Error: Contact type %type% is wrong. Contact type should be email or phone");
+    CONTACT_TYPE_IS_WRONG("Error: Contact type %type% is wrong. Contact type should be email or phone"),
+    TOO_MANY_IDS_IN_BATCH("Error: batch request contains %count% ids, but no more than %max% ids are allowed"),
+    PAGE_TOKEN_IS_WRONG("Error: page token %token% is wrong"),
+    CUSTOMER_NAME_MUST_NOT_BE_BLANK("Error: Customer name mustn't be blank"),
+    CUSTOMER_NAME_IS_IN_THE_DATABASE_ALREADY("Error: customer with name \"%name%\" is in the database already"),
+    IMPORT_LINE_IS_WRONG("Error: line %line% is not a valid customer JSON object"),
+    IMPORT_CHUNK_FAILED("Error: customer was not imported because of concurrent changes in the database, please " +
+            "repeat the import of this line"),
+    TOO_MANY_ITEMS_IN_BATCH("Error: batch request contains %count% items, but no more than %max% items are allowed"),
+    BATCH_MODE_IS_WRONG("Error: Batch mode %mode% is wrong. Batch mode should be atomic or besteffort"),
+    RECORD_ID_MUST_NOT_BE_NULL("Error: Record id mustn't be null"),
+    EMAIL_MUST_NOT_BE_BLANK("Error: Email mustn't be blank"),
+    PHONE_MUST_NOT_BE_BLANK("Error: Phone number mustn't be blank"),
+    PHONE_NUMBER_IS_WRONG("Error: %phone% is not a phone number. Phone number should be like +79012345678"),
+    BATCH_ITEM_NOT_APPLIED("Error: item was not applied because other items of the atomic batch failed"),
+    BATCH_FAILED("Error: batch was not applied because of concurrent changes in the database, please repeat " +
+            "the request"),
+    CONTACTS_READ_TIMED_OUT("Error: contacts of customer with id %id% were not read in %deadline% ms"),
+    VERSION_DOES_NOT_MATCH("Error: %record% with id %id% was changed, its version is %version%, not %expected%");
 
     private final String userMessage;
 
@@ -9,16 +9,31 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.constraints.NotNull;
 import net.vasilydemin.customercontacts.dto.CustomerDto;
+import net.vasilydemin.customercontacts.dto.CustomerSliceDto;
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsBatchDto;
 import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
 import net.vasilydemin.customercontacts.dto.EmailDto;
+import net.vasilydemin.customercontacts.dto.ImportReportDto;
 import net.vasilydemin.customercontacts.dto.PhoneDto;
+import net.vasilydemin.customercontacts.service.ContactsJsonCache;
 import net.vasilydemin.customercontacts.service.CustomerService;
 import net.vasilydemin.customercontacts.service.EmailService;
+import net.vasilydemin.customercontacts.service.ExportService;
+import net.vasilydemin.customercontacts.service.ImportService;
 import net.vasilydemin.customercontacts.service.PhoneService;
+import net.vasilydemin.customercontacts.util.ContentCodings;
+import net.vasilydemin.customercontacts.util.ETags;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
 import java.util.List;
 
@@ -27,20 +42,30 @@ import java.util.List;
 @Tag(name = "Customers", description = "Customers API")
 public class CustomerController {
 
+    public static final String NEXT_PAGE_TOKEN_HEADER = "X-Next-Page-Token";
+
     @Value("${application.default.page}")
     private int defaultPage;
 
     @Value("${application.default.itemsperpage}")
     private int defaultItemsPerPage;
 
+    @Value("${application.default.maxitemsperpage}")
+    private int maxItemsPerPage;
+
     private final CustomerService customerService;
     private final EmailService emailService;
     private final PhoneService phoneService;
+    private final ImportService importService;
+    private final ExportService exportService;
 
-    public CustomerController(CustomerService customerService, EmailService emailService, PhoneService phoneService) {
+    public CustomerController(CustomerService customerService, EmailService emailService, PhoneService phoneService,
+                              ImportService importService, ExportService exportService) {
         this.customerService = customerService;
         this.emailService = emailService;
         this.phoneService = phoneService;
+        this.importService = importService;
+        this.exportService = exportService;
     }
 
     @Operation(
@@ -69,6 +94,61 @@ public class CustomerController {
         return customerService.createCustomer(name);
     }
 
+    @Operation(
+            summary = "Bulk import of customers with emails and phones from NDJSON stream (one JSON object per line)",
+            operationId = "importCustomers",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            examples = {@ExampleObject(name = "NDJSON stream of CustomerWithContactsDto objects",
+                                    value = """
+                                    {"name" : "Ivan Ivanov", "emails" : ["ivan.ivanov@mail.org"], "phones" : ["+79012345678"]}
+                                    {"name" : "Petr Petrov", "emails" : [], "phones" : ["+79102345678"]}"""
+                            )}
+                    )
+            ),
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = ImportReportDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Bad Request",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+            },
+            tags = "Customers"
+    )
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ImportReportDto importCustomers(InputStream inputStream) throws IOException {
+        return importService.importCustomers(inputStream);
+    }
+
+    @Operation(
+            summary = "Export of all customers with emails and phones as NDJSON stream (one JSON object per line)",
+            operationId = "exportCustomers",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                                    schema = @Schema(implementation = CustomerWithContactsDto.class)
+                            )
+                    ),
+            },
+            tags = "Customers"
+    )
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody exportCustomers() {
+        return exportService::exportAllCustomers;
+    }
+
     @Operation(
             summary = "Read customer from the database by id",
             operationId = "readCustomerById",
@@ -91,18 +171,27 @@ public class CustomerController {
                             description = "Not Found",
                             content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
                     ),
+                    @ApiResponse(
+                            responseCode = "304",
+                            description = "Not Modified, customer version equals If-None-Match entity tag"
+                    ),
             },
             tags = "Customers"
     )
     @GetMapping("/{id}")
     public CustomerDto readCustomerById(@Parameter(name =  "id", description  = "Customer id", example = "1",
-            required = true) @NotNull @PathVariable Long id) {
+            required = true) @NotNull @PathVariable Long id, WebRequest request) {
+        if(request.checkNotModified(ETags.of(customerService.readCustomerVersion(id)))) {
+            return null;
+        }
         return customerService.readCustomerById(id);
     }
 
     @Operation(
             summary = "Read customer from the database by name (strings must be equal, case insensitive) or read all " +
-                    "customers if name = null or blank",
+                    "customers if name = null or blank. Customers list is paginated by page and items parameters or, " +
+                    "if after or limit parameter is set, by keyset pagination with token in " + NEXT_PAGE_TOKEN_HEADER +
+                    " response header",
             operationId = "readCustomerByName",
             responses = {
                     @ApiResponse(
@@ -127,11 +216,28 @@ public class CustomerController {
             tags = "Customers"
     )
     @GetMapping
-    public List<CustomerDto> readCustomerByName(@RequestParam(name = "name", required = false) String name,
-                                                @RequestParam(name = "page", required = false) Integer page,
-                                                @RequestParam(name = "items", required = false) Integer items) {
+    public ResponseEntity<List<CustomerDto>> readCustomerByName(
+            @RequestParam(name = "name", required = false) String name,
+            @RequestParam(name = "page", required = false) Integer page,
+            @RequestParam(name = "items", required = false) Integer items,
+            @Parameter(name = "after", description = "Token from " + NEXT_PAGE_TOKEN_HEADER + " response header to " +
+                    "read next customers (keyset pagination)") @RequestParam(name = "after", required = false) String after,
+            @Parameter(name = "limit", description = "Number of customers to read with keyset pagination, no " +
+                    "more than application.default.maxitemsperpage")
+            @RequestParam(name = "limit", required = false) Integer limit) {
         if(!(name == null || name.isEmpty() || name.isBlank())) {
-            return Collections.singletonList(customerService.readCustomerByName(name));
+            return ResponseEntity.ok(Collections.singletonList(customerService.readCustomerByName(name)));
+        } else if(after != null || limit != null) {
+            if(limit == null || limit < 1) {
+                limit = defaultItemsPerPage;
+            }
+            limit = Math.min(limit, maxItemsPerPage);
+            CustomerSliceDto slice = customerService.readCustomersAfter(after, limit);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if(slice.getNextPageToken() != null) {
+                response.header(NEXT_PAGE_TOKEN_HEADER, slice.getNextPageToken());
+            }
+            return response.body(slice.getCustomers());
         } else {
             if(page == null || page < 0) {
                 page = defaultPage;
@@ -139,10 +245,42 @@ public class CustomerController {
             if(items == null || items < 1) {
                 items = defaultItemsPerPage;
             }
-            return customerService.readAllCustomers(page, items);
+            return ResponseEntity.ok(customerService.readAllCustomers(page, items));
         }
     }
 
+    @Operation(
+            summary = "Search customers by part of the name: prefix, substring or fuzzy match ignoring letters case",
+            operationId = "searchCustomersByName",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK, customers from the best match",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = CustomerDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Bad Request",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+            },
+            tags = "Customers"
+    )
+    @GetMapping("/search")
+    public List<CustomerDto> searchCustomersByName(
+            @Parameter(name = "q", description = "Part of the customer name", example = "demin", required = true)
+            @RequestParam(name = "q") String query,
+            @Parameter(name = "limit", description = "Max number of customers to return")
+            @RequestParam(name = "limit", required = false) Integer limit) {
+        if(limit == null || limit < 1) {
+            limit = defaultItemsPerPage;
+        }
+        return customerService.searchCustomersByName(query, Math.min(limit, maxItemsPerPage));
+    }
+
     @Operation(
             summary = "Read all emails owned by customer from the database by customer id",
             operationId = "readAllCustomerEmails",
@@ -165,11 +303,18 @@ public class CustomerController {
                             description = "Not Found",
                             content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
                     ),
+                    @ApiResponse(
+                            responseCode = "304",
+                            description = "Not Modified, customer version equals If-None-Match entity tag"
+                    ),
             },
             tags = "Customers"
     )
     @GetMapping("/{id}/allemails")
-    public List<EmailDto> readAllEmailsByCustomerId(@PathVariable Long id) {
+    public List<EmailDto> readAllEmailsByCustomerId(@PathVariable Long id, WebRequest request) {
+        if(request.checkNotModified(ETags.of(customerService.readCustomerVersion(id)))) {
+            return null;
+        }
         return emailService.findAllEmailsByCustomerId(id);
     }
 
@@ -195,11 +340,18 @@ public class CustomerController {
                             description = "Not Found",
                             content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
                     ),
+                    @ApiResponse(
+                            responseCode = "304",
+                            description = "Not Modified, customer version equals If-None-Match entity tag"
+                    ),
             },
             tags = "Customers"
     )
     @GetMapping("/{id}/allphones")
-    public List<PhoneDto> readAllPhonesByCustomerId(@PathVariable Long id) {
+    public List<PhoneDto> readAllPhonesByCustomerId(@PathVariable Long id, WebRequest request) {
+        if(request.checkNotModified(ETags.of(customerService.readCustomerVersion(id)))) {
+            return null;
+        }
         return phoneService.findAllPhonesByCustomerId(id);
     }
 
@@ -225,12 +377,99 @@ public class CustomerController {
                             description = "Not Found",
                             content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
                     ),
+                    @ApiResponse(
+                            responseCode = "304",
+                            description = "Not Modified, customer version equals If-None-Match entity tag"
+                    ),
             },
             tags = "Customers"
     )
     @GetMapping("/{id}/allcontacts")
-    public CustomerWithContactsDto readAllContactsByCustomerId(@PathVariable Long id) {
-        return customerService.readAllContactsByCustomerId(id);
+    public ResponseEntity<byte[]> readAllContactsByCustomerId(@PathVariable Long id, WebRequest request) {
+        long version = customerService.readCustomerVersion(id);
+        String notModifiedTag = ETags.matching(request.getHeader(HttpHeaders.IF_NONE_MATCH), version);
+        if(notModifiedTag != null) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(notModifiedTag).build();
+        }
+        // ETag is the version read together with the contacts served, it may be newer than the version above
+        // without version (it changed while contacts fan-out read the contacts) the response has no ETag
+        ContactsJsonCache.ContactsJson contactsJson = customerService.readAllContactsJsonByCustomerId(id, version);
+        boolean versioned = contactsJson.version() != CustomerWithContactsDto.NO_VERSION;
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if(contactsJson.gzippedJson() == null) {
+            return response.eTag(versioned ? ETags.of(contactsJson.version()) : null).body(contactsJson.json());
+        }
+        response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if(ContentCodings.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            return response.eTag(versioned ? ETags.ofGzipped(contactsJson.version()) : null)
+                    .header(HttpHeaders.CONTENT_ENCODING, ContentCodings.GZIP).body(contactsJson.gzippedJson());
+        }
+        return response.eTag(versioned ? ETags.of(contactsJson.version()) : null).body(contactsJson.json());
+    }
+
+    @Operation(
+            summary = "Find customer with all contact information by one of his emails or phones",
+            operationId = "readCustomerByContact",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = CustomerWithContactsDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Bad Request",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+                    @ApiResponse(
+                            responseCode = "404",
+                            description = "Not Found",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+            },
+            tags = "Customers"
+    )
+    @GetMapping("/by-contact")
+    public CustomerWithContactsDto readCustomerByContact(@Parameter(name = "value", description = "Email or phone, " +
+            "letters case is ignored", example = "+79012345678", required = true)
+            @NotNull @RequestParam(name = "value") String value) {
+        return customerService.readCustomerByContact(value);
+    }
+
+    @Operation(
+            summary = "Read all contact information of several customers from the database by list of customer ids",
+            operationId = "readAllCustomersContactsBatch",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            examples = {@ExampleObject(name = "JSON array of customer ids",
+                                    value = "[1, 2, 3]"
+                            )}
+                    )
+            ),
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = CustomerWithContactsBatchDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Bad Request",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+            },
+            tags = "Customers"
+    )
+    @PostMapping("/allcontacts:batchGet")
+    public CustomerWithContactsBatchDto readAllContactsByCustomerIds(@NotNull @RequestBody List<Long> ids) {
+        return customerService.readAllContactsByCustomerIds(ids);
     }
 
     @Operation(
@@ -297,13 +536,19 @@ public class CustomerController {
                             responseCode = "404",
                             description = "Not Found",
                             content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+                    @ApiResponse(
+                            responseCode = "412",
+                            description = "Precondition Failed, customer version differs from If-Match entity tag",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
                     )
             },
             tags = "Customers"
     )
     @PutMapping
-    public CustomerDto updateCustomer(@NotNull @RequestBody CustomerDto customerDto) {
-        return customerService.updateCustomer(customerDto);
+    public CustomerDto updateCustomer(@NotNull @RequestBody CustomerDto customerDto,
+                                      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return customerService.updateCustomer(customerDto, ETags.versionOf(ifMatch));
     }
 
     @Operation(
@@ -339,13 +584,19 @@ public class CustomerController {
                             responseCode = "404",
                             description = "Not Found",
                             content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+                    @ApiResponse(
+                            responseCode = "412",
+                            description = "Precondition Failed, customer version differs from If-Match entity tag",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
                     )
             },
             tags = "Customers"
     )
     @DeleteMapping
-    public CustomerDto deleteCustomer(@NotNull @RequestBody CustomerDto customerDto) {
-        return customerService.deleteCustomer(customerDto);
+    public CustomerDto deleteCustomer(@NotNull @RequestBody CustomerDto customerDto,
+                                      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return customerService.deleteCustomer(customerDto, ETags.versionOf(ifMatch));
     }
 
 }
@@ -1,15 +1,23 @@
 package net.vasilydemin.customercontacts.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import jakarta.validation.constraints.NotNull;
+import net.vasilydemin.customercontacts.constant.BatchMode;
+import net.vasilydemin.customercontacts.dto.BatchResultDto;
 import net.vasilydemin.customercontacts.dto.EmailDto;
 import net.vasilydemin.customercontacts.service.EmailService;
+import net.vasilydemin.customercontacts.util.ETags;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
 
 @RestController
 @RequestMapping("/emails")
@@ -86,11 +94,18 @@ public class EmailController {
                             description = "Not Found",
                             content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
                     ),
+                    @ApiResponse(
+                            responseCode = "304",
+                            description = "Not Modified, email version equals If-None-Match entity tag"
+                    ),
             },
             tags = "Emails"
     )
     @GetMapping("/{id}")
-    public EmailDto readEmailById(@NotNull @PathVariable Long id) {
+    public EmailDto readEmailById(@NotNull @PathVariable Long id, WebRequest request) {
+        if(request.checkNotModified(ETags.of(emailService.readEmailVersion(id)))) {
+            return null;
+        }
         return emailService.readEmailById(id);
     }
 
@@ -128,12 +143,18 @@ public class EmailController {
                             responseCode = "404",
                             description = "Not Found",
                             content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+                    @ApiResponse(
+                            responseCode = "412",
+                            description = "Precondition Failed, email version differs from If-Match entity tag",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
                     )},
             tags = "Emails"
     )
     @PutMapping
-    public EmailDto updateEmail(@NotNull @RequestBody EmailDto emailDto) {
-        return emailService.updateEmail(emailDto);
+    public EmailDto updateEmail(@NotNull @RequestBody EmailDto emailDto,
+                                @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return emailService.updateEmail(emailDto, ETags.versionOf(ifMatch));
     }
 
     @Operation(
@@ -170,12 +191,128 @@ public class EmailController {
                             responseCode = "404",
                             description = "Not Found",
                             content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+                    @ApiResponse(
+                            responseCode = "412",
+                            description = "Precondition Failed, email version differs from If-Match entity tag",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
                     )},
             tags = "Emails"
     )
     @DeleteMapping
-    public EmailDto deleteEmail(@NotNull @RequestBody EmailDto emailDto) {
-        return emailService.deleteEmail(emailDto);
+    public EmailDto deleteEmail(@NotNull @RequestBody EmailDto emailDto,
+                                @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return emailService.deleteEmail(emailDto, ETags.versionOf(ifMatch));
+    }
+
+    @Operation(
+            summary = "Adding several emails in the database in one transaction",
+            operationId = "addNewEmailsBatch",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            examples = {@ExampleObject(name = "JSON array of EmailDto objects",
+                                    value = """
+                                    [{"customerId" : 2, "email" : "ivan.ivanov@mail.org"},
+                                    {"customerId" : 3, "email" : "petr.petrov@mail.org"}]"""
+                            )}
+                    )
+            ),
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = BatchResultDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Bad Request",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    )},
+            tags = "Emails"
+    )
+    @PostMapping("/batch")
+    public BatchResultDto<EmailDto> createEmails(
+            @Parameter(name = "mode", description = BatchMode.DESCRIPTION)
+            @RequestParam(name = "mode", defaultValue = "atomic") String mode,
+            @NotNull @RequestBody List<EmailDto> emailDtos) {
+        return emailService.createEmails(emailDtos, mode);
+    }
+
+    @Operation(
+            summary = "Updating several emails in the database in one transaction",
+            operationId = "updateEmailsBatch",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            examples = {@ExampleObject(name = "JSON array of EmailDto objects",
+                                    value = """
+                                    [{"id" : 1, "customerId" : 2, "email" : "ivan.ivanov@mail.org"},
+                                    {"id" : 2, "customerId" : 3, "email" : "petr.petrov@mail.org"}]"""
+                            )}
+                    )
+            ),
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = BatchResultDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Bad Request",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    )},
+            tags = "Emails"
+    )
+    @PutMapping("/batch")
+    public BatchResultDto<EmailDto> updateEmails(
+            @Parameter(name = "mode", description = BatchMode.DESCRIPTION)
+            @RequestParam(name = "mode", defaultValue = "atomic") String mode,
+            @NotNull @RequestBody List<EmailDto> emailDtos) {
+        return emailService.updateEmails(emailDtos, mode);
+    }
+
+    @Operation(
+            summary = "Deleting several emails from the database in one transaction",
+            operationId = "deleteEmailsBatch",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            examples = {@ExampleObject(name = "JSON array of EmailDto objects",
+                                    value = """
+                                    [{"id" : 1}, {"id" : 2}]"""
+                            )}
+                    )
+            ),
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = BatchResultDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Bad Request",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    )},
+            tags = "Emails"
+    )
+    @DeleteMapping("/batch")
+    public BatchResultDto<EmailDto> deleteEmails(
+            @Parameter(name = "mode", description = BatchMode.DESCRIPTION)
+            @RequestParam(name = "mode", defaultValue = "atomic") String mode,
+            @NotNull @RequestBody List<EmailDto> emailDtos) {
+        return emailService.deleteEmails(emailDtos, mode);
     }
 
 }
@@ -1,16 +1,24 @@
 package net.vasilydemin.customercontacts.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import jakarta.validation.constraints.NotNull;
+import net.vasilydemin.customercontacts.constant.BatchMode;
+import net.vasilydemin.customercontacts.dto.BatchResultDto;
 import net.vasilydemin.customercontacts.dto.EmailDto;
 import net.vasilydemin.customercontacts.dto.PhoneDto;
 import net.vasilydemin.customercontacts.service.PhoneService;
+import net.vasilydemin.customercontacts.util.ETags;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
 
 @RestController
 @RequestMapping("/phones")
@@ -87,11 +95,18 @@ public class PhoneController {
                             description = "Not Found",
                             content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
                     ),
+                    @ApiResponse(
+                            responseCode = "304",
+                            description = "Not Modified, phone version equals If-None-Match entity tag"
+                    ),
             },
             tags = "Phones"
     )
     @GetMapping("/{id}")
-    public PhoneDto readPhoneById(@NotNull @PathVariable Long id) {
+    public PhoneDto readPhoneById(@NotNull @PathVariable Long id, WebRequest request) {
+        if(request.checkNotModified(ETags.of(phoneService.readPhoneVersion(id)))) {
+            return null;
+        }
         return phoneService.readPhoneById(id);
     }
 
@@ -129,12 +144,18 @@ public class PhoneController {
                             responseCode = "404",
                             description = "Not Found",
                             content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+                    @ApiResponse(
+                            responseCode = "412",
+                            description = "Precondition Failed, phone version differs from If-Match entity tag",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
                     )},
             tags = "Phones"
     )
     @PutMapping
-    public PhoneDto updatePhone(@NotNull @RequestBody PhoneDto phoneDto) {
-        return phoneService.updatePhone(phoneDto);
+    public PhoneDto updatePhone(@NotNull @RequestBody PhoneDto phoneDto,
+                                @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return phoneService.updatePhone(phoneDto, ETags.versionOf(ifMatch));
     }
 
     @Operation(
@@ -171,12 +192,128 @@ public class PhoneController {
                             responseCode = "404",
                             description = "Not Found",
                             content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    ),
+                    @ApiResponse(
+                            responseCode = "412",
+                            description = "Precondition Failed, phone version differs from If-Match entity tag",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
                     )},
             tags = "Phones"
     )
     @DeleteMapping
-    public PhoneDto deletePhone(@NotNull @RequestBody PhoneDto phoneDto) {
-        return phoneService.deletePhone(phoneDto);
+    public PhoneDto deletePhone(@NotNull @RequestBody PhoneDto phoneDto,
+                                @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return phoneService.deletePhone(phoneDto, ETags.versionOf(ifMatch));
+    }
+
+    @Operation(
+            summary = "Adding several phones in the database in one transaction",
+            operationId = "addNewPhonesBatch",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            examples = {@ExampleObject(name = "JSON array of PhoneDto objects",
+                                    value = """
+                                    [{"customerId" : 2, "phone" : "+79012345678"},
+                                    {"customerId" : 3, "phone" : "+79023456789"}]"""
+                            )}
+                    )
+            ),
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = BatchResultDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Bad Request",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    )},
+            tags = "Phones"
+    )
+    @PostMapping("/batch")
+    public BatchResultDto<PhoneDto> createPhones(
+            @Parameter(name = "mode", description = BatchMode.DESCRIPTION)
+            @RequestParam(name = "mode", defaultValue = "atomic") String mode,
+            @NotNull @RequestBody List<PhoneDto> phoneDtos) {
+        return phoneService.createPhones(phoneDtos, mode);
+    }
+
+    @Operation(
+            summary = "Updating several phones in the database in one transaction",
+            operationId = "updatePhonesBatch",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            examples = {@ExampleObject(name = "JSON array of PhoneDto objects",
+                                    value = """
+                                    [{"id" : 1, "customerId" : 2, "phone" : "+79012345678"},
+                                    {"id" : 2, "customerId" : 3, "phone" : "+79023456789"}]"""
+                            )}
+                    )
+            ),
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = BatchResultDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Bad Request",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    )},
+            tags = "Phones"
+    )
+    @PutMapping("/batch")
+    public BatchResultDto<PhoneDto> updatePhones(
+            @Parameter(name = "mode", description = BatchMode.DESCRIPTION)
+            @RequestParam(name = "mode", defaultValue = "atomic") String mode,
+            @NotNull @RequestBody List<PhoneDto> phoneDtos) {
+        return phoneService.updatePhones(phoneDtos, mode);
+    }
+
+    @Operation(
+            summary = "Deleting several phones from the database in one transaction",
+            operationId = "deletePhonesBatch",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            examples = {@ExampleObject(name = "JSON array of PhoneDto objects",
+                                    value = """
+                                    [{"id" : 1}, {"id" : 2}]"""
+                            )}
+                    )
+            ),
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = BatchResultDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Bad Request",
+                            content = @Content(mediaType = MediaType.TEXT_HTML_VALUE)
+                    )},
+            tags = "Phones"
+    )
+    @DeleteMapping("/batch")
+    public BatchResultDto<PhoneDto> deletePhones(
+            @Parameter(name = "mode", description = BatchMode.DESCRIPTION)
+            @RequestParam(name = "mode", defaultValue = "atomic") String mode,
+            @NotNull @RequestBody List<PhoneDto> phoneDtos) {
+        return phoneService.deletePhones(phoneDtos, mode);
     }
 
 }
@@ -0,0 +1,72 @@
+package net.vasilydemin.customercontacts.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import net.vasilydemin.customercontacts.configuration.ConnectionPermitDataSource;
+import net.vasilydemin.customercontacts.dto.ConnectionPermitStatsDto;
+import net.vasilydemin.customercontacts.dto.ContactsCacheStatsDto;
+import net.vasilydemin.customercontacts.service.ContactsCache;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+
+    private final ContactsCache contactsCache;
+    private final DataSource dataSource;
+
+    public StatsController(ContactsCache contactsCache, DataSource dataSource) {
+        this.contactsCache = contactsCache;
+        this.dataSource = dataSource;
+    }
+
+    @Operation(
+            summary = "Read hit, miss and eviction counters of customer contacts cache",
+            operationId = "readContactsCacheStats",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = ContactsCacheStatsDto.class)
+                            )
+                    )},
+            tags = "Statistics"
+    )
+    @GetMapping("/contactscache")
+    public ContactsCacheStatsDto readContactsCacheStats() {
+        return contactsCache.getStats();
+    }
+
+    @Operation(
+            summary = "Read connection permit counters and time spent waiting for a permit (virtual threads mode)",
+            operationId = "readConnectionPermitStats",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = ConnectionPermitStatsDto.class)
+                            )
+                    )},
+            tags = "Statistics"
+    )
+    @GetMapping("/connectionpermits")
+    public ConnectionPermitStatsDto readConnectionPermitStats() throws SQLException {
+        if(dataSource.isWrapperFor(ConnectionPermitDataSource.class)) {
+            return dataSource.unwrap(ConnectionPermitDataSource.class).getStats();
+        }
+        return new ConnectionPermitStatsDto(false, 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+}
@@ -0,0 +1,20 @@
+package net.vasilydemin.customercontacts.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import net.vasilydemin.customercontacts.constant.BatchItemStatus;
+
+/**
+ * Outcome of one item of batch request. index is position of the item in the request, item is the record after
+ * the operation (or the requested item if it failed), message explains failure
+ */
+@Data
+@AllArgsConstructor
+public class BatchItemResultDto<T> {
+
+    private int index;
+    private BatchItemStatus status;
+    private T item;
+    private String message;
+
+}
@@ -0,0 +1,20 @@
+package net.vasilydemin.customercontacts.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Result of batch request: counts of successful and failed items and outcome of every item in the order of the
+ * request
+ */
+@Data
+@AllArgsConstructor
+public class BatchResultDto<T> {
+
+    private int succeeded;
+    private int failed;
+    private List<BatchItemResultDto<T>> items;
+
+}
@@ -0,0 +1,25 @@
+package net.vasilydemin.customercontacts.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Counters of connection permits since application start (virtual threads mode only, enabled = false otherwise).
+ * waited is number of connections which had to wait for a permit, averageWaitMillis is waiting time per request
+ * for a permit (requests which didn't wait and which timed out are included)
+ */
+@Data
+@AllArgsConstructor
+public class ConnectionPermitStatsDto {
+
+    private boolean enabled;
+    private int permits;
+    private int availablePermits;
+    private int waiting;
+    private long acquired;
+    private long waited;
+    private long timedOut;
+    private double averageWaitMillis;
+    private double maxWaitMillis;
+
+}
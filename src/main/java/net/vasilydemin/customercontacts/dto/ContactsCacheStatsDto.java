@@ -0,0 +1,21 @@
+package net.vasilydemin.customercontacts.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Counters of contacts cache since application start. Size is approximate, evictions include expired entries.
+ * offHeapBytes is memory allocated outside of the heap when the cache is kept off-heap, 0 otherwise
+ */
+@Data
+@AllArgsConstructor
+public class ContactsCacheStatsDto {
+
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private double hitRate;
+    private long offHeapBytes;
+
+}
@@ -0,0 +1,19 @@
+package net.vasilydemin.customercontacts.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One slice of customers list read with keyset pagination. nextPageToken is opaque token to read next slice,
+ * it is null if there are no more customers
+ */
+@Data
+@AllArgsConstructor
+public class CustomerSliceDto {
+
+    private List<CustomerDto> customers;
+    private String nextPageToken;
+
+}
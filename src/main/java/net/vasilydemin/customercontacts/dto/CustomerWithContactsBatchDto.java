@@ -0,0 +1,19 @@
+package net.vasilydemin.customercontacts.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * DTO for CustomerController call /customer/allcontacts:batchGet
+ * contains contacts of all found customers and ids of customers which were not found in the database
+ */
+@Data
+@AllArgsConstructor
+public class CustomerWithContactsBatchDto {
+
+    private List<CustomerWithContactsDto> customers;
+    private List<Long> missingIds;
+
+}
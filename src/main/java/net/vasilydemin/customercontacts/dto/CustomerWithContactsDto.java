@@ -1,5 +1,7 @@
 package net.vasilydemin.customercontacts.dto;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
@@ -13,9 +15,25 @@ import java.util.List;
 @AllArgsConstructor
 public class CustomerWithContactsDto {
 
+    /**
+     * Version of customer read without version
+     */
+    public static final long NO_VERSION = -1L;
+
     private Long id;
     private String name;
     private List<String> emails;
     private List<String> phones;
 
+    /**
+     * Customer version read by the same query as the contacts, the response ETag is made of it. Not a part of JSON
+     */
+    @JsonIgnore
+    private long version;
+
+    @JsonCreator
+    public CustomerWithContactsDto(Long id, String name, List<String> emails, List<String> phones) {
+        this(id, name, emails, phones, NO_VERSION);
+    }
+
 }
@@ -0,0 +1,18 @@
+package net.vasilydemin.customercontacts.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * One rejected value of the bulk import: line number in the imported file, rejected value (whole line, email
+ * or phone) and the reason
+ */
+@Data
+@AllArgsConstructor
+public class ImportRejectDto {
+
+    private long line;
+    private String value;
+    private String reason;
+
+}
@@ -0,0 +1,23 @@
+package net.vasilydemin.customercontacts.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * DTO for CustomerController call /customer/import
+ * counts of created customers, emails and phones and rejected values. Only first rejects are listed
+ * (application.import.maxrejects setting), but all of them are counted
+ */
+@Data
+@AllArgsConstructor
+public class ImportReportDto {
+
+    private long customers;
+    private long emails;
+    private long phones;
+    private long rejected;
+    private List<ImportRejectDto> rejects;
+
+}
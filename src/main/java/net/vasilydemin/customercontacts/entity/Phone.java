@@ -4,25 +4,43 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
-import lombok.AllArgsConstructor;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.SequenceGenerator;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import net.vasilydemin.customercontacts.util.PhoneNumbers;
 
 /**
- * Customer phone entity class (id, customer id and phone)
+ * Customer phone entity class (id, customer id, phone as it was entered and canonical phone key, see PhoneNumbers)
  */
 @Entity(name = "phones")
-@AllArgsConstructor
 @NoArgsConstructor
 @Data
 public class Phone {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "phones_id_seq")
+    @SequenceGenerator(name = "phones_id_seq", sequenceName = "phones_id_seq", allocationSize = 50)
     private Long id;
 
     private Long customerId;
 
     private String phone;
 
+    private Long phoneKey;
+
+    public Phone(Long id, Long customerId, String phone) {
+        this.id = id;
+        this.customerId = customerId;
+        this.phone = phone;
+        this.phoneKey = PhoneNumbers.toKey(phone);
+    }
+
+    @PrePersist
+    @PreUpdate
+    void updatePhoneKey() {
+        phoneKey = PhoneNumbers.toKey(phone);
+    }
+
 }
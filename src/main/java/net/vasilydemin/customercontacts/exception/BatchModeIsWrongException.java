@@ -0,0 +1,16 @@
+package net.vasilydemin.customercontacts.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This exception will be generated when frontend sends batch request with mode other than atomic or besteffort
+ */
+@ResponseStatus(code = HttpStatus.BAD_REQUEST, reason = "Batch mode is wrong")
+public class BatchModeIsWrongException extends BadRequestExceptions {
+
+    public BatchModeIsWrongException(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,17 @@
+package net.vasilydemin.customercontacts.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This exception will be generated when parallel read of customer, emails and phones doesn't finish before the
+ * request deadline
+ */
+@ResponseStatus(code = HttpStatus.GATEWAY_TIMEOUT, reason = "Customer contacts were not read in time")
+public class ContactsReadTimeoutException extends RuntimeException {
+
+    public ContactsReadTimeoutException(String msg) {
+        super(msg);
+    }
+
+}
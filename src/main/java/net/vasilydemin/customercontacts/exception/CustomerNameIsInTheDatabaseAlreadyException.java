@@ -0,0 +1,17 @@
+package net.vasilydemin.customercontacts.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This exception will be generated when we are trying to rename customer, but customer with the same name
+ * (ignoring letters case) is in the database already
+ */
+@ResponseStatus(code = HttpStatus.BAD_REQUEST, reason = "Error: customer name is in the database already")
+public class CustomerNameIsInTheDatabaseAlreadyException extends BadRequestExceptions {
+
+    public CustomerNameIsInTheDatabaseAlreadyException(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,17 @@
+package net.vasilydemin.customercontacts.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This exception will be generated when we are trying to find owner of specified email or phone in the database,
+ * but without success
+ */
+@ResponseStatus(code = HttpStatus.NOT_FOUND, reason = "Customer with such email or phone was not found in the database")
+public class CustomerWithSuchContactNotFoundException extends NotFoundExceptions {
+
+    public CustomerWithSuchContactNotFoundException(String msg) {
+        super(msg);
+    }
+
+}
@@ -14,4 +14,8 @@ public class CustomerWithSuchIdNotFoundException extends NotFoundExceptions {
         super(msg);
     }
 
+    public CustomerWithSuchIdNotFoundException(String msg, boolean writableStackTrace) {
+        super(msg, writableStackTrace);
+    }
+
 }
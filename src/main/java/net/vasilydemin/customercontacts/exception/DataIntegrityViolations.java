@@ -0,0 +1,36 @@
+package net.vasilydemin.customercontacts.exception;
+
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.sql.SQLException;
+
+/**
+ * Helper to find out which kind of database constraint was violated by SQLSTATE code of the JDBC exception.
+ * Services use it to translate constraint violations into NotFoundExceptions and BadRequestExceptions subclasses
+ */
+public final class DataIntegrityViolations {
+
+    public static final String FOREIGN_KEY_VIOLATION = "23503";
+    public static final String UNIQUE_VIOLATION = "23505";
+
+    private DataIntegrityViolations() {
+    }
+
+    public static boolean isForeignKeyViolation(DataIntegrityViolationException e) {
+        return FOREIGN_KEY_VIOLATION.equals(sqlState(e));
+    }
+
+    public static boolean isUniqueViolation(DataIntegrityViolationException e) {
+        return UNIQUE_VIOLATION.equals(sqlState(e));
+    }
+
+    private static String sqlState(Throwable e) {
+        for(Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if(cause instanceof SQLException sqlException && sqlException.getSQLState() != null) {
+                return sqlException.getSQLState();
+            }
+        }
+        return null;
+    }
+
+}
@@ -21,4 +21,11 @@ public class NotFoundExceptions extends RuntimeException {
         super(msg, cause);
     }
 
+    /**
+     * Exception without stack trace for hot paths where stack trace is useless and filling it in is expensive
+     */
+    protected NotFoundExceptions(String msg, boolean writableStackTrace){
+        super(msg, null, false, writableStackTrace);
+    }
+
 }
@@ -0,0 +1,17 @@
+package net.vasilydemin.customercontacts.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This exception will be generated when frontend sends continuation token for customers list which was not
+ * generated by the backend
+ */
+@ResponseStatus(code = HttpStatus.BAD_REQUEST, reason = "Page token is wrong")
+public class PageTokenIsWrongException extends BadRequestExceptions {
+
+    public PageTokenIsWrongException(String msg) {
+        super(msg);
+    }
+
+}
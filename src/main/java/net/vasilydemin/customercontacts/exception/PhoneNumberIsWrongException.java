@@ -0,0 +1,16 @@
+package net.vasilydemin.customercontacts.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This exception will be generated when frontend sends phone which can't be converted to E.164 phone number
+ */
+@ResponseStatus(code = HttpStatus.BAD_REQUEST, reason = "Phone number is wrong")
+public class PhoneNumberIsWrongException extends BadRequestExceptions {
+
+    public PhoneNumberIsWrongException(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,17 @@
+package net.vasilydemin.customercontacts.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This exception will be generated when frontend sends batch request with more ids than allowed
+ * by application.batch.maxids setting
+ */
+@ResponseStatus(code = HttpStatus.BAD_REQUEST, reason = "Too many ids in the batch request")
+public class TooManyIdsInBatchException extends BadRequestExceptions {
+
+    public TooManyIdsInBatchException(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,17 @@
+package net.vasilydemin.customercontacts.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This exception will be generated when frontend sends batch request with more items than allowed
+ * by application.batch.maxitems setting
+ */
+@ResponseStatus(code = HttpStatus.BAD_REQUEST, reason = "Too many items in the batch request")
+public class TooManyItemsInBatchException extends BadRequestExceptions {
+
+    public TooManyItemsInBatchException(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,17 @@
+package net.vasilydemin.customercontacts.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This exception will be generated when record is updated or deleted with If-Match header, but the record was
+ * changed after the client had read it (its version differs from the entity tag)
+ */
+@ResponseStatus(code = HttpStatus.PRECONDITION_FAILED, reason = "Record was changed by another request")
+public class VersionDoesNotMatchException extends RuntimeException {
+
+    public VersionDoesNotMatchException(String msg) {
+        super(msg);
+    }
+
+}
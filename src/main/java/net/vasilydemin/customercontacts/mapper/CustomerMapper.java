@@ -1,9 +1,17 @@
 package net.vasilydemin.customercontacts.mapper;
 
+import net.vasilydemin.customercontacts.constant.ContactType;
 import net.vasilydemin.customercontacts.dto.CustomerDto;
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
 import net.vasilydemin.customercontacts.entity.Customer;
+import net.vasilydemin.customercontacts.repository.ContactRow;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Customer entity to DTO and DTO to entity mapper. No more, but no less
  */
@@ -18,4 +26,38 @@ public class CustomerMapper {
         return new CustomerDto(customer.getId(), customer.getName());
     }
 
+    /**
+     * Groups rows of aggregate contacts query by customer id
+     * @param rows customer, email and phone rows (customer row goes before his contacts)
+     * @return List of CustomerWithContactsDto objects in the order of customer ids in the rows
+     */
+    public List<CustomerWithContactsDto> contactRowsToDtos(List<ContactRow> rows) {
+        Map<Long, CustomerWithContactsDto> customers = new LinkedHashMap<>();
+        for(ContactRow row : rows) {
+            addContactRow(customers.computeIfAbsent(row.getCustomerId(), this::emptyCustomerWithContacts), row);
+        }
+        return new ArrayList<>(customers.values());
+    }
+
+    public CustomerWithContactsDto emptyCustomerWithContacts(Long id) {
+        return new CustomerWithContactsDto(id, null, new ArrayList<>(), new ArrayList<>());
+    }
+
+    /**
+     * Adds data from one row of aggregate contacts query to the customer DTO: name and version, email or phone
+     */
+    public void addContactRow(CustomerWithContactsDto customer, ContactRow row) {
+        ContactType contactType = ContactType.getContactTypeByName(row.getType());
+        if(contactType == null) {
+            customer.setName(row.getValue());
+            if(row.getVersion() != null) {
+                customer.setVersion(row.getVersion());
+            }
+        } else if(contactType == ContactType.EMAIL) {
+            customer.getEmails().add(row.getValue());
+        } else {
+            customer.getPhones().add(row.getValue());
+        }
+    }
+
 }
@@ -0,0 +1,18 @@
+package net.vasilydemin.customercontacts.repository;
+
+/**
+ * Projection for one row of aggregate customer contacts queries. Every row is a customer record (type "customer",
+ * value is customer name, version is customer version), an email record (type "email") or a phone record (type
+ * "phone"); contact rows have no version
+ */
+public interface ContactRow {
+
+    Long getCustomerId();
+
+    String getType();
+
+    String getValue();
+
+    Long getVersion();
+
+}
@@ -0,0 +1,17 @@
+package net.vasilydemin.customercontacts.repository;
+
+/**
+ * Projection for the result of email or phone update statement: updated record (value is email or phone) and
+ * customer id the record had before the update
+ */
+public interface ContactUpdateRow {
+
+    Long getId();
+
+    Long getCustomerId();
+
+    String getValue();
+
+    Long getPreviousCustomerId();
+
+}
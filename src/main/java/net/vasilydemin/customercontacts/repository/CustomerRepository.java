@@ -1,19 +1,216 @@
 package net.vasilydemin.customercontacts.repository;
 
+import jakarta.persistence.QueryHint;
+import net.vasilydemin.customercontacts.dto.CustomerDto;
 import net.vasilydemin.customercontacts.entity.Customer;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
- * Customer repository with Paging and Sorting capabilities
+ * Customer repository with Paging and Sorting capabilities. Read-only queries return DTOs built by the query (JPQL
+ * constructor expressions), so no entities are loaded into the persistence context for them
  */
 public interface CustomerRepository extends PagingAndSortingRepository<Customer, Long> {
 
-    Optional<Customer> findCustomerByNameIgnoreCase(String name);
+    @Query("select new net.vasilydemin.customercontacts.dto.CustomerDto(c.id, c.name) from customers c " +
+            "where lower(c.name) = lower(:name)")
+    Optional<CustomerDto> findCustomerDtoByNameIgnoreCase(@Param("name") String name);
 
-    Optional<Customer> findCustomerById(Long id);
+    @Query("select new net.vasilydemin.customercontacts.dto.CustomerDto(c.id, c.name) from customers c " +
+            "where c.id = :id")
+    Optional<CustomerDto> findCustomerDtoById(@Param("id") Long id);
 
-    Customer save(Customer customer);
-    void delete(Customer customer);
+    boolean existsById(Long id);
+
+    /**
+     * Version of customer, incremented by any change of the customer and his emails and phones
+     */
+    @Query(value = "SELECT version FROM customers WHERE id = :id", nativeQuery = true)
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Query("select new net.vasilydemin.customercontacts.dto.CustomerDto(c.id, c.name) from customers c " +
+            "where c.id in :ids")
+    List<CustomerDto> findAllCustomerDtosByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select c.id from customers c where c.id in :ids")
+    List<Long> findAllIdsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select c from customers c where lower(c.name) in :names")
+    List<Customer> findAllByNameLowerCaseIn(@Param("names") Collection<String> names);
+
+    List<Customer> saveAll(Iterable<Customer> customers);
+
+    /**
+     * Offset pagination without count query
+     */
+    @Query("select new net.vasilydemin.customercontacts.dto.CustomerDto(c.id, c.name) from customers c")
+    Slice<CustomerDto> findAllCustomerDtos(Pageable pageable);
+
+    /**
+     * Keyset pagination: next customers after specified id, ordered by id, without count query
+     */
+    @Query("select new net.vasilydemin.customercontacts.dto.CustomerDto(c.id, c.name) from customers c " +
+            "where c.id > :id order by c.id")
+    Slice<CustomerDto> findAllCustomerDtosByIdGreaterThan(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * Streams ids of all customers. Rows are fetched from the database cursor in portions, so the method must be
+     * called within a transaction and the stream must be closed
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "10000"))
+    @Query("select c.id from customers c")
+    Stream<Long> streamAllIds();
+
+    /**
+     * Streams ids and names of all customers, same as streamAllIds
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "10000"))
+    @Query("select new net.vasilydemin.customercontacts.dto.CustomerDto(c.id, c.name) from customers c")
+    Stream<CustomerDto> streamAllCustomerDtos();
+
+    /**
+     * Customers whose names contain specified string ignoring letters case, for search before customer name index
+     * is built. Symbols % and _ of the string must be escaped with backslash
+     */
+    @Query("select new net.vasilydemin.customercontacts.dto.CustomerDto(c.id, c.name) from customers c " +
+            "where lower(c.name) like lower(concat('%', :name, '%')) escape '\\' order by c.name")
+    List<CustomerDto> findAllCustomerDtosByNameContaining(@Param("name") String name, Pageable pageable);
+
+    /**
+     * Last value of customer id sequence. Ids handed out to the application (including pre-allocated blocks) are
+     * not greater than this value
+     */
+    @Query(value = "SELECT last_value FROM customers_id_seq", nativeQuery = true)
+    Long findIdSequenceLastValue();
+
+    /**
+     * Reads customer record with its version, as a row of aggregate contacts queries (for contacts fan-out)
+     */
+    @Query(value = """
+            SELECT c.id AS "customerId", 'customer' AS "type", c.name AS "value", c.version AS version
+              FROM customers c WHERE c.id = :id""", nativeQuery = true)
+    Optional<ContactRow> findCustomerRowById(@Param("id") Long id);
+
+    /**
+     * Reads customer record and all his emails and phones in one database round trip, so customer version in the
+     * customer row is the version of these contacts
+     * @param id customer id
+     * @return customer row first, then email rows and phone rows. Empty list if customer was not found
+     */
+    @Query(value = """
+            SELECT c.id AS "customerId", 'customer' AS "type", c.name AS "value", c.version AS version, 0 AS kind,
+                   c.id AS row_id
+              FROM customers c WHERE c.id = :id
+            UNION ALL
+            SELECT e.customer_id, 'email', e.email, NULL, 1, e.id FROM emails e WHERE e.customer_id = :id
+            UNION ALL
+            SELECT p.customer_id, 'phone', p.phone, NULL, 2, p.id FROM phones p WHERE p.customer_id = :id
+            ORDER BY kind, row_id""", nativeQuery = true)
+    List<ContactRow> findAllContactsByCustomerId(@Param("id") Long id);
+
+    /**
+     * Reads owner of specified email or phone with all his emails and phones in one database round trip. Email is
+     * looked for ignoring letters case (unique index on lower(email)), phone by canonical key (unique index on
+     * phone_key)
+     * @param value email
+     * @param phoneKey canonical key of the phone, null if the value is not a phone number
+     * @return customer row first, then email rows and phone rows. Empty list if nobody owns such email or phone
+     */
+    @Query(value = """
+            WITH owner AS (
+                SELECT customer_id FROM emails WHERE lower(email) = lower(:value)
+                UNION ALL
+                SELECT customer_id FROM phones WHERE phone_key = CAST(:phoneKey AS bigint)
+                LIMIT 1)
+            SELECT c.id AS "customerId", 'customer' AS "type", c.name AS "value", c.version AS version, 0 AS kind,
+                   c.id AS row_id
+              FROM customers c WHERE c.id = (SELECT customer_id FROM owner)
+            UNION ALL
+            SELECT e.customer_id, 'email', e.email, NULL, 1, e.id
+              FROM emails e WHERE e.customer_id = (SELECT customer_id FROM owner)
+            UNION ALL
+            SELECT p.customer_id, 'phone', p.phone, NULL, 2, p.id
+              FROM phones p WHERE p.customer_id = (SELECT customer_id FROM owner)
+            ORDER BY kind, row_id""", nativeQuery = true)
+    List<ContactRow> findAllContactsByContactValue(@Param("value") String value, @Param("phoneKey") Long phoneKey);
+
+    /**
+     * Reads one keyset page of customers with their emails and phones: customers are taken by primary key index,
+     * contacts by customer_id indexes, so only the rows of the page are sorted
+     * @param afterId customers with ids greater than this are read
+     * @param limit max number of customers in the page
+     * @return rows ordered by customer id, customer row goes first and then his email and phone rows
+     */
+    @Query(value = """
+            WITH page AS (SELECT id, name, version FROM customers WHERE id > :afterId ORDER BY id LIMIT :limit)
+            SELECT c.id AS "customerId", 'customer' AS "type", c.name AS "value", c.version AS version, 0 AS kind,
+                   c.id AS row_id
+              FROM page c
+            UNION ALL
+            SELECT e.customer_id, 'email', e.email, NULL, 1, e.id
+              FROM emails e WHERE e.customer_id IN (SELECT id FROM page)
+            UNION ALL
+            SELECT p.customer_id, 'phone', p.phone, NULL, 2, p.id
+              FROM phones p WHERE p.customer_id IN (SELECT id FROM page)
+            ORDER BY "customerId", kind, row_id""", nativeQuery = true)
+    List<ContactRow> findAllContactsOfCustomersAfter(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    /**
+     * Inserts customer with specified name or, if customer with such name (ignoring letters case) is in the database
+     * already, reads existing customer record. Both cases are handled by one statement, unique index on lower(name)
+     * guarantees one customer per name under concurrent inserts
+     * @return created or existing customer. Empty if conflicting customer was inserted by concurrent transaction
+     * after the statement had started
+     */
+    @Transactional
+    @Query(value = """
+            WITH inserted AS (
+                INSERT INTO customers (name) VALUES (:name)
+                ON CONFLICT (lower(name)) DO NOTHING
+                RETURNING id, name)
+            SELECT id, name FROM inserted
+            UNION ALL
+            SELECT id, name FROM customers WHERE lower(name) = lower(:name)""", nativeQuery = true)
+    Optional<Customer> upsertCustomer(@Param("name") String name);
+
+    /**
+     * Renames customer with one statement. Unique index on lower(name) checks that the name isn't used by another
+     * customer
+     * @param version expected version of the customer, null to update any version
+     * @return updated customer. Empty if there is no customer with such id or its version differs
+     */
+    @Transactional
+    @Query(value = """
+            WITH updated AS (
+                UPDATE customers SET name = :name
+                 WHERE id = :id AND (CAST(:version AS bigint) IS NULL OR version = CAST(:version AS bigint))
+                RETURNING id, name)
+            SELECT id, name FROM updated""", nativeQuery = true)
+    Optional<Customer> updateCustomerName(@Param("id") Long id, @Param("name") String name,
+                                          @Param("version") Long version);
+
+    /**
+     * Deletes customer with one statement, his emails and phones are deleted by foreign keys (on delete cascade)
+     * @param version expected version of the customer, null to delete any version
+     * @return deleted customer. Empty if there is no customer with such id or its version differs
+     */
+    @Transactional
+    @Query(value = """
+            WITH deleted AS (
+                DELETE FROM customers
+                 WHERE id = :id AND (CAST(:version AS bigint) IS NULL OR version = CAST(:version AS bigint))
+                RETURNING id, name)
+            SELECT id, name FROM deleted""", nativeQuery = true)
+    Optional<Customer> deleteCustomerById(@Param("id") Long id, @Param("version") Long version);
 }
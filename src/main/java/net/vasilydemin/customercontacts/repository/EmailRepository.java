@@ -1,15 +1,86 @@
 package net.vasilydemin.customercontacts.repository;
 
+import net.vasilydemin.customercontacts.dto.EmailDto;
 import net.vasilydemin.customercontacts.entity.Email;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 /**
- * Email repository
+ * Email repository. Read-only queries return DTOs built by the query (JPQL constructor expressions), so no entities
+ * are loaded into the persistence context for them
  */
 public interface EmailRepository extends JpaRepository<Email, Long> {
-    Optional<Email> findEmailByEmailIgnoreCase(String email);
-    List<Email> findAllByCustomerId(Long customerId);
+    @Query("select e from emails e where lower(e.email) = lower(:email)")
+    Optional<Email> findEmailByEmailIgnoreCase(@Param("email") String email);
+    @Query("select new net.vasilydemin.customercontacts.dto.EmailDto(e.id, e.customerId, e.email) from emails e " +
+            "where e.id = :id")
+    Optional<EmailDto> findEmailDtoById(@Param("id") Long id);
+    @Query(value = "SELECT version FROM emails WHERE id = :id", nativeQuery = true)
+    Optional<Long> findVersionById(@Param("id") Long id);
+    @Query("select new net.vasilydemin.customercontacts.dto.EmailDto(e.id, e.customerId, e.email) from emails e " +
+            "where e.customerId = :customerId order by e.id")
+    List<EmailDto> findAllEmailDtosByCustomerId(@Param("customerId") Long customerId);
+    @Query("select new net.vasilydemin.customercontacts.dto.EmailDto(e.id, e.customerId, e.email) from emails e " +
+            "where e.customerId in :customerIds order by e.id")
+    List<EmailDto> findAllEmailDtosByCustomerIdIn(@Param("customerIds") Collection<Long> customerIds);
+    @Query("select e from emails e where lower(e.email) in :emails")
+    List<Email> findAllByEmailLowerCaseIn(@Param("emails") Collection<String> emails);
+
+    /**
+     * Inserts email for the customer or, if such email (ignoring letters case) is in the database already, reads
+     * existing email record. Both cases are handled by one statement without race between check and insert
+     * @return created or existing email record (existing record may be owned by another customer). Empty if
+     * conflicting email was inserted by concurrent transaction after the statement had started
+     */
+    @Transactional
+    @Query(value = """
+            WITH inserted AS (
+                INSERT INTO emails (customer_id, email) VALUES (:customerId, :email)
+                ON CONFLICT (lower(email)) DO NOTHING
+                RETURNING id, customer_id, email)
+            SELECT id, customer_id, email FROM inserted
+            UNION ALL
+            SELECT id, customer_id, email FROM emails WHERE lower(email) = lower(:email)""", nativeQuery = true)
+    Optional<Email> upsertEmail(@Param("customerId") Long customerId, @Param("email") String email);
+
+    /**
+     * Updates email record with one statement. Foreign key on customer_id checks that new customer exists, unique
+     * index on lower(email) checks that email isn't owned by another record
+     * @param version expected version of the record, null to update any version
+     * @return updated record with customer id it had before the update. Empty if there is no record with such id
+     * or its version differs
+     */
+    @Transactional
+    @Query(value = """
+            WITH updated AS (
+                UPDATE emails e SET customer_id = :customerId, email = :email
+                  FROM emails previous
+                 WHERE e.id = :id AND previous.id = e.id
+                   AND (CAST(:version AS bigint) IS NULL OR e.version = CAST(:version AS bigint))
+                RETURNING e.id, e.customer_id, e.email, previous.customer_id AS previous_customer_id)
+            SELECT id AS "id", customer_id AS "customerId", email AS "value",
+                   previous_customer_id AS "previousCustomerId"
+              FROM updated""", nativeQuery = true)
+    Optional<ContactUpdateRow> updateEmail(@Param("id") Long id, @Param("customerId") Long customerId,
+                                           @Param("email") String email, @Param("version") Long version);
+
+    /**
+     * Deletes email record with one statement
+     * @param version expected version of the record, null to delete any version
+     * @return deleted record. Empty if there is no record with such id or its version differs
+     */
+    @Transactional
+    @Query(value = """
+            WITH deleted AS (
+                DELETE FROM emails
+                 WHERE id = :id AND (CAST(:version AS bigint) IS NULL OR version = CAST(:version AS bigint))
+                RETURNING id, customer_id, email)
+            SELECT id, customer_id, email FROM deleted""", nativeQuery = true)
+    Optional<Email> deleteEmailById(@Param("id") Long id, @Param("version") Long version);
 }
@@ -1,16 +1,90 @@
 package net.vasilydemin.customercontacts.repository;
 
+import net.vasilydemin.customercontacts.dto.PhoneDto;
 import net.vasilydemin.customercontacts.entity.Phone;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 /**
- * Email repository
+ * Phone repository. Read-only queries return DTOs built by the query (JPQL constructor expressions), so no entities
+ * are loaded into the persistence context for them
  */
 public interface PhoneRepository extends JpaRepository<Phone, Long> {
-    Optional<Phone> findPhoneByPhoneIgnoreCase(String phone);
+    @Query("select new net.vasilydemin.customercontacts.dto.PhoneDto(p.id, p.customerId, p.phone) from phones p " +
+            "where p.id = :id")
+    Optional<PhoneDto> findPhoneDtoById(@Param("id") Long id);
 
-    List<Phone> findAllByCustomerId(Long customerId);
+    @Query(value = "SELECT version FROM phones WHERE id = :id", nativeQuery = true)
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Query("select new net.vasilydemin.customercontacts.dto.PhoneDto(p.id, p.customerId, p.phone) from phones p " +
+            "where p.customerId = :customerId order by p.id")
+    List<PhoneDto> findAllPhoneDtosByCustomerId(@Param("customerId") Long customerId);
+
+    @Query("select new net.vasilydemin.customercontacts.dto.PhoneDto(p.id, p.customerId, p.phone) from phones p " +
+            "where p.customerId in :customerIds order by p.id")
+    List<PhoneDto> findAllPhoneDtosByCustomerIdIn(@Param("customerIds") Collection<Long> customerIds);
+
+    @Query("select p from phones p where p.phoneKey in :phoneKeys")
+    List<Phone> findAllByPhoneKeyIn(@Param("phoneKeys") Collection<Long> phoneKeys);
+
+    /**
+     * Inserts phone for the customer or, if phone with the same canonical key is in the database already, reads
+     * existing phone record. Both cases are handled by one statement without race between check and insert
+     * @return created or existing phone record (existing record may be owned by another customer). Empty if
+     * conflicting phone was inserted by concurrent transaction after the statement had started
+     */
+    @Transactional
+    @Query(value = """
+            WITH inserted AS (
+                INSERT INTO phones (customer_id, phone, phone_key) VALUES (:customerId, :phone, :phoneKey)
+                ON CONFLICT (phone_key) DO NOTHING
+                RETURNING id, customer_id, phone, phone_key)
+            SELECT id, customer_id, phone, phone_key FROM inserted
+            UNION ALL
+            SELECT id, customer_id, phone, phone_key FROM phones WHERE phone_key = :phoneKey""", nativeQuery = true)
+    Optional<Phone> upsertPhone(@Param("customerId") Long customerId, @Param("phone") String phone,
+                                @Param("phoneKey") Long phoneKey);
+
+    /**
+     * Updates phone record with one statement. Foreign key on customer_id checks that new customer exists, unique
+     * index on phone_key checks that phone isn't owned by another record
+     * @param version expected version of the record, null to update any version
+     * @return updated record with customer id it had before the update. Empty if there is no record with such id
+     * or its version differs
+     */
+    @Transactional
+    @Query(value = """
+            WITH updated AS (
+                UPDATE phones p SET customer_id = :customerId, phone = :phone, phone_key = :phoneKey
+                  FROM phones previous
+                 WHERE p.id = :id AND previous.id = p.id
+                   AND (CAST(:version AS bigint) IS NULL OR p.version = CAST(:version AS bigint))
+                RETURNING p.id, p.customer_id, p.phone, previous.customer_id AS previous_customer_id)
+            SELECT id AS "id", customer_id AS "customerId", phone AS "value",
+                   previous_customer_id AS "previousCustomerId"
+              FROM updated""", nativeQuery = true)
+    Optional<ContactUpdateRow> updatePhone(@Param("id") Long id, @Param("customerId") Long customerId,
+                                           @Param("phone") String phone, @Param("phoneKey") Long phoneKey,
+                                           @Param("version") Long version);
+
+    /**
+     * Deletes phone record with one statement
+     * @param version expected version of the record, null to delete any version
+     * @return deleted record. Empty if there is no record with such id or its version differs
+     */
+    @Transactional
+    @Query(value = """
+            WITH deleted AS (
+                DELETE FROM phones
+                 WHERE id = :id AND (CAST(:version AS bigint) IS NULL OR version = CAST(:version AS bigint))
+                RETURNING id, customer_id, phone, phone_key)
+            SELECT id, customer_id, phone, phone_key FROM deleted""", nativeQuery = true)
+    Optional<Phone> deletePhoneById(@Param("id") Long id, @Param("version") Long version);
 }
@@ -0,0 +1,112 @@
+package net.vasilydemin.customercontacts.service;
+
+import net.vasilydemin.customercontacts.constant.BatchItemStatus;
+import net.vasilydemin.customercontacts.constant.BatchMode;
+import net.vasilydemin.customercontacts.constant.UserMessages;
+import net.vasilydemin.customercontacts.dto.BatchItemResultDto;
+import net.vasilydemin.customercontacts.dto.BatchResultDto;
+import net.vasilydemin.customercontacts.exception.BatchModeIsWrongException;
+import net.vasilydemin.customercontacts.exception.TooManyItemsInBatchException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs batch requests for emails and phones. Whole batch is done in one transaction. Batch is expected to decide
+ * outcome of every item first and to write only if it may: in atomic mode nothing is written if any item failed, then
+ * successful items are reported as NOT_APPLIED. If concurrent writer inserts same email or phone between the check
+ * and the write, batch is retried once, after that all items are reported as FAILED. Contacts cache entries of
+ * changed customers are invalidated after the commit
+ */
+@Component
+public class ContactBatchExecutor {
+
+    private final Logger logger = LoggerFactory.getLogger(ContactBatchExecutor.class);
+
+    @Value("${application.batch.maxitems}")
+    private int maxBatchItems;
+
+    private final TransactionTemplate transactionTemplate;
+    private final ContactsCache contactsCache;
+
+    public ContactBatchExecutor(TransactionTemplate transactionTemplate, ContactsCache contactsCache) {
+        this.transactionTemplate = transactionTemplate;
+        this.contactsCache = contactsCache;
+    }
+
+    /**
+     * Batch work done in the transaction. It adds outcome of every item to results in the order of items and ids of
+     * customers whose contacts were changed to changedCustomerIds
+     */
+    @FunctionalInterface
+    public interface Batch<T> {
+        void apply(BatchMode mode, List<BatchItemResultDto<T>> results, Set<Long> changedCustomerIds);
+    }
+
+    /**
+     * @param items items of the batch request
+     * @param mode batch mode name: atomic or besteffort
+     * @param batch batch work
+     * @return BatchResultDto with outcome of every item
+     * @throws TooManyItemsInBatchException if there are more items than application.batch.maxitems setting allows
+     * @throws BatchModeIsWrongException if mode is not atomic or besteffort
+     */
+    public <T> BatchResultDto<T> execute(List<T> items, String mode, Batch<T> batch) {
+        if(items.size() > maxBatchItems) {
+            String msg = UserMessages.TOO_MANY_ITEMS_IN_BATCH.getUserMessage()
+                    .replace("%count%", String.valueOf(items.size()))
+                    .replace("%max%", String.valueOf(maxBatchItems));
+            logger.error(msg);
+            throw new TooManyItemsInBatchException(msg);
+        }
+        BatchMode batchMode = BatchMode.getBatchModeByName(mode);
+        if(batchMode == null) {
+            String msg = UserMessages.BATCH_MODE_IS_WRONG.getUserMessage().replace("%mode%", mode);
+            logger.error(msg);
+            throw new BatchModeIsWrongException(msg);
+        }
+        for(int attempt = 1; ; attempt++) {
+            List<BatchItemResultDto<T>> results = new ArrayList<>(items.size());
+            Set<Long> changedCustomerIds = new HashSet<>();
+            try {
+                transactionTemplate.executeWithoutResult(status -> batch.apply(batchMode, results, changedCustomerIds));
+                contactsCache.invalidateAll(changedCustomerIds);
+                if(batchMode == BatchMode.ATOMIC && !isApplicable(batchMode, results)) {
+                    results.replaceAll(result -> result.getStatus().isSuccess()
+                            ? new BatchItemResultDto<>(result.getIndex(), BatchItemStatus.NOT_APPLIED,
+                            result.getItem(), UserMessages.BATCH_ITEM_NOT_APPLIED.getUserMessage())
+                            : result);
+                }
+                int succeeded = (int) results.stream().filter(result -> result.getStatus().isSuccess()).count();
+                return new BatchResultDto<>(succeeded, results.size() - succeeded, results);
+            } catch (DataIntegrityViolationException e) {
+                if(attempt > 1) {
+                    logger.error("Batch of {} items failed", items.size(), e);
+                    List<BatchItemResultDto<T>> failedResults = new ArrayList<>(items.size());
+                    for(int i = 0; i < items.size(); i++) {
+                        failedResults.add(new BatchItemResultDto<>(i, BatchItemStatus.FAILED, items.get(i),
+                                UserMessages.BATCH_FAILED.getUserMessage()));
+                    }
+                    return new BatchResultDto<>(0, items.size(), failedResults);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if batch with such outcomes may be written: in best effort mode always, in atomic mode only if
+     * all items are successful
+     */
+    public static <T> boolean isApplicable(BatchMode mode, List<BatchItemResultDto<T>> results) {
+        return mode == BatchMode.BEST_EFFORT || results.stream().allMatch(result -> result.getStatus().isSuccess());
+    }
+
+}
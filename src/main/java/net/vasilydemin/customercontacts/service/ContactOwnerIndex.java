@@ -0,0 +1,56 @@
+package net.vasilydemin.customercontacts.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * In-process hash index from email or phone (lower-cased) to id of the customer who owned it when it was looked up.
+ * Entries are added by reverse lookups and aren't invalidated by writes: owner found here is only a hint, the caller
+ * checks that the customer (read from contacts cache, which is invalidated by writes) still has this email or phone
+ * and goes to the database otherwise. Size is limited by application.contactownerindex.maxsize, index can be
+ * switched off by application.contactownerindex.enabled
+ */
+@Component
+public class ContactOwnerIndex {
+
+    private final Cache<String, Long> owners;
+    private final boolean enabled;
+
+    public ContactOwnerIndex(@Value("${application.contactownerindex.enabled}") boolean enabled,
+                             @Value("${application.contactownerindex.maxsize}") long maxSize) {
+        this.enabled = enabled;
+        this.owners = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * @return id of the customer who owned the email or phone, null if it's unknown
+     */
+    public Long getOwnerId(String value) {
+        return enabled ? owners.getIfPresent(key(value)) : null;
+    }
+
+    public void put(String value, Long customerId) {
+        if(enabled && customerId != null) {
+            owners.put(key(value), customerId);
+        }
+    }
+
+    public void remove(String value) {
+        owners.invalidate(key(value));
+    }
+
+    public void clear() {
+        owners.invalidateAll();
+    }
+
+    private static String key(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+}
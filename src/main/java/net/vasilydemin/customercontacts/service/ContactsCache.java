@@ -0,0 +1,212 @@
+package net.vasilydemin.customercontacts.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import net.vasilydemin.customercontacts.configuration.ReplicaRoutingDataSource;
+import net.vasilydemin.customercontacts.dto.ContactsCacheStatsDto;
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * In-process cache of customers with all their contacts, keyed by customer id. Size is limited by
+ * application.contactscache.maxsize, entries expire application.contactscache.ttl seconds after loading.
+ * Services which change customers, emails or phones invalidate entries of affected customers after the change is
+ * committed. Invalidation waits for the load of the same key in progress, so stale data loaded before the commit
+ * doesn't stay in the cache.
+ * With application.contactscache.offheap.enabled customers are kept in OffHeapContactStore instead, limited by
+ * application.contactscache.offheap.maxbytes rather than by number of entries. Concurrent loads of the same key
+ * aren't merged there, and data loaded before invalidation is not stored.
+ * In virtual threads mode (spring.threads.virtual.enabled) customers are loaded outside of Caffeine too: its loader
+ * runs inside a synchronized block of the map, and a virtual thread waiting there for the database would pin its
+ * carrier thread.
+ * Read-only queries may go to a replica which hasn't replayed the change yet, so customers of a stripe invalidated
+ * less than application.contactscache.primarywindow milliseconds ago are loaded from the primary database.
+ * Invalidation is passed on to ContactsJsonCache, which keeps serialized responses of the same customers
+ */
+@Component
+public class ContactsCache {
+
+    private static final int GENERATION_STRIPES = 1 << 10;
+
+    private final Cache<Long, CustomerWithContactsDto> cache;
+    private final OffHeapContactStore offHeapStore;
+    private final boolean loadOutsideOfCache;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final AtomicLongArray primaryReadsUntil = new AtomicLongArray(GENERATION_STRIPES);
+    private final long primaryWindowNanos;
+    private final ContactsJsonCache jsonCache;
+
+    public ContactsCache(ContactsJsonCache jsonCache,
+                         @Value("${application.contactscache.maxsize}") long maxSize,
+                         @Value("${application.contactscache.ttl}") long ttlSeconds,
+                         @Value("${application.contactscache.offheap.enabled}") boolean offHeapEnabled,
+                         @Value("${application.contactscache.offheap.maxbytes}") long offHeapMaxBytes,
+                         @Value("${application.contactscache.primarywindow}") long primaryWindowMillis,
+                         @Value("${spring.threads.virtual.enabled}") boolean virtualThreads) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        this.offHeapStore = offHeapEnabled
+                ? new OffHeapContactStore(offHeapMaxBytes, Duration.ofSeconds(ttlSeconds).toMillis()) : null;
+        this.loadOutsideOfCache = virtualThreads;
+        this.primaryWindowNanos = TimeUnit.MILLISECONDS.toNanos(primaryWindowMillis);
+        long now = System.nanoTime();
+        for(int i = 0; i < GENERATION_STRIPES; i++) {
+            primaryReadsUntil.set(i, now);
+        }
+        this.jsonCache = jsonCache;
+    }
+
+    /**
+     * Returns cached customer with contacts or loads it. Exception thrown by loader is passed to the caller and
+     * nothing is cached; customer loaded without version (see ContactsFanOut) is returned but not cached either
+     * @param customerId customer id
+     * @param loader function which reads customer with contacts from the database
+     * @return CustomerWithContactsDto object with unmodifiable lists of emails and phones
+     */
+    public CustomerWithContactsDto get(Long customerId, Function<Long, CustomerWithContactsDto> loader) {
+        Function<Long, CustomerWithContactsDto> load = id -> isRecentlyInvalidated(id)
+                ? ReplicaRoutingDataSource.readFromPrimary(() -> loader.apply(id)) : loader.apply(id);
+        if(offHeapStore != null) {
+            return getOffHeap(customerId, load);
+        }
+        if(loadOutsideOfCache) {
+            return getLoadingOutsideOfCache(customerId, load);
+        }
+        CustomerWithContactsDto[] unversioned = new CustomerWithContactsDto[1];
+        CustomerWithContactsDto customer = cache.get(customerId, id -> {
+            CustomerWithContactsDto loaded = copyOf(load.apply(id));
+            if(loaded.getVersion() == CustomerWithContactsDto.NO_VERSION) {
+                // null is not stored by Caffeine
+                unversioned[0] = loaded;
+                return null;
+            }
+            return loaded;
+        });
+        return customer != null ? customer : unversioned[0];
+    }
+
+    /**
+     * Returns cached customer with contacts without loading it
+     * @param customerId customer id
+     * @return CustomerWithContactsDto object, null if the customer is not cached
+     */
+    public CustomerWithContactsDto getIfPresent(Long customerId) {
+        return offHeapStore != null ? offHeapStore.get(customerId) : cache.getIfPresent(customerId);
+    }
+
+    private boolean isRecentlyInvalidated(Long customerId) {
+        return System.nanoTime() - primaryReadsUntil.get(stripeOf(customerId)) < 0;
+    }
+
+    private void startPrimaryReads(int stripe) {
+        primaryReadsUntil.set(stripe, System.nanoTime() + primaryWindowNanos);
+    }
+
+    /**
+     * Loads missing customer without holding a lock of the cache. Loaded customer is stored only if no invalidation
+     * of its stripe of ids happened since the load started; the check and the store are atomic for the key, and
+     * invalidation changes the stripe generation before it removes the key
+     */
+    private CustomerWithContactsDto getLoadingOutsideOfCache(Long customerId,
+                                                             Function<Long, CustomerWithContactsDto> loader) {
+        CustomerWithContactsDto customer = cache.getIfPresent(customerId);
+        if(customer == null) {
+            int stripe = stripeOf(customerId);
+            long generation = generations.get(stripe);
+            CustomerWithContactsDto loaded = copyOf(loader.apply(customerId));
+            cache.asMap().computeIfAbsent(customerId, id -> generations.get(stripe) == generation
+                    && loaded.getVersion() != CustomerWithContactsDto.NO_VERSION ? loaded : null);
+            customer = loaded;
+        }
+        return customer;
+    }
+
+    private CustomerWithContactsDto getOffHeap(long customerId, Function<Long, CustomerWithContactsDto> loader) {
+        CustomerWithContactsDto customer = offHeapStore.get(customerId);
+        if(customer == null) {
+            long generation = offHeapStore.generation(customerId);
+            customer = copyOf(loader.apply(customerId));
+            if(customer.getVersion() != CustomerWithContactsDto.NO_VERSION) {
+                offHeapStore.put(customerId, customer, generation);
+            }
+        }
+        return customer;
+    }
+
+    private static CustomerWithContactsDto copyOf(CustomerWithContactsDto customer) {
+        return new CustomerWithContactsDto(customer.getId(), customer.getName(),
+                List.copyOf(customer.getEmails()), List.copyOf(customer.getPhones()), customer.getVersion());
+    }
+
+    public void invalidate(Long customerId) {
+        if(customerId != null) {
+            startPrimaryReads(stripeOf(customerId));
+            generations.incrementAndGet(stripeOf(customerId));
+            cache.invalidate(customerId);
+            if(offHeapStore != null) {
+                offHeapStore.remove(customerId);
+            }
+            jsonCache.invalidate(customerId);
+        }
+    }
+
+    public void invalidateAll(Iterable<Long> customerIds) {
+        List<Long> ids = new ArrayList<>();
+        customerIds.forEach(customerId -> {
+            if(customerId != null) {
+                ids.add(customerId);
+            }
+        });
+        ids.forEach(customerId -> {
+            startPrimaryReads(stripeOf(customerId));
+            generations.incrementAndGet(stripeOf(customerId));
+        });
+        cache.invalidateAll(ids);
+        if(offHeapStore != null) {
+            ids.forEach(offHeapStore::remove);
+        }
+        ids.forEach(jsonCache::invalidate);
+    }
+
+    public void invalidateAll() {
+        for(int i = 0; i < GENERATION_STRIPES; i++) {
+            startPrimaryReads(i);
+            generations.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+        if(offHeapStore != null) {
+            offHeapStore.clear();
+        }
+        jsonCache.invalidateAll();
+    }
+
+    private static int stripeOf(Long customerId) {
+        return Long.hashCode(customerId) & (GENERATION_STRIPES - 1);
+    }
+
+    public ContactsCacheStatsDto getStats() {
+        if(offHeapStore != null) {
+            long hits = offHeapStore.hitCount();
+            long requests = hits + offHeapStore.missCount();
+            return new ContactsCacheStatsDto(offHeapStore.size(), hits, offHeapStore.missCount(),
+                    offHeapStore.evictionCount(), requests == 0 ? 1.0 : (double) hits / requests,
+                    offHeapStore.allocatedBytes());
+        }
+        CacheStats stats = cache.stats();
+        return new ContactsCacheStatsDto(cache.estimatedSize(), stats.hitCount(), stats.missCount(),
+                stats.evictionCount(), stats.hitRate(), 0);
+    }
+
+}
@@ -0,0 +1,164 @@
+package net.vasilydemin.customercontacts.service;
+
+import jakarta.annotation.PreDestroy;
+import net.vasilydemin.customercontacts.configuration.ReplicaRoutingDataSource;
+import net.vasilydemin.customercontacts.constant.UserMessages;
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
+import net.vasilydemin.customercontacts.dto.EmailDto;
+import net.vasilydemin.customercontacts.dto.PhoneDto;
+import net.vasilydemin.customercontacts.exception.ContactsReadTimeoutException;
+import net.vasilydemin.customercontacts.repository.ContactRow;
+import net.vasilydemin.customercontacts.repository.CustomerRepository;
+import net.vasilydemin.customercontacts.repository.EmailRepository;
+import net.vasilydemin.customercontacts.repository.PhoneRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Parallel read of customer with contacts (application.contactsfanout.enabled) for databases where customer, emails
+ * and phones can't be read by one statement, e.g. when the tables are on different shards. Customer with his version,
+ * emails and phones are read by three queries at once on virtual threads, each query on its own connection.
+ * Results are taken in order of completion and every completed query is checked at once: if customer doesn't exist,
+ * any query fails or the deadline (application.contactsfanout.deadline milliseconds) passes, queries still running
+ * are cancelled by interrupting their threads. Connection of an interrupted query is closed and replaced by the pool.
+ * The version is the response ETag, so it is read again after the contacts: if it has changed meanwhile, the queries
+ * may have seen different versions of the customer, and he is returned without version (no ETag, not cached).
+ * Every query runs in its own read-only transaction, so it goes to a replica, or to the primary database if the
+ * calling thread reads from it (see ReplicaRoutingDataSource)
+ */
+@Component
+public class ContactsFanOut {
+
+    private final Logger logger = LoggerFactory.getLogger(ContactsFanOut.class);
+
+    private final CustomerRepository customerRepository;
+    private final EmailRepository emailRepository;
+    private final PhoneRepository phoneRepository;
+    private final boolean enabled;
+    private final long deadlineMillis;
+    private final ExecutorService executor;
+    private final TransactionTemplate readOnlyTransaction;
+
+    @Autowired
+    public ContactsFanOut(CustomerRepository customerRepository, EmailRepository emailRepository,
+                          PhoneRepository phoneRepository, PlatformTransactionManager transactionManager,
+                          @Value("${application.contactsfanout.enabled}") boolean enabled,
+                          @Value("${application.contactsfanout.deadline}") long deadlineMillis) {
+        this(customerRepository, emailRepository, phoneRepository, transactionManager, enabled, deadlineMillis,
+                Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    ContactsFanOut(CustomerRepository customerRepository, EmailRepository emailRepository,
+                   PhoneRepository phoneRepository, PlatformTransactionManager transactionManager, boolean enabled,
+                   long deadlineMillis, ExecutorService executor) {
+        this.customerRepository = customerRepository;
+        this.emailRepository = emailRepository;
+        this.phoneRepository = phoneRepository;
+        this.enabled = enabled;
+        this.deadlineMillis = deadlineMillis;
+        this.executor = executor;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reads customer with his version, his emails and his phones in parallel, then checks that the version hasn't
+     * changed
+     * @param id customer id
+     * @return CustomerWithContactsDto object, empty if customer with such id doesn't exist. Version of the customer
+     * is NO_VERSION if it changed while the contacts were read
+     * @throws ContactsReadTimeoutException if the queries didn't finish before the deadline
+     */
+    @SuppressWarnings("unchecked")
+    public Optional<CustomerWithContactsDto> readAllContactsByCustomerId(Long id) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        CompletionService<Object> completionService = new ExecutorCompletionService<>(executor);
+        boolean primary = ReplicaRoutingDataSource.isPinnedToPrimary();
+        Future<Object> customer = completionService.submit(
+                () -> query(primary, () -> customerRepository.findCustomerRowById(id)));
+        Future<Object> emails = completionService.submit(
+                () -> query(primary, () -> emailRepository.findAllEmailDtosByCustomerId(id)));
+        Future<Object> phones = completionService.submit(
+                () -> query(primary, () -> phoneRepository.findAllPhoneDtosByCustomerId(id)));
+        List<Future<Object>> queries = List.of(customer, emails, phones);
+        try {
+            for(int i = 0; i < queries.size(); i++) {
+                Future<Object> completed = next(completionService, deadline, id);
+                // get() throws at once if the query failed, so the queries still running are cancelled
+                Object result = completed.get();
+                if(completed == customer && ((Optional<ContactRow>) result).isEmpty()) {
+                    return Optional.empty();
+                }
+            }
+            ContactRow customerFound = ((Optional<ContactRow>) customer.get()).orElseThrow();
+            Optional<Long> versionAfter = (Optional<Long>) query(primary,
+                    () -> customerRepository.findVersionById(id));
+            long version = versionAfter.isPresent() && versionAfter.get().equals(customerFound.getVersion())
+                    ? customerFound.getVersion() : CustomerWithContactsDto.NO_VERSION;
+            if(version == CustomerWithContactsDto.NO_VERSION) {
+                logger.debug("Customer {} changed while his contacts were read", id);
+            }
+            return Optional.of(new CustomerWithContactsDto(id, customerFound.getValue(),
+                    ((List<EmailDto>) emails.get()).stream().map(EmailDto::getEmail).toList(),
+                    ((List<PhoneDto>) phones.get()).stream().map(PhoneDto::getPhone).toList(),
+                    version));
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading contacts of customer " + id, e);
+        } finally {
+            queries.forEach(query -> query.cancel(true));
+        }
+    }
+
+    /**
+     * Waits for the next completed query
+     * @throws ContactsReadTimeoutException if the deadline has passed
+     */
+    private Future<Object> next(CompletionService<Object> completionService, long deadline, Long id)
+            throws InterruptedException {
+        Future<Object> completed = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if(completed == null) {
+            String msg = UserMessages.CONTACTS_READ_TIMED_OUT.getUserMessage()
+                    .replace("%id%", id.toString()).replace("%deadline%", String.valueOf(deadlineMillis));
+            logger.error(msg);
+            throw new ContactsReadTimeoutException(msg);
+        }
+        return completed;
+    }
+
+    private Object query(boolean primary, Supplier<Object> query) {
+        Supplier<Object> transactional = () -> readOnlyTransaction.execute(status -> query.get());
+        return primary ? ReplicaRoutingDataSource.readFromPrimary(transactional) : transactional.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,132 @@
+package net.vasilydemin.customercontacts.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of ready responses with customer contacts: UTF-8 JSON of CustomerWithContactsDto by customer id, with the
+ * customer version read together with the contacts, so a hit is written to the client as is, without building and
+ * serializing the object. Size is
+ * limited by application.contactsjsoncache.maxbytes, entries expire application.contactscache.ttl seconds after
+ * loading. With application.contactsjsoncache.gzip.enabled the JSON is also kept gzipped if it is at least
+ * application.contactsjsoncache.gzip.minsize bytes long.
+ * Entries are invalidated together with ContactsCache. A response serialized from data read before an invalidation
+ * is not stored, like in ContactsCache loading outside of Caffeine
+ */
+@Component
+public class ContactsJsonCache {
+
+    private static final int GENERATION_STRIPES = 1 << 10;
+
+    /**
+     * Serialized customer with contacts
+     * @param version customer version the JSON was made of
+     * @param json UTF-8 JSON
+     * @param gzippedJson gzipped JSON, null if it is not kept
+     */
+    public record ContactsJson(long version, byte[] json, byte[] gzippedJson) {
+
+        private int size() {
+            return json.length + (gzippedJson == null ? 0 : gzippedJson.length);
+        }
+
+    }
+
+    private final Cache<Long, ContactsJson> cache;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final boolean gzipEnabled;
+    private final int gzipMinSize;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public ContactsJsonCache(ObjectMapper objectMapper,
+                             @Value("${application.contactsjsoncache.enabled}") boolean enabled,
+                             @Value("${application.contactsjsoncache.maxbytes}") long maxBytes,
+                             @Value("${application.contactscache.ttl}") long ttlSeconds,
+                             @Value("${application.contactsjsoncache.gzip.enabled}") boolean gzipEnabled,
+                             @Value("${application.contactsjsoncache.gzip.minsize}") int gzipMinSize) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long customerId, ContactsJson contactsJson) -> contactsJson.size())
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.gzipEnabled = gzipEnabled;
+        this.gzipMinSize = gzipMinSize;
+    }
+
+    /**
+     * Returns cached JSON if it was made of the current customer version (or a newer one), otherwise serializes the
+     * customer returned by loader. Exception thrown by loader is passed to the caller and nothing is cached, JSON of
+     * customer loaded without version is not cached either
+     * @param customerId customer id
+     * @param version current customer version
+     * @param loader function which reads customer with contacts and his version
+     * @return ContactsJson object with the version of the customer it was made of, its arrays must not be changed
+     */
+    public ContactsJson get(Long customerId, long version, Function<Long, CustomerWithContactsDto> loader) {
+        if(!enabled) {
+            return serialize(loader.apply(customerId));
+        }
+        ContactsJson contactsJson = cache.getIfPresent(customerId);
+        if(contactsJson == null || contactsJson.version() < version) {
+            int stripe = stripeOf(customerId);
+            long generation = generations.get(stripe);
+            ContactsJson loaded = serialize(loader.apply(customerId));
+            if(loaded.version() != CustomerWithContactsDto.NO_VERSION) {
+                cache.asMap().compute(customerId, (id, cached) -> generations.get(stripe) != generation
+                        || cached != null && cached.version() > loaded.version() ? cached : loaded);
+            }
+            contactsJson = loaded;
+        }
+        return contactsJson;
+    }
+
+    private ContactsJson serialize(CustomerWithContactsDto customer) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(customer);
+            return new ContactsJson(customer.getVersion(), json,
+                    gzipEnabled && json.length >= gzipMinSize ? gzip(json) : null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] json) throws IOException {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream(json.length / 4 + 64);
+        try(GZIPOutputStream gzipOutputStream = new GZIPOutputStream(gzipped)) {
+            gzipOutputStream.write(json);
+        }
+        return gzipped.toByteArray();
+    }
+
+    public void invalidate(Long customerId) {
+        generations.incrementAndGet(stripeOf(customerId));
+        cache.invalidate(customerId);
+    }
+
+    public void invalidateAll() {
+        for(int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+    }
+
+    private static int stripeOf(Long customerId) {
+        return Long.hashCode(customerId) & (GENERATION_STRIPES - 1);
+    }
+
+}
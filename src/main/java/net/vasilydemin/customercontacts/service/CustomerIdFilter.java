@@ -0,0 +1,158 @@
+package net.vasilydemin.customercontacts.service;
+
+import net.vasilydemin.customercontacts.configuration.ReplicaRoutingDataSource;
+import net.vasilydemin.customercontacts.repository.CustomerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filter over ids of existing customers. Ids found in the filter are accepted without database query, ids
+ * missing in the filter are rejected after a primary key lookup on the primary database, which is much cheaper
+ * than reading the customer with contacts.
+ * Filter is built at application start and rebuilt every application.customeridfilter.rebuildinterval
+ * milliseconds (Bloom filter can't forget ids of deleted customers, rebuild does it). Customers created by this
+ * instance are added at once. The build doesn't see customers committed after its snapshot, though their ids may
+ * be lower than the sequence value: ids of pooled blocks taken by other instances or imports, ids of transactions
+ * still running. That's why a missing id is checked in the database, and added to the filter if it exists. Ids
+ * greater than the customer id sequence value read at build time are never rejected. Until the first build is
+ * finished, or if the filter is disabled, all ids are accepted
+ */
+@Component
+public class CustomerIdFilter {
+
+    private final Logger logger = LoggerFactory.getLogger(CustomerIdFilter.class);
+
+    private final CustomerRepository customerRepository;
+    private final boolean enabled;
+    private final int bitCount;
+    private final int hashCount;
+
+    private volatile Bits bits;
+    private volatile Bits bitsInBuild;
+
+    /**
+     * Bit array with the highest id which could exist when the array was built
+     */
+    private record Bits(AtomicLongArray words, long watermark) {
+    }
+
+    public CustomerIdFilter(CustomerRepository customerRepository,
+                            @Value("${application.customeridfilter.enabled}") boolean enabled,
+                            @Value("${application.customeridfilter.expectedsize}") long expectedSize,
+                            @Value("${application.customeridfilter.falsepositiverate}") double falsePositiveRate) {
+        this.customerRepository = customerRepository;
+        this.enabled = enabled;
+        long optimalBitCount = (long) Math.ceil(-expectedSize * Math.log(falsePositiveRate)
+                / (Math.log(2) * Math.log(2)));
+        this.bitCount = (int) Math.max(64, Math.min(optimalBitCount, Integer.MAX_VALUE - 63));
+        this.hashCount = (int) Math.max(1, Math.round((double) bitCount / expectedSize * Math.log(2)));
+    }
+
+    /**
+     * Reads all customer ids and replaces the filter. Customers added during the build get into the new filter too
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${application.customeridfilter.rebuildinterval}",
+            fixedDelayString = "${application.customeridfilter.rebuildinterval}")
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        if(!enabled) {
+            return;
+        }
+        long watermark = customerRepository.findIdSequenceLastValue();
+        Bits newBits = new Bits(new AtomicLongArray((bitCount + 63) / 64), watermark);
+        bitsInBuild = newBits;
+        long count = 0;
+        try (Stream<Long> ids = customerRepository.streamAllIds()) {
+            Iterator<Long> iterator = ids.iterator();
+            while(iterator.hasNext()) {
+                set(newBits, iterator.next());
+                count++;
+            }
+            bits = newBits;
+        } finally {
+            bitsInBuild = null;
+        }
+        logger.info("Customer id filter is built: {} ids, {} bits, {} hash functions", count, bitCount, hashCount);
+    }
+
+    /**
+     * Adds id of created customer to the filter. Filter in build is read first: rebuild publishes new filter before
+     * it forgets the filter in build, so the id can't be missed by both
+     */
+    public void add(Long id) {
+        if(id == null) {
+            return;
+        }
+        Bits inBuild = bitsInBuild;
+        if(inBuild != null) {
+            set(inBuild, id);
+        }
+        Bits current = bits;
+        if(current != null && current != inBuild) {
+            set(current, id);
+        }
+    }
+
+    /**
+     * Should be called before other queries of the transaction, so the lookup of a missing id can take a connection
+     * to the primary database
+     * @return false if customer with specified id doesn't exist, true if it may exist
+     */
+    public boolean mightExist(Long id) {
+        if(isInFilter(id)) {
+            return true;
+        }
+        boolean exists = ReplicaRoutingDataSource.readFromPrimary(() -> customerRepository.existsById(id));
+        if(exists) {
+            add(id);
+        }
+        return exists;
+    }
+
+    private boolean isInFilter(Long id) {
+        Bits current = bits;
+        if(current == null || id > current.watermark()) {
+            return true;
+        }
+        long hash1 = mix(id);
+        long hash2 = mix(hash1) | 1;
+        for(int i = 0; i < hashCount; i++) {
+            int bit = (int) Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            if((current.words().get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void set(Bits target, long id) {
+        long hash1 = mix(id);
+        long hash2 = mix(hash1) | 1;
+        for(int i = 0; i < hashCount; i++) {
+            int bit = (int) Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            long mask = 1L << bit;
+            target.words().getAndUpdate(bit >>> 6, word -> word | mask);
+        }
+    }
+
+    /**
+     * SplitMix64 finalizer, spreads sequential ids over all bits
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+}
@@ -0,0 +1,714 @@
+package net.vasilydemin.customercontacts.service;
+
+import net.vasilydemin.customercontacts.configuration.ReplicaRoutingDataSource;
+import net.vasilydemin.customercontacts.dto.CustomerDto;
+import net.vasilydemin.customercontacts.repository.CustomerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
+
+/**
+ * In-process trigram inverted index over customer names for prefix, substring and fuzzy search.
+ * Names are lower-cased, everything except letters and digits is treated as space. Every word is padded as
+ * pg_trgm does ("  word "), so index has trigrams of word beginnings too, and two more trigrams mark the beginning of
+ * the name ("^^n" and "^na"). Posting lists hold keys of customers ordered by length of the normalized name, then by
+ * id; this is the order of matches within one rank, so the best matches are the first ones found.
+ * Matches are ranked: exact match, name prefix, word prefix, substring. Search intersects posting lists of query
+ * trigrams (leapfrog join, every list is only seeked forward) and checks the names found until there are as many
+ * matches as requested, or MAX_MISSES names are checked in vain. If that pass has stopped early, name prefixes and
+ * word prefixes are looked for the same way with the trigrams of the name beginning or the word beginning added, so
+ * the better matches are found without checking all names of the query trigrams. If there are less results than
+ * requested, names sharing at least application.customernameindex.similarity of trigrams with the query are added
+ * as fuzzy matches. Query words shorter than 3 letters match beginnings of words only.
+ * Index is built at application start from the primary database and rebuilt every
+ * application.customernameindex.rebuildinterval milliseconds (customers changed by other instances get into the
+ * index then). Changes made by this instance are applied at once. Until the first build is finished, or if the index
+ * is disabled, search goes to the database
+ */
+@Component
+public class CustomerNameIndex {
+
+    /**
+     * Trigrams of more names than this are not used to look for fuzzy matches, keeps fuzzy search cheap
+     */
+    private static final int MAX_FUZZY_CANDIDATES = 1_000;
+
+    /**
+     * Names checked by one pass of the search which are not matches of its rank at most, bounds search time when many
+     * names have all trigrams of the query in other order
+     */
+    private static final int MAX_MISSES = 128;
+
+    /**
+     * Substring pass goes first: every match has the query trigrams, so if it checks all such names nothing else is
+     * searched, which is the case of selective queries. Otherwise better ranks are searched with their own trigrams
+     */
+    private static final int[] SEARCH_ORDER = {3, 1, 2};
+
+    /**
+     * Only this many of the shortest posting lists of query trigrams are intersected, names are checked anyway and
+     * long lists add more seeks than they filter out
+     */
+    private static final int MAX_INTERSECTED_QUERY_TRIGRAMS = 6;
+
+    /**
+     * Posting key is length of the normalized name in the high bits and customer id in the low LENGTH_SHIFT bits
+     */
+    private static final int LENGTH_SHIFT = 48;
+    private static final long ID_MASK = (1L << LENGTH_SHIFT) - 1;
+    private static final int MAX_KEY_LENGTH = (1 << (Long.SIZE - 1 - LENGTH_SHIFT)) - 1;
+
+    /**
+     * Pads the name for the trigrams of its beginning, normalized names have only letters, digits and spaces
+     */
+    private static final char NAME_START = '^';
+
+    /**
+     * Posting lists are built of chunks of this size, a chunk is split in two when it grows to MAX_CHUNK ids
+     */
+    private static final int CHUNK = 512;
+    private static final int MAX_CHUNK = 2 * CHUNK;
+
+    private final Logger logger = LoggerFactory.getLogger(CustomerNameIndex.class);
+
+    private final CustomerRepository customerRepository;
+    private final boolean enabled;
+    private final double similarity;
+
+    private volatile Index index;
+    private List<Consumer<Index>> changesDuringBuild;
+
+    /**
+     * Names by customer id and posting lists of customer keys by trigram. Posting lists are replaced on change (copy
+     * on write), so search reads them without locks
+     */
+    private static class Index {
+        private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+        private final Map<String, Posting> postings = new ConcurrentHashMap<>();
+
+        void put(long id, String name) {
+            remove(id);
+            String normalizedName = normalize(name);
+            Set<String> nameTrigrams = trigrams(normalizedName);
+            entries.put(id, new Entry(name, normalizedName, nameTrigrams.size()));
+            long key = keyOf(id, normalizedName);
+            for(String trigram : indexedTrigrams(normalizedName, nameTrigrams)) {
+                postings.compute(trigram,
+                        (trigramKey, posting) -> posting == null ? Posting.of(new long[] {key}) : posting.insert(key));
+            }
+        }
+
+        void remove(long id) {
+            Entry entry = entries.remove(id);
+            if(entry == null) {
+                return;
+            }
+            long key = keyOf(id, entry.normalizedName());
+            for(String trigram : indexedTrigrams(entry.normalizedName(), trigrams(entry.normalizedName()))) {
+                postings.computeIfPresent(trigram, (trigramKey, posting) -> posting.remove(key));
+            }
+        }
+    }
+
+    /**
+     * Sorted customer keys of one trigram as sorted chunks of up to MAX_CHUNK keys. Insert or remove copies one chunk
+     * and the array of chunk references instead of all keys, so a change of a trigram shared by most names is cheap
+     */
+    private static final class Posting {
+        private final long[][] chunks;
+        private final int size;
+
+        private Posting(long[][] chunks, int size) {
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        static Posting of(long[] sortedIds) {
+            long[][] chunks = new long[(sortedIds.length + CHUNK - 1) / CHUNK][];
+            for(int i = 0; i < chunks.length; i++) {
+                chunks[i] = Arrays.copyOfRange(sortedIds, i * CHUNK, Math.min(sortedIds.length, (i + 1) * CHUNK));
+            }
+            return new Posting(chunks, sortedIds.length);
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return index of the last chunk whose first id is not greater than specified one, 0 if there is no such
+         */
+        private int chunkOf(long id) {
+            int low = 0;
+            int high = chunks.length - 1;
+            while(low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if(chunks[middle][0] <= id) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        Posting insert(long id) {
+            int chunkIndex = chunkOf(id);
+            long[] chunk = chunks[chunkIndex];
+            int position = Arrays.binarySearch(chunk, id);
+            if(position >= 0) {
+                return this;
+            }
+            position = -position - 1;
+            long[] newChunk = new long[chunk.length + 1];
+            System.arraycopy(chunk, 0, newChunk, 0, position);
+            newChunk[position] = id;
+            System.arraycopy(chunk, position, newChunk, position + 1, chunk.length - position);
+            long[][] newChunks;
+            if(newChunk.length < MAX_CHUNK) {
+                newChunks = chunks.clone();
+                newChunks[chunkIndex] = newChunk;
+            } else {
+                newChunks = new long[chunks.length + 1][];
+                System.arraycopy(chunks, 0, newChunks, 0, chunkIndex);
+                newChunks[chunkIndex] = Arrays.copyOfRange(newChunk, 0, CHUNK);
+                newChunks[chunkIndex + 1] = Arrays.copyOfRange(newChunk, CHUNK, newChunk.length);
+                System.arraycopy(chunks, chunkIndex + 1, newChunks, chunkIndex + 2, chunks.length - chunkIndex - 1);
+            }
+            return new Posting(newChunks, size + 1);
+        }
+
+        /**
+         * @return posting list without the id, null if the id was the only one
+         */
+        Posting remove(long id) {
+            int chunkIndex = chunkOf(id);
+            long[] chunk = chunks[chunkIndex];
+            int position = Arrays.binarySearch(chunk, id);
+            if(position < 0) {
+                return this;
+            }
+            if(size == 1) {
+                return null;
+            }
+            long[][] newChunks;
+            if(chunk.length == 1) {
+                newChunks = new long[chunks.length - 1][];
+                System.arraycopy(chunks, 0, newChunks, 0, chunkIndex);
+                System.arraycopy(chunks, chunkIndex + 1, newChunks, chunkIndex, chunks.length - chunkIndex - 1);
+            } else {
+                long[] newChunk = new long[chunk.length - 1];
+                System.arraycopy(chunk, 0, newChunk, 0, position);
+                System.arraycopy(chunk, position + 1, newChunk, position, chunk.length - position - 1);
+                newChunks = chunks.clone();
+                newChunks[chunkIndex] = newChunk;
+            }
+            return new Posting(newChunks, size - 1);
+        }
+
+        void forEach(LongConsumer action) {
+            for(long[] chunk : chunks) {
+                for(long id : chunk) {
+                    action.accept(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forward-only position in a posting list
+     */
+    private static final class Cursor {
+        private final long[][] chunks;
+        private int chunk;
+        private int position;
+
+        Cursor(Posting posting) {
+            this.chunks = posting.chunks;
+        }
+
+        /**
+         * Moves to the first key not less than specified one
+         * @return false if there is no such key
+         */
+        boolean seek(long id) {
+            if(lastKey(chunk) < id) {
+                // gallop over chunks by their last keys, a long jump doesn't touch every chunk on the way
+                int step = 1;
+                int low = chunk + 1;
+                int high = low;
+                while(high < chunks.length && lastKey(high) < id) {
+                    low = high + 1;
+                    high += step;
+                    step <<= 1;
+                }
+                if(low >= chunks.length || lastKey(chunks.length - 1) < id) {
+                    return false;
+                }
+                high = Math.min(high, chunks.length - 1);
+                while(low < high) {
+                    int middle = (low + high) >>> 1;
+                    if(lastKey(middle) < id) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                chunk = low;
+                position = 0;
+            }
+            position = gallop(chunks[chunk], position, id);
+            return true;
+        }
+
+        private long lastKey(int chunkIndex) {
+            return chunks[chunkIndex][chunks[chunkIndex].length - 1];
+        }
+
+        long key() {
+            return chunks[chunk][position];
+        }
+    }
+
+    /**
+     * Customer name, normalized name and number of its trigrams
+     */
+    private record Entry(String name, String normalizedName, int trigramCount) {
+    }
+
+    /**
+     * Ids of one trigram collected by parallel build
+     */
+    private static class IdList {
+        private long[] ids = new long[4];
+        private int size;
+
+        synchronized void add(long id) {
+            if(size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        long[] toSortedArray() {
+            long[] result = Arrays.copyOf(ids, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+    /**
+     * @param length length of the normalized name
+     */
+    private record Match(long id, String name, int length, int rank, double similarity) {
+    }
+
+    /**
+     * Within one rank (similarity is 1 for all but fuzzy matches) this is the order of posting keys
+     */
+    private static final Comparator<Match> MATCH_ORDER = Comparator.comparingInt(Match::rank)
+            .thenComparing(Comparator.comparingDouble(Match::similarity).reversed())
+            .thenComparingInt(Match::length)
+            .thenComparingLong(Match::id);
+
+    public CustomerNameIndex(CustomerRepository customerRepository,
+                             @Value("${application.customernameindex.enabled}") boolean enabled,
+                             @Value("${application.customernameindex.similarity}") double similarity) {
+        this.customerRepository = customerRepository;
+        this.enabled = enabled;
+        this.similarity = similarity;
+    }
+
+    /**
+     * Reads all customers and replaces the index. Names are read by one query from the primary database (a lagging
+     * replica would bring back deleted customers and lose created ones until the next build), trigrams are indexed
+     * with parallel stream. Changes made during the build are applied to the new index before it is published
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${application.customernameindex.rebuildinterval}",
+            fixedDelayString = "${application.customernameindex.rebuildinterval}")
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        if(!enabled) {
+            return;
+        }
+        synchronized(this) {
+            changesDuringBuild = new ArrayList<>();
+        }
+        try {
+            List<CustomerDto> customers = ReplicaRoutingDataSource.readFromPrimary(() -> {
+                try (Stream<CustomerDto> customerStream = customerRepository.streamAllCustomerDtos()) {
+                    return customerStream.toList();
+                }
+            });
+            Index newIndex = new Index();
+            Map<String, IdList> idsByTrigram = new ConcurrentHashMap<>();
+            customers.parallelStream().forEach(customer -> {
+                String normalizedName = normalize(customer.getName());
+                Set<String> nameTrigrams = trigrams(normalizedName);
+                newIndex.entries.put(customer.getId(),
+                        new Entry(customer.getName(), normalizedName, nameTrigrams.size()));
+                long key = keyOf(customer.getId(), normalizedName);
+                for(String trigram : indexedTrigrams(normalizedName, nameTrigrams)) {
+                    idsByTrigram.computeIfAbsent(trigram, trigramKey -> new IdList()).add(key);
+                }
+            });
+            idsByTrigram.entrySet().parallelStream()
+                    .forEach(entry -> newIndex.postings.put(entry.getKey(),
+                            Posting.of(entry.getValue().toSortedArray())));
+            synchronized(this) {
+                changesDuringBuild.forEach(change -> change.accept(newIndex));
+                index = newIndex;
+            }
+            logger.info("Customer name index is built: {} names, {} trigrams", newIndex.entries.size(),
+                    newIndex.postings.size());
+        } finally {
+            synchronized(this) {
+                changesDuringBuild = null;
+            }
+        }
+    }
+
+    /**
+     * Adds created customer to the index or replaces name of renamed customer
+     */
+    public void put(Long id, String name) {
+        if(id == null || name == null) {
+            return;
+        }
+        apply(target -> target.put(id, name));
+    }
+
+    /**
+     * Removes deleted customer from the index
+     */
+    public void remove(Long id) {
+        if(id == null) {
+            return;
+        }
+        apply(target -> target.remove(id));
+    }
+
+    private synchronized void apply(Consumer<Index> change) {
+        if(index != null) {
+            change.accept(index);
+        }
+        if(changesDuringBuild != null) {
+            changesDuringBuild.add(change);
+        }
+    }
+
+    /**
+     * @return true if index is built and may be searched
+     */
+    public boolean isReady() {
+        return index != null;
+    }
+
+    /**
+     * Looks for customers by part of the name
+     * @param query part of the name, letters case is ignored
+     * @param limit max number of customers to return
+     * @return customers ordered from the best match: exact match, name prefix, word prefix, substring, fuzzy match.
+     * Empty list if the index isn't built yet
+     */
+    public List<CustomerDto> search(String query, int limit) {
+        Index current = index;
+        String normalizedQuery = normalize(query);
+        if(current == null || normalizedQuery.isEmpty() || limit < 1) {
+            return List.of();
+        }
+        PriorityQueue<Match> worstFirst = new PriorityQueue<>(limit + 1, MATCH_ORDER.reversed());
+        Set<Long> matchedIds = new HashSet<>();
+        Set<String> queryTrigrams = queryTrigrams(normalizedQuery);
+        String wordPrefix = " " + normalizedQuery;
+        // matches found by rank, rank 1 stands for exact match and name prefix, both have the trigrams of the name
+        // beginning
+        int[] ranked = new int[4];
+        boolean allMatched = false;
+        for(int rank : SEARCH_ORDER) {
+            if(allMatched || matchesUpTo(ranked, rank) >= limit) {
+                continue;
+            }
+            int searchedRank = rank;
+            List<String> rankTrigrams = rank == 1 ? List.of(prefixTrigram(NAME_START, normalizedQuery))
+                    : rank == 2 ? List.of(prefixTrigram(' ', normalizedQuery)) : List.of();
+            int[] misses = {0};
+            allMatched = intersect(current, rankTrigrams, queryTrigrams, key -> {
+                long id = key & ID_MASK;
+                Entry entry = current.entries.get(id);
+                int matchRank = entry == null ? -1 : rankOf(entry.normalizedName(), normalizedQuery, wordPrefix);
+                if(matchRank >= 0 && matchedIds.add(id)) {
+                    ranked[Math.max(matchRank, 1)]++;
+                    offer(worstFirst, new Match(id, entry.name(), entry.normalizedName().length(), matchRank, 1),
+                            limit);
+                }
+                if(matchRank < 0 || Math.max(matchRank, 1) > searchedRank) {
+                    misses[0]++;
+                }
+                return matchesUpTo(ranked, searchedRank) < limit && misses[0] < MAX_MISSES;
+            }) && rank == 3;
+        }
+        if(matchedIds.size() < limit && normalizedQuery.length() >= 3) {
+            addFuzzyMatches(current, normalizedQuery, matchedIds, worstFirst, limit);
+        }
+        List<Match> best = new ArrayList<>(worstFirst);
+        best.sort(MATCH_ORDER);
+        return best.stream().map(match -> new CustomerDto(match.id(), match.name())).toList();
+    }
+
+    /**
+     * @param ranked numbers of matches by rank
+     */
+    private static int matchesUpTo(int[] ranked, int rank) {
+        int matches = 0;
+        for(int i = 1; i <= rank; i++) {
+            matches += ranked[i];
+        }
+        return matches;
+    }
+
+    /**
+     * @return 0 for exact match, 1 for name prefix, 2 for word prefix, 3 for substring, -1 if the name doesn't match
+     */
+    private static int rankOf(String normalizedName, String normalizedQuery, String wordPrefix) {
+        if(normalizedName.equals(normalizedQuery)) {
+            return 0;
+        } else if(normalizedName.startsWith(normalizedQuery)) {
+            return 1;
+        } else if(normalizedName.contains(wordPrefix)) {
+            return 2;
+        } else if(normalizedName.contains(normalizedQuery)) {
+            return 3;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the match to the heap of limit best matches in MATCH_ORDER, the worst one is on top
+     */
+    private static void offer(PriorityQueue<Match> worstFirst, Match match, int limit) {
+        if(worstFirst.size() < limit) {
+            worstFirst.add(match);
+        } else if(MATCH_ORDER.compare(match, worstFirst.peek()) < 0) {
+            worstFirst.poll();
+            worstFirst.add(match);
+        }
+    }
+
+    /**
+     * Names sharing enough trigrams with the query (Jaccard similarity of trigram sets, as pg_trgm similarity())
+     */
+    private void addFuzzyMatches(Index current, String normalizedQuery, Set<Long> matchedIds,
+                                 PriorityQueue<Match> worstFirst, int limit) {
+        Set<String> queryTrigrams = trigrams(normalizedQuery);
+        Map<Long, Integer> sharedTrigrams = new HashMap<>();
+        for(String trigram : queryTrigrams) {
+            Posting posting = current.postings.get(trigram);
+            if(posting == null || posting.size() > MAX_FUZZY_CANDIDATES) {
+                continue;
+            }
+            posting.forEach(key -> sharedTrigrams.merge(key & ID_MASK, 1, Integer::sum));
+        }
+        int minShared = (int) Math.ceil(similarity * queryTrigrams.size());
+        sharedTrigrams.forEach((id, shared) -> {
+            if(shared < minShared || matchedIds.contains(id)) {
+                return;
+            }
+            Entry entry = current.entries.get(id);
+            if(entry == null) {
+                return;
+            }
+            double nameSimilarity = (double) shared / (queryTrigrams.size() + entry.trigramCount() - shared);
+            if(nameSimilarity >= similarity) {
+                offer(worstFirst, new Match(id, entry.name(), entry.normalizedName().length(), 4, nameSimilarity),
+                        limit);
+            }
+        });
+    }
+
+    /**
+     * Passes keys having all rank trigrams and the rarest query trigrams to the action in ascending order until it
+     * returns false; nothing is passed if any of the trigrams is not indexed. Leapfrog join: every cursor in turn is
+     * moved to the first key not less than the current candidate, a greater key becomes the new candidate, so runs of
+     * keys missing in another list are skipped by galloping
+     * @return false if the action has stopped the join, true if every key has been passed
+     */
+    private static boolean intersect(Index current, List<String> rankTrigrams, Set<String> queryTrigrams,
+                                     LongPredicate action) {
+        List<Posting> postings = new ArrayList<>(rankTrigrams.size() + queryTrigrams.size());
+        for(String trigram : queryTrigrams) {
+            Posting posting = current.postings.get(trigram);
+            if(posting == null) {
+                return true;
+            }
+            postings.add(posting);
+        }
+        postings.sort(Comparator.comparingInt(Posting::size));
+        postings = new ArrayList<>(postings.subList(0, Math.min(postings.size(), MAX_INTERSECTED_QUERY_TRIGRAMS)));
+        for(String trigram : rankTrigrams) {
+            Posting posting = current.postings.get(trigram);
+            if(posting == null) {
+                return true;
+            }
+            postings.add(posting);
+        }
+        if(postings.isEmpty()) {
+            return true;
+        }
+        postings.sort(Comparator.comparingInt(Posting::size));
+        Cursor[] cursors = new Cursor[postings.size()];
+        for(int j = 0; j < cursors.length; j++) {
+            cursors[j] = new Cursor(postings.get(j));
+        }
+        long candidate = 0;
+        int agreed = 0;
+        for(int j = 0; ; j = (j + 1) % cursors.length) {
+            if(!cursors[j].seek(candidate)) {
+                return true;
+            }
+            long key = cursors[j].key();
+            if(key == candidate) {
+                agreed++;
+            } else {
+                candidate = key;
+                agreed = 1;
+            }
+            if(agreed == cursors.length) {
+                if(!action.test(candidate)) {
+                    return false;
+                }
+                candidate++;
+                agreed = 0;
+            }
+        }
+    }
+
+    /**
+     * Position of the first key not less than specified one, searched from position "from" with growing steps. Keys
+     * are checked in ascending order, so every array is scanned forward only
+     */
+    private static int gallop(long[] ids, int from, long id) {
+        int step = 1;
+        int low = from;
+        int high = from;
+        while(high < ids.length && ids[high] < id) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        int position = Arrays.binarySearch(ids, low, Math.min(high + 1, ids.length), id);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /**
+     * Trigrams every matching name must have: all trigrams inside query words and trigrams of the word beginning for
+     * words shorter than 3 letters and for every word after the first one (it follows a space, so a word of the name
+     * starts with it)
+     */
+    private static Set<String> queryTrigrams(String normalizedQuery) {
+        Set<String> result = new LinkedHashSet<>();
+        String[] words = normalizedQuery.split(" ");
+        for(int w = 0; w < words.length; w++) {
+            if(w > 0 || words[w].length() < 3) {
+                result.add(prefixTrigram(' ', words[w]));
+            }
+            for(int i = 0; i + 3 <= words[w].length(); i++) {
+                result.add(words[w].substring(i, i + 3));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Trigram a name must have to start with the query (NAME_START padding) or to have a word starting with it (space
+     * padding): the padded first two letters, the trigram of the first letter alone is implied by it
+     */
+    private static String prefixTrigram(char padding, String normalizedQuery) {
+        String padded = "" + padding + padding + normalizedQuery;
+        return normalizedQuery.length() == 1 ? padded : padded.substring(1, 4);
+    }
+
+    /**
+     * Trigrams of the name with the trigrams of its beginning, as they are put to posting lists
+     */
+    private static Set<String> indexedTrigrams(String normalizedName, Set<String> nameTrigrams) {
+        if(normalizedName.isEmpty()) {
+            return nameTrigrams;
+        }
+        Set<String> result = new LinkedHashSet<>(nameTrigrams);
+        String padded = "" + NAME_START + NAME_START + normalizedName + " ";
+        result.add(padded.substring(0, 3));
+        result.add(padded.substring(1, 4));
+        return result;
+    }
+
+    /**
+     * Posting key of the customer, names longer than MAX_KEY_LENGTH share the greatest length
+     */
+    private static long keyOf(long id, String normalizedName) {
+        return (long) Math.min(normalizedName.length(), MAX_KEY_LENGTH) << LENGTH_SHIFT | id;
+    }
+
+    /**
+     * Trigrams of padded words of the name
+     */
+    static Set<String> trigrams(String normalizedName) {
+        Set<String> result = new LinkedHashSet<>();
+        if(normalizedName.isEmpty()) {
+            return result;
+        }
+        for(String word : normalizedName.split(" ")) {
+            String padded = "  " + word + " ";
+            for(int i = 0; i + 3 <= padded.length(); i++) {
+                result.add(padded.substring(i, i + 3));
+            }
+        }
+        return result;
+    }
+
+    static String normalize(String value) {
+        if(value == null) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        boolean space = true;
+        for(char c : value.toLowerCase(Locale.ROOT).toCharArray()) {
+            if(Character.isLetterOrDigit(c)) {
+                result.append(c);
+                space = false;
+            } else if(!space) {
+                result.append(' ');
+                space = true;
+            }
+        }
+        int length = result.length();
+        if(length > 0 && result.charAt(length - 1) == ' ') {
+            result.setLength(length - 1);
+        }
+        return result.toString();
+    }
+
+}
@@ -3,25 +3,48 @@ package net.vasilydemin.customercontacts.service;
 import net.vasilydemin.customercontacts.constant.ContactType;
 import net.vasilydemin.customercontacts.constant.UserMessages;
 import net.vasilydemin.customercontacts.dto.CustomerDto;
+import net.vasilydemin.customercontacts.dto.CustomerSliceDto;
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsBatchDto;
 import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
+import net.vasilydemin.customercontacts.dto.EmailDto;
+import net.vasilydemin.customercontacts.dto.PhoneDto;
 import net.vasilydemin.customercontacts.entity.Customer;
-import net.vasilydemin.customercontacts.entity.Email;
-import net.vasilydemin.customercontacts.entity.Phone;
 import net.vasilydemin.customercontacts.exception.ContactTypeIsWrongException;
+import net.vasilydemin.customercontacts.exception.ContactsReadTimeoutException;
+import net.vasilydemin.customercontacts.exception.CustomerNameIsInTheDatabaseAlreadyException;
+import net.vasilydemin.customercontacts.exception.CustomerWithSuchContactNotFoundException;
 import net.vasilydemin.customercontacts.exception.CustomerWithSuchIdNotFoundException;
 import net.vasilydemin.customercontacts.exception.CustomerWithSuchNameNotFoundException;
+import net.vasilydemin.customercontacts.exception.DataIntegrityViolations;
+import net.vasilydemin.customercontacts.exception.PageTokenIsWrongException;
+import net.vasilydemin.customercontacts.exception.TooManyIdsInBatchException;
+import net.vasilydemin.customercontacts.exception.VersionDoesNotMatchException;
 import net.vasilydemin.customercontacts.mapper.CustomerMapper;
+import net.vasilydemin.customercontacts.repository.ContactRow;
 import net.vasilydemin.customercontacts.repository.CustomerRepository;
 import net.vasilydemin.customercontacts.repository.EmailRepository;
 import net.vasilydemin.customercontacts.repository.PhoneRepository;
+import net.vasilydemin.customercontacts.util.PhoneNumbers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
@@ -29,33 +52,89 @@ public class CustomerService {
 
     private final Logger logger = LoggerFactory.getLogger(CustomerService.class);
 
+    private static final String PAGE_TOKEN_PREFIX = "id:";
+
+    @Value("${application.batch.maxids}")
+    private int maxBatchIds;
+
+    @Value("${application.customernameindex.maxresults}")
+    private int maxSearchResults;
+
     private final CustomerRepository customerRepository;
     private final CustomerMapper customerMapper;
     private final EmailRepository emailRepository;
     private final PhoneRepository phoneRepository;
+    private final ContactsCache contactsCache;
+    private final CustomerIdFilter customerIdFilter;
+    private final CustomerNameIndex customerNameIndex;
+    private final ContactOwnerIndex contactOwnerIndex;
+    private final ContactsFanOut contactsFanOut;
+    private final ContactsJsonCache contactsJsonCache;
+    /**
+     * Cache loaders run inside the cache, not in a @Transactional method, so they start read-only transaction
+     * themselves: without it the query would go to the primary database instead of a replica
+     */
+    private final TransactionTemplate readOnlyTransaction;
     public CustomerService(CustomerRepository customerRepository, CustomerMapper customerMapper,
                            EmailRepository emailRepository,
-                           PhoneRepository phoneRepository) {
+                           PhoneRepository phoneRepository, ContactsCache contactsCache,
+                           CustomerIdFilter customerIdFilter, CustomerNameIndex customerNameIndex,
+                           ContactOwnerIndex contactOwnerIndex, ContactsFanOut contactsFanOut,
+                           ContactsJsonCache contactsJsonCache, PlatformTransactionManager transactionManager) {
         this.customerRepository = customerRepository;
         this.customerMapper = customerMapper;
         this.emailRepository = emailRepository;
         this.phoneRepository = phoneRepository;
+        this.contactsCache = contactsCache;
+        this.customerIdFilter = customerIdFilter;
+        this.customerNameIndex = customerNameIndex;
+        this.contactOwnerIndex = contactOwnerIndex;
+        this.contactsFanOut = contactsFanOut;
+        this.contactsJsonCache = contactsJsonCache;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
     /**
      * Create customer with selected name in the database
      * @param name String with customer name
      * @return CustomerDto object. If customer with such name already exists in the database then returns existing
-     * customer data, if not then create new customer and return his data. Database search ignores letters case
+     * customer data, if not then create new customer and return his data. Database search ignores letters case.
+     * Check and insert are done by one statement, so parallel calls with the same name create one customer
      */
     public CustomerDto createCustomer(String name){
-        Optional<Customer> customerFound = customerRepository.findCustomerByNameIgnoreCase(name);
+        Optional<Customer> customerFound = customerRepository.upsertCustomer(name);
         if(customerFound.isEmpty()) {
-            Customer customer = new Customer(0L, name);
-            return customerMapper.entityToDto(customerRepository.save(customer));
-        } else {
-            return customerMapper.entityToDto(customerFound.get());
+            // Customer with such name was inserted by concurrent transaction after the statement had started
+            customerFound = customerRepository.upsertCustomer(name);
         }
+        customerIdFilter.add(customerFound.orElseThrow().getId());
+        customerNameIndex.put(customerFound.get().getId(), customerFound.get().getName());
+        return customerMapper.entityToDto(customerFound.get());
+    }
+
+    /**
+     * Read version of customer with selected id, it changes with any change of the customer and his emails and phones.
+     * Version of a customer in contacts cache is taken from there: the entry is invalidated by every change, so the
+     * database is queried only on a cache miss
+     * @param id Customer id
+     * @return version of the customer record
+     * @throws CustomerWithSuchIdNotFoundException if customer with such id doesn't exist in the database
+     */
+    public long readCustomerVersion(Long id) {
+        checkCustomerIdMightExist(id);
+        CustomerWithContactsDto customerCached = contactsCache.getIfPresent(id);
+        if(customerCached != null && customerCached.getVersion() != CustomerWithContactsDto.NO_VERSION) {
+            return customerCached.getVersion();
+        }
+        Optional<Long> versionFound = customerRepository.findVersionById(id);
+        if(versionFound.isEmpty()) {
+            String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                    .replace("%id%", id.toString());
+            logger.error(msg);
+            throw new CustomerWithSuchIdNotFoundException(msg);
+        }
+        return versionFound.get();
     }
 
     /**
@@ -64,15 +143,17 @@ public class CustomerService {
      * @return CustomerDto object with found data
      * @throws CustomerWithSuchIdNotFoundException if customer with such name doesn't exist in the database
      */
+    @Transactional(readOnly = true)
     public CustomerDto readCustomerById(Long id){
-        Optional<Customer> customerFound = customerRepository.findCustomerById(id);
+        checkCustomerIdMightExist(id);
+        Optional<CustomerDto> customerFound = customerRepository.findCustomerDtoById(id);
         if(customerFound.isEmpty()) {
             String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
                     .replace("%id%", id.toString());
             logger.error(msg);
             throw new CustomerWithSuchIdNotFoundException(msg);
         } else {
-            return customerMapper.entityToDto(customerFound.get());
+            return customerFound.get();
         }
     }
 
@@ -82,10 +163,11 @@ public class CustomerService {
      * @return CustomerDto object
      * @throws CustomerWithSuchNameNotFoundException if customer with such name doesn't exist in the database
      */
+    @Transactional(readOnly = true)
     public CustomerDto readCustomerByName(String name) {
-        Optional<Customer> customerFound = customerRepository.findCustomerByNameIgnoreCase(name);
+        Optional<CustomerDto> customerFound = customerRepository.findCustomerDtoByNameIgnoreCase(name);
         if(customerFound.isPresent()) {
-            return customerMapper.entityToDto(customerFound.get());
+            return customerFound.get();
         } else {
             String msg = UserMessages.CUSTOMER_WITH_SUCH_NAME_NOT_FOUND.getUserMessage().replace("%name%", name);
             logger.error(msg);
@@ -95,96 +177,279 @@ public class CustomerService {
 
     /**
      * Read all customers from the database. This is a bad style if written without pagination
-     * @return List (array) of CustomerDto objects, unsorted with pagination (default or obtained from the http request)
+     * @return List (array) of CustomerDto objects, sorted by id with pagination (default or obtained from the http
+     * request). Total count of customers is not calculated
      */
+    @Transactional(readOnly = true)
     public List<CustomerDto> readAllCustomers(int pageNumber, int itemsPerPage) {
-        Sort sorting = Sort.unsorted();
+        Sort sorting = Sort.by("id");
         Pageable pageRequest = PageRequest.of(pageNumber, itemsPerPage, sorting);
-        return customerRepository.findAll(pageRequest).stream()
-                .map(customerMapper::entityToDto)
-                .toList();
+        return customerRepository.findAllCustomerDtos(pageRequest).getContent();
+    }
+
+    /**
+     * Read customers from the database with keyset pagination. Every slice costs the same regardless of its
+     * position in the list, because database seeks by primary key instead of skipping rows
+     * @param pageToken opaque token from the previous slice, null or blank for the first slice
+     * @param limit maximum number of customers in the slice
+     * @return CustomerSliceDto object with customers sorted by id and token for the next slice
+     * @throws PageTokenIsWrongException if page token was not generated by this method
+     */
+    @Transactional(readOnly = true)
+    public CustomerSliceDto readCustomersAfter(String pageToken, int limit) {
+        long afterId = (pageToken == null || pageToken.isBlank()) ? 0L : decodePageToken(pageToken);
+        Slice<CustomerDto> slice = customerRepository.findAllCustomerDtosByIdGreaterThan(afterId,
+                PageRequest.of(0, limit));
+        List<CustomerDto> customers = slice.getContent();
+        String nextPageToken = slice.hasNext() ? encodePageToken(customers.get(customers.size() - 1).getId()) : null;
+        return new CustomerSliceDto(customers, nextPageToken);
     }
 
     /**
-     * Update selected customer with data from CustomerDto
+     * Search customers by part of the name (prefix, substring or fuzzy match) in customer name index. Until the index
+     * is built, customers whose names contain the query are read from the database
+     * @param query part of the customer name, letters case is ignored
+     * @param limit maximum number of customers to return, no more than application.customernameindex.maxresults
+     * @return list of CustomerDto objects from the best match, empty list for blank query
+     */
+    public List<CustomerDto> searchCustomersByName(String query, int limit) {
+        if(query == null || query.isBlank()) {
+            return List.of();
+        }
+        int resultsLimit = Math.min(limit, maxSearchResults);
+        if(customerNameIndex.isReady()) {
+            return customerNameIndex.search(query, resultsLimit);
+        }
+        String pattern = query.trim().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return customerRepository.findAllCustomerDtosByNameContaining(pattern, PageRequest.of(0, resultsLimit));
+    }
+
+    /**
+     * Update selected customer with data from CustomerDto. Update is done by one statement, unique index checks that
+     * the name isn't used by another customer
      * @param customerDto customer DTO obtained from frontend
+     * @param version version of the customer the client has (If-Match header), null to update any version
      * @return CustomerDto with updated fields
      * @throws CustomerWithSuchIdNotFoundException if customer with id from DTO was not found in the database
+     * @throws CustomerNameIsInTheDatabaseAlreadyException if another customer has the same name ignoring letters case
+     * @throws VersionDoesNotMatchException if the customer has another version
      */
-    public CustomerDto updateCustomer(CustomerDto customerDto) {
-        Optional<Customer> customerFound = customerRepository.findCustomerById(customerDto.getId());
-        if(customerFound.isEmpty()) {
+    public CustomerDto updateCustomer(CustomerDto customerDto, Long version) {
+        Optional<Customer> customerUpdated;
+        try {
+            customerUpdated = customerRepository.updateCustomerName(customerDto.getId(), customerDto.getName(),
+                    version);
+        } catch (DataIntegrityViolationException e) {
+            if(DataIntegrityViolations.isUniqueViolation(e)) {
+                String msg = UserMessages.CUSTOMER_NAME_IS_IN_THE_DATABASE_ALREADY.getUserMessage()
+                        .replace("%name%", customerDto.getName());
+                logger.error(msg);
+                throw new CustomerNameIsInTheDatabaseAlreadyException(msg);
+            }
+            throw e;
+        }
+        if(customerUpdated.isEmpty()) {
+            checkVersionIsNotChanged(customerDto.getId(), version);
             String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
                     .replace("%id%", customerDto.getId().toString());
             logger.error(msg);
             throw new CustomerWithSuchIdNotFoundException(msg);
-        } else {
-            return customerMapper.entityToDto(customerRepository.save(customerMapper.dtoToEntity(customerDto)));
         }
+        contactsCache.invalidate(customerUpdated.get().getId());
+        customerNameIndex.put(customerUpdated.get().getId(), customerUpdated.get().getName());
+        return customerMapper.entityToDto(customerUpdated.get());
     }
 
     /**
-     * Delete specified customer from the database
+     * Delete specified customer from the database with one statement, his emails and phones are deleted by the
+     * database (on delete cascade)
      * @param customerDto customer to delete (only id field is being used to look for specified customer)
+     * @param version version of the customer the client has (If-Match header), null to delete any version
      * @return CustomerDto with deleted customer record data
      * @throws CustomerWithSuchIdNotFoundException if customer with id specified in the customerDto was not found
      * in the database
+     * @throws VersionDoesNotMatchException if the customer has another version
      */
-    public CustomerDto deleteCustomer(CustomerDto customerDto){
-        Optional<Customer> customerFound = customerRepository.findCustomerById(customerDto.getId());
-        if(customerFound.isEmpty()) {
+    public CustomerDto deleteCustomer(CustomerDto customerDto, Long version){
+        Optional<Customer> customerDeleted = customerRepository.deleteCustomerById(customerDto.getId(), version);
+        if(customerDeleted.isEmpty()) {
+            checkVersionIsNotChanged(customerDto.getId(), version);
             String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
                     .replace("%id%", customerDto.getId().toString());
             logger.error(msg);
             throw new CustomerWithSuchIdNotFoundException(msg);
         } else {
-            customerRepository.delete(customerFound.get());
-            return customerMapper.entityToDto(customerFound.get());
+            contactsCache.invalidate(customerDeleted.get().getId());
+            customerNameIndex.remove(customerDeleted.get().getId());
+            return customerMapper.entityToDto(customerDeleted.get());
         }
     }
 
     /**
-     * Method to read all customer information from the database (customer, email, phone repositories)
+     * Method to read all customer information (customer, emails and phones) from contacts cache or from the
+     * database in one query (three parallel queries with application.contactsfanout.enabled)
      * @param id customer id
      * @return CustomerWithContactsDto object
      * @throws CustomerWithSuchIdNotFoundException if customer with specified id was not found in the database
+     * @throws ContactsReadTimeoutException if parallel queries didn't finish before the deadline
      */
     public CustomerWithContactsDto readAllContactsByCustomerId(Long id) {
-        Optional<Customer> customerFound = customerRepository.findCustomerById(id);
+        checkCustomerIdMightExist(id);
+        return contactsCache.get(id, this::loadAllContactsByCustomerId);
+    }
+
+    /**
+     * Method to read all customer information as ready JSON response from contacts JSON cache. On a miss, or if the
+     * cached JSON was made for an older version, the customer is read like in readAllContactsByCustomerId; if contacts
+     * cache returns an older version too (it was loaded before a change made by another instance), the entry is
+     * invalidated and the customer is read from the database. Customer read without version (see ContactsFanOut) is
+     * serialized as is and not cached
+     * @param id customer id
+     * @param version current customer version, see readCustomerVersion
+     * @return ContactsJson object with UTF-8 JSON of CustomerWithContactsDto and the customer version it was made of
+     * @throws CustomerWithSuchIdNotFoundException if customer with specified id was not found in the database
+     * @throws ContactsReadTimeoutException if parallel queries didn't finish before the deadline
+     */
+    public ContactsJsonCache.ContactsJson readAllContactsJsonByCustomerId(Long id, long version) {
+        return contactsJsonCache.get(id, version, customerId -> {
+            CustomerWithContactsDto customer = readAllContactsByCustomerId(customerId);
+            if(customer.getVersion() != CustomerWithContactsDto.NO_VERSION && customer.getVersion() < version) {
+                contactsCache.invalidate(customerId);
+                customer = readAllContactsByCustomerId(customerId);
+            }
+            return customer;
+        });
+    }
+
+    /**
+     * Method to find owner of email or phone with all his contacts. Owner id is taken from contact owner index if it
+     * knows the value and customer is read from contacts cache; if the customer doesn't have this email or phone any
+     * more, or the value is unknown, owner and his contacts are read from the database in one query. Phone is
+     * matched by its canonical number, so any formatting of the number finds the owner
+     * @param value email or phone, letters case is ignored
+     * @return CustomerWithContactsDto object
+     * @throws CustomerWithSuchContactNotFoundException if nobody owns such email or phone
+     */
+    public CustomerWithContactsDto readCustomerByContact(String value) {
+        String contact = value.trim();
+        Long phoneKey = PhoneNumbers.toKey(contact);
+        String indexKey = phoneKey != null ? PhoneNumbers.format(phoneKey) : contact;
+        Long ownerId = contactOwnerIndex.getOwnerId(indexKey);
+        if(ownerId != null) {
+            try {
+                CustomerWithContactsDto customer = contactsCache.get(ownerId, this::loadAllContactsByCustomerId);
+                if(hasContact(customer, contact, phoneKey)) {
+                    return customer;
+                }
+            } catch (CustomerWithSuchIdNotFoundException e) {
+                logger.debug("Owner {} of {} was deleted", ownerId, contact);
+            }
+            contactOwnerIndex.remove(indexKey);
+        }
+        List<ContactRow> contactRows = contact.isEmpty() ? List.of() : readOnlyTransaction.execute(
+                status -> customerRepository.findAllContactsByContactValue(contact, phoneKey));
+        if(contactRows.isEmpty()) {
+            String msg = UserMessages.CUSTOMER_WITH_SUCH_CONTACT_NOT_FOUND.getUserMessage().replace("%value%", contact);
+            logger.error(msg);
+            throw new CustomerWithSuchContactNotFoundException(msg);
+        }
+        CustomerWithContactsDto customerFound = customerMapper.contactRowsToDtos(contactRows).get(0);
+        contactOwnerIndex.put(indexKey, customerFound.getId());
+        return contactsCache.get(customerFound.getId(), id -> customerFound);
+    }
+
+    private static boolean hasContact(CustomerWithContactsDto customer, String contact, Long phoneKey) {
+        if(phoneKey != null) {
+            return customer.getPhones().stream().anyMatch(phone -> phoneKey.equals(PhoneNumbers.toKey(phone)));
+        }
+        return customer.getEmails().stream().anyMatch(contact::equalsIgnoreCase);
+    }
+
+    /**
+     * Reads customer with contacts by one query in read-only transaction, or by three parallel queries if contacts
+     * fan-out is enabled (every query of the fan-out runs in its own read-only transaction)
+     */
+    private CustomerWithContactsDto loadAllContactsByCustomerId(Long id) {
+        Optional<CustomerWithContactsDto> customerFound;
+        if(contactsFanOut.isEnabled()) {
+            customerFound = contactsFanOut.readAllContactsByCustomerId(id);
+        } else {
+            List<ContactRow> contactRows = readOnlyTransaction.execute(
+                    status -> customerRepository.findAllContactsByCustomerId(id));
+            customerFound = contactRows.isEmpty() ? Optional.empty()
+                    : Optional.of(customerMapper.contactRowsToDtos(contactRows).get(0));
+        }
         if(customerFound.isEmpty()) {
             String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
                     .replace("%id%", id.toString());
             logger.error(msg);
             throw new CustomerWithSuchIdNotFoundException(msg);
         }
-        List<String> emails = emailRepository.findAllByCustomerId(id).stream().map(Email::getEmail).toList();
-        List<String> phones = phoneRepository.findAllByCustomerId(id).stream().map(Phone::getPhone).toList();
-        return new CustomerWithContactsDto(customerFound.get().getId(),
-                customerFound.get().getName(), emails, phones);
+        return customerFound.get();
+    }
+
+    /**
+     * Method to read all customer information for several customers at once. It makes fixed number of queries
+     * (customers, emails and phones) regardless of number of ids
+     * @param ids list of customer ids, duplicates and nulls are ignored
+     * @return CustomerWithContactsBatchDto object with found customers (in the order of requested ids) and list of
+     * ids which were not found in the database
+     * @throws TooManyIdsInBatchException if there are more ids than application.batch.maxids setting allows
+     */
+    @Transactional(readOnly = true)
+    public CustomerWithContactsBatchDto readAllContactsByCustomerIds(List<Long> ids) {
+        List<Long> distinctIds = ids.stream().filter(Objects::nonNull).distinct().toList();
+        if(distinctIds.size() > maxBatchIds) {
+            String msg = UserMessages.TOO_MANY_IDS_IN_BATCH.getUserMessage()
+                    .replace("%count%", String.valueOf(distinctIds.size()))
+                    .replace("%max%", String.valueOf(maxBatchIds));
+            logger.error(msg);
+            throw new TooManyIdsInBatchException(msg);
+        }
+        Map<Long, CustomerWithContactsDto> customersFound = new HashMap<>();
+        if(!distinctIds.isEmpty()) {
+            for(CustomerDto customer : customerRepository.findAllCustomerDtosByIdIn(distinctIds)) {
+                customersFound.put(customer.getId(), new CustomerWithContactsDto(customer.getId(), customer.getName(),
+                        new ArrayList<>(), new ArrayList<>()));
+            }
+        }
+        if(!customersFound.isEmpty()) {
+            for(EmailDto email : emailRepository.findAllEmailDtosByCustomerIdIn(customersFound.keySet())) {
+                customersFound.get(email.getCustomerId()).getEmails().add(email.getEmail());
+            }
+            for(PhoneDto phone : phoneRepository.findAllPhoneDtosByCustomerIdIn(customersFound.keySet())) {
+                customersFound.get(phone.getCustomerId()).getPhones().add(phone.getPhone());
+            }
+        }
+        List<CustomerWithContactsDto> customers = new ArrayList<>();
+        List<Long> missingIds = new ArrayList<>();
+        for(Long id : distinctIds) {
+            if(customersFound.containsKey(id)) {
+                customers.add(customersFound.get(id));
+            } else {
+                missingIds.add(id);
+            }
+        }
+        return new CustomerWithContactsBatchDto(customers, missingIds);
     }
 
     /**
-     * Method to read all customer contacts from the database by customer id and type of contacts (email or phone)
+     * Method to read all customer contacts by customer id and type of contacts (email or phone). Contacts are taken
+     * from the same cache entry as readAllContactsByCustomerId uses
      * @param id customer id
      * @param type contacts type (email or phone)
      * @return List (array) of strings containing contacts of specific type
      * @throws CustomerWithSuchIdNotFoundException if customer with specified id was not found in the database
      */
     public List<String> readAllContactsByCustomerIdAndByType(Long id, String type) {
-        Optional<Customer> customerFound = customerRepository.findCustomerById(id);
-        if(customerFound.isEmpty()) {
-            String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
-                    .replace("%id%", id.toString());
-            logger.error(msg);
-            throw new CustomerWithSuchIdNotFoundException(msg);
-        }
+        CustomerWithContactsDto customer = readAllContactsByCustomerId(id);
         ContactType contactType = ContactType.getContactTypeByName(type.toLowerCase());
         switch(contactType) {
             case EMAIL -> {
-                return emailRepository.findAllByCustomerId(id).stream().map(Email::getEmail).toList();
+                return customer.getEmails();
             }
             case PHONE -> {
-                return phoneRepository.findAllByCustomerId(id).stream().map(Phone::getPhone).toList();
+                return customer.getPhones();
             }
             default -> {
                 String msg = UserMessages.CONTACT_TYPE_IS_WRONG.getUserMessage().replace("%type%", type);
@@ -194,4 +459,55 @@ public class CustomerService {
         }
     }
 
+    /**
+     * Rejects ids which are definitely unknown without database query. Such requests are usually sent by scrapers,
+     * so the exception is thrown without stack trace and logged at debug level only
+     * @throws CustomerWithSuchIdNotFoundException if customer id filter doesn't contain specified id
+     */
+    private void checkCustomerIdMightExist(Long id) {
+        if(!customerIdFilter.mightExist(id)) {
+            String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                    .replace("%id%", id.toString());
+            logger.debug(msg);
+            throw new CustomerWithSuchIdNotFoundException(msg, false);
+        }
+    }
+
+    /**
+     * Called when update or delete with expected version didn't find the customer: if the customer exists, he was
+     * changed after the client had read him
+     */
+    private void checkVersionIsNotChanged(Long id, Long version) {
+        if(version == null) {
+            return;
+        }
+        Optional<Long> versionFound = customerRepository.findVersionById(id);
+        if(versionFound.isPresent()) {
+            String msg = UserMessages.VERSION_DOES_NOT_MATCH.getUserMessage().replace("%record%", "customer")
+                    .replace("%id%", id.toString()).replace("%version%", versionFound.get().toString())
+                    .replace("%expected%", version.toString());
+            logger.error(msg);
+            throw new VersionDoesNotMatchException(msg);
+        }
+    }
+
+    private String encodePageToken(Long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PAGE_TOKEN_PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long decodePageToken(String pageToken) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+            if(decoded.startsWith(PAGE_TOKEN_PREFIX)) {
+                return Long.parseLong(decoded.substring(PAGE_TOKEN_PREFIX.length()));
+            }
+        } catch (IllegalArgumentException e) {
+            // falls through to the exception below
+        }
+        String msg = UserMessages.PAGE_TOKEN_IS_WRONG.getUserMessage().replace("%token%", pageToken);
+        logger.error(msg);
+        throw new PageTokenIsWrongException(msg);
+    }
+
 }
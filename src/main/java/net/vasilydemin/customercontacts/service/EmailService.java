@@ -1,22 +1,35 @@
 package net.vasilydemin.customercontacts.service;
 
+import net.vasilydemin.customercontacts.constant.BatchItemStatus;
+import net.vasilydemin.customercontacts.constant.BatchMode;
 import net.vasilydemin.customercontacts.constant.UserMessages;
+import net.vasilydemin.customercontacts.dto.BatchItemResultDto;
+import net.vasilydemin.customercontacts.dto.BatchResultDto;
 import net.vasilydemin.customercontacts.dto.EmailDto;
-import net.vasilydemin.customercontacts.entity.Customer;
 import net.vasilydemin.customercontacts.entity.Email;
 import net.vasilydemin.customercontacts.exception.CustomerMustNotBeNullException;
 import net.vasilydemin.customercontacts.exception.CustomerWithSuchIdNotFoundException;
+import net.vasilydemin.customercontacts.exception.DataIntegrityViolations;
 import net.vasilydemin.customercontacts.exception.EmailIsInTheDatabaseAlreadyException;
 import net.vasilydemin.customercontacts.exception.EmailWithSuchIdNotFoundException;
+import net.vasilydemin.customercontacts.exception.VersionDoesNotMatchException;
 import net.vasilydemin.customercontacts.mapper.EmailMapper;
+import net.vasilydemin.customercontacts.repository.ContactUpdateRow;
 import net.vasilydemin.customercontacts.repository.CustomerRepository;
 import net.vasilydemin.customercontacts.repository.EmailRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class EmailService {
@@ -25,11 +38,16 @@ public class EmailService {
     private final EmailRepository emailRepository;
     private final EmailMapper emailMapper;
     private final CustomerRepository customerRepository;
+    private final ContactsCache contactsCache;
+    private final ContactBatchExecutor contactBatchExecutor;
 
-    public EmailService(EmailRepository emailRepository, EmailMapper emailMapper, CustomerRepository customerRepository) {
+    public EmailService(EmailRepository emailRepository, EmailMapper emailMapper, CustomerRepository customerRepository,
+                        ContactsCache contactsCache, ContactBatchExecutor contactBatchExecutor) {
         this.emailRepository = emailRepository;
         this.emailMapper = emailMapper;
         this.customerRepository = customerRepository;
+        this.contactsCache = contactsCache;
+        this.contactBatchExecutor = contactBatchExecutor;
     }
 
     /**
@@ -50,23 +68,37 @@ public class EmailService {
             logger.error(UserMessages.CUSTOMER_ID_MUST_NOT_BE_NULL.getUserMessage());
             throw new CustomerMustNotBeNullException(UserMessages.CUSTOMER_ID_MUST_NOT_BE_NULL.getUserMessage());
         }
-        Optional<Customer> customerFound = customerRepository.findCustomerById(emailDto.getCustomerId());
-        if(customerFound.isEmpty()) {
-            String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
-                    .replace("%id%", emailDto.getCustomerId().toString());
-            logger.error(msg);
-            throw new CustomerWithSuchIdNotFoundException(msg);
-        }
-        Optional<Email> emailFound = emailRepository.findEmailByEmailIgnoreCase(emailDto.getEmail());
-        if(emailFound.isPresent() && emailFound.get().getCustomerId().equals(emailDto.getCustomerId())) {
-            return emailMapper.entityToDto(emailFound.get());
-        } else if(emailFound.isPresent() && !emailFound.get().getCustomerId().equals(emailDto.getCustomerId())) {
+        Email email = upsertEmail(emailDto);
+        if(!email.getCustomerId().equals(emailDto.getCustomerId())) {
             String msg = UserMessages.EMAIL_ADDRESS_IS_IN_THE_DATABASE_ALREADY1.getUserMessage()
                     .replace("%email%", emailDto.getEmail());
             logger.error(msg);
             throw new EmailIsInTheDatabaseAlreadyException(msg);
-        } else {
-            return emailMapper.entityToDto(emailRepository.save(emailMapper.dtoToEntity(emailDto)));
+        }
+        contactsCache.invalidate(email.getCustomerId());
+        return emailMapper.entityToDto(email);
+    }
+
+    /**
+     * Inserts new email or reads existing one with one statement. Foreign key on customer_id checks that customer
+     * exists. Statement is repeated once if conflicting email was inserted by concurrent transaction after the
+     * statement had started, second statement sees it
+     */
+    private Email upsertEmail(EmailDto emailDto) {
+        try {
+            Optional<Email> emailFound = emailRepository.upsertEmail(emailDto.getCustomerId(), emailDto.getEmail());
+            if(emailFound.isEmpty()) {
+                emailFound = emailRepository.upsertEmail(emailDto.getCustomerId(), emailDto.getEmail());
+            }
+            return emailFound.orElseThrow();
+        } catch (DataIntegrityViolationException e) {
+            if(DataIntegrityViolations.isForeignKeyViolation(e)) {
+                String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                        .replace("%id%", emailDto.getCustomerId().toString());
+                logger.error(msg);
+                throw new CustomerWithSuchIdNotFoundException(msg);
+            }
+            throw e;
         }
     }
 
@@ -76,10 +108,11 @@ public class EmailService {
      * @return EmailDto object with email record data
      * @throws EmailWithSuchIdNotFoundException if email record with specified id was not found in the database
      */
+    @Transactional(readOnly = true)
     public EmailDto readEmailById(Long id) {
-        Optional<Email> emailFound = emailRepository.findById(id);
+        Optional<EmailDto> emailFound = emailRepository.findEmailDtoById(id);
         if(emailFound.isPresent()) {
-            return emailMapper.entityToDto(emailFound.get());
+            return emailFound.get();
         } else {
             String msg = UserMessages.EMAIL_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
                     .replace("%id%", id.toString());
@@ -88,67 +121,340 @@ public class EmailService {
         }
     }
 
+    /**
+     * Method reads version of email record with specified id, it changes with every update of the record
+     * @param id email id
+     * @return version of the email record
+     * @throws EmailWithSuchIdNotFoundException if email record with specified id was not found in the database
+     */
+    public long readEmailVersion(Long id) {
+        Optional<Long> versionFound = emailRepository.findVersionById(id);
+        if(versionFound.isEmpty()) {
+            String msg = UserMessages.EMAIL_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                    .replace("%id%", id.toString());
+            logger.error(msg);
+            throw new EmailWithSuchIdNotFoundException(msg);
+        }
+        return versionFound.get();
+    }
+
     /**
      * Method looks for all emails owned by customer with specified id
      * @param customerId - customer id (surprise, surprise!)
      * @return List (array) of EmailDto objects found
      * @throws CustomerWithSuchIdNotFoundException if customer with specified id was not found in the database
      */
+    @Transactional(readOnly = true)
     public List<EmailDto> findAllEmailsByCustomerId(Long customerId) {
-        Optional<Customer> customerFound = customerRepository.findCustomerById(customerId);
-        if(customerFound.isEmpty()) {
+        if(!customerRepository.existsById(customerId)) {
             String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
                     .replace("%id%", customerId.toString());
             logger.error(msg);
             throw new CustomerWithSuchIdNotFoundException(msg);
         }
-        return emailRepository.findAllByCustomerId(customerId).stream()
-                .map(emailMapper::entityToDto).toList();
+        return emailRepository.findAllEmailDtosByCustomerId(customerId);
 
     }
 
     /**
-     * Method updates existing email record with data from EmailDto object
+     * Method updates existing email record with data from EmailDto object. Update is done by one statement, foreign key
+     * checks that customer exists and unique index checks that email isn't owned by another record
      * @param emailDto EmailDto object with data for updating
+     * @param version version of the record the client has (If-Match header), null to update any version
      * @return EmailDto object with updated data
+     * @throws CustomerMustNotBeNullException if EmailDto object customerId = null
      * @throws CustomerWithSuchIdNotFoundException if customer with specified customerId was not found in the database
      * @throws EmailWithSuchIdNotFoundException if email record with specified id was not found in the database
+     * @throws EmailIsInTheDatabaseAlreadyException if specified email is owned by another email record
+     * @throws VersionDoesNotMatchException if the email record has another version
      */
-    public EmailDto updateEmail(EmailDto emailDto) {
-        Optional<Email> emailFound = emailRepository.findById(emailDto.getId());
-        if(emailFound.isEmpty()) {
+    public EmailDto updateEmail(EmailDto emailDto, Long version) {
+        if(emailDto.getCustomerId() == null) {
+            logger.error(UserMessages.CUSTOMER_ID_MUST_NOT_BE_NULL.getUserMessage());
+            throw new CustomerMustNotBeNullException(UserMessages.CUSTOMER_ID_MUST_NOT_BE_NULL.getUserMessage());
+        }
+        Optional<ContactUpdateRow> emailUpdated;
+        try {
+            emailUpdated = emailRepository.updateEmail(emailDto.getId(), emailDto.getCustomerId(), emailDto.getEmail(),
+                    version);
+        } catch (DataIntegrityViolationException e) {
+            if(DataIntegrityViolations.isForeignKeyViolation(e)) {
+                String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                        .replace("%id%", emailDto.getCustomerId().toString());
+                logger.error(msg);
+                throw new CustomerWithSuchIdNotFoundException(msg);
+            }
+            if(DataIntegrityViolations.isUniqueViolation(e)) {
+                String msg = UserMessages.EMAIL_ADDRESS_IS_IN_THE_DATABASE_ALREADY1.getUserMessage()
+                        .replace("%email%", emailDto.getEmail());
+                logger.error(msg);
+                throw new EmailIsInTheDatabaseAlreadyException(msg);
+            }
+            throw e;
+        }
+        if(emailUpdated.isEmpty()) {
+            checkVersionIsNotChanged(emailDto.getId(), version);
             String msg = UserMessages.EMAIL_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
                     .replace("%id%", emailDto.getId().toString());
             logger.error(msg);
             throw new EmailWithSuchIdNotFoundException(msg);
         }
-        Optional<Customer> customerFound = customerRepository.findCustomerById(emailDto.getCustomerId());
-        if(customerFound.isEmpty()) {
-            String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
-                    .replace("%id%", emailDto.getCustomerId().toString());
-            logger.error(msg);
-            throw new CustomerWithSuchIdNotFoundException(msg);
-        }
-        return emailMapper.entityToDto(emailRepository.save(emailMapper.dtoToEntity(emailDto)));
+        ContactUpdateRow emailRow = emailUpdated.get();
+        contactsCache.invalidate(emailRow.getPreviousCustomerId());
+        contactsCache.invalidate(emailRow.getCustomerId());
+        return new EmailDto(emailRow.getId(), emailRow.getCustomerId(), emailRow.getValue());
     }
 
     /**
-     * Method deletes specified email record from the database
+     * Method deletes specified email record from the database with one statement
      * @param emailDto EmailDto object to delete from the database
+     * @param version version of the record the client has (If-Match header), null to delete any version
      * @return EmailDto object with deleted data
      * @throws EmailWithSuchIdNotFoundException if email record with specified id (emailDto.getId()) was not found
      * in the database
+     * @throws VersionDoesNotMatchException if the email record has another version
      */
-    public EmailDto deleteEmail(EmailDto emailDto){
-        Optional<Email> emailFound = emailRepository.findById(emailDto.getId());
-        if(emailFound.isEmpty()) {
+    public EmailDto deleteEmail(EmailDto emailDto, Long version){
+        Optional<Email> emailDeleted = emailRepository.deleteEmailById(emailDto.getId(), version);
+        if(emailDeleted.isEmpty()) {
+            checkVersionIsNotChanged(emailDto.getId(), version);
             String msg = UserMessages.EMAIL_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
                     .replace("%id%", emailDto.getId().toString());
             logger.error(msg);
             throw new EmailWithSuchIdNotFoundException(msg);
         }
-        emailRepository.delete(emailFound.get());
-        return emailMapper.entityToDto(emailFound.get());
+        contactsCache.invalidate(emailDeleted.get().getCustomerId());
+        return emailMapper.entityToDto(emailDeleted.get());
+    }
+
+    /**
+     * Method creates several email records in one transaction. Existing customers and emails are read with one query
+     * each, new email records are inserted with JDBC batches. Every item gets the outcome createEmail would give for
+     * it: CREATED, EXISTS (email is owned by same customer already), CONFLICT (email is owned by another customer),
+     * CUSTOMER_NOT_FOUND or INVALID
+     * @param emailDtos list of EmailDto objects, id fields are ignored
+     * @param mode batch mode: atomic (nothing is written if any item fails) or besteffort
+     * @return BatchResultDto with outcome of every item in the order of the request
+     */
+    public BatchResultDto<EmailDto> createEmails(List<EmailDto> emailDtos, String mode) {
+        return contactBatchExecutor.execute(emailDtos, mode, (batchMode, results, changedCustomerIds) ->
+                createEmailsInTransaction(emailDtos, batchMode, results, changedCustomerIds));
+    }
+
+    private void createEmailsInTransaction(List<EmailDto> emailDtos, BatchMode mode,
+                                           List<BatchItemResultDto<EmailDto>> results, Set<Long> changedCustomerIds) {
+        Set<Long> customerIds = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        for(EmailDto emailDto : emailDtos) {
+            if(emailDto.getCustomerId() != null && !isBlank(emailDto.getEmail())) {
+                customerIds.add(emailDto.getCustomerId());
+                emails.add(emailDto.getEmail().toLowerCase());
+            }
+        }
+        Set<Long> customerIdsFound = customerIds.isEmpty()
+                ? Set.of() : new HashSet<>(customerRepository.findAllIdsByIdIn(customerIds));
+        Map<String, Email> emailsByValue = new HashMap<>();
+        if(!emails.isEmpty()) {
+            emailRepository.findAllByEmailLowerCaseIn(emails)
+                    .forEach(email -> emailsByValue.put(email.getEmail().toLowerCase(), email));
+        }
+        List<Email> newEmails = new ArrayList<>();
+        Map<Integer, Email> emailsByIndex = new HashMap<>();
+        for(int i = 0; i < emailDtos.size(); i++) {
+            EmailDto emailDto = emailDtos.get(i);
+            BatchItemStatus status;
+            String msg = null;
+            if(emailDto.getCustomerId() == null) {
+                status = BatchItemStatus.INVALID;
+                msg = UserMessages.CUSTOMER_ID_MUST_NOT_BE_NULL.getUserMessage();
+            } else if(isBlank(emailDto.getEmail())) {
+                status = BatchItemStatus.INVALID;
+                msg = UserMessages.EMAIL_MUST_NOT_BE_BLANK.getUserMessage();
+            } else if(!customerIdsFound.contains(emailDto.getCustomerId())) {
+                status = BatchItemStatus.CUSTOMER_NOT_FOUND;
+                msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                        .replace("%id%", emailDto.getCustomerId().toString());
+            } else {
+                Email email = emailsByValue.get(emailDto.getEmail().toLowerCase());
+                if(email == null) {
+                    email = new Email(null, emailDto.getCustomerId(), emailDto.getEmail());
+                    emailsByValue.put(emailDto.getEmail().toLowerCase(), email);
+                    newEmails.add(email);
+                    status = BatchItemStatus.CREATED;
+                } else if(email.getCustomerId().equals(emailDto.getCustomerId())) {
+                    status = BatchItemStatus.EXISTS;
+                } else {
+                    status = BatchItemStatus.CONFLICT;
+                    msg = UserMessages.EMAIL_ADDRESS_IS_IN_THE_DATABASE_ALREADY1.getUserMessage()
+                            .replace("%email%", emailDto.getEmail());
+                }
+                if(status.isSuccess()) {
+                    emailsByIndex.put(i, email);
+                }
+            }
+            results.add(new BatchItemResultDto<>(i, status, emailDto, msg));
+        }
+        if(!ContactBatchExecutor.isApplicable(mode, results)) {
+            return;
+        }
+        if(!newEmails.isEmpty()) {
+            emailRepository.saveAll(newEmails);
+            emailRepository.flush();
+            newEmails.forEach(email -> changedCustomerIds.add(email.getCustomerId()));
+        }
+        emailsByIndex.forEach((i, email) -> results.get(i).setItem(emailMapper.entityToDto(email)));
+    }
+
+    /**
+     * Method updates several email records in one transaction. Email records, customers and owners of new emails are
+     * read with one query each, changed email records are written with JDBC batches. Every item gets UPDATED,
+     * NOT_FOUND, CUSTOMER_NOT_FOUND, CONFLICT (email is owned by another email record) or INVALID outcome
+     * @param emailDtos list of EmailDto objects with data for updating
+     * @param mode batch mode: atomic (nothing is written if any item fails) or besteffort
+     * @return BatchResultDto with outcome of every item in the order of the request
+     */
+    public BatchResultDto<EmailDto> updateEmails(List<EmailDto> emailDtos, String mode) {
+        return contactBatchExecutor.execute(emailDtos, mode, (batchMode, results, changedCustomerIds) ->
+                updateEmailsInTransaction(emailDtos, batchMode, results, changedCustomerIds));
+    }
+
+    private void updateEmailsInTransaction(List<EmailDto> emailDtos, BatchMode mode,
+                                           List<BatchItemResultDto<EmailDto>> results, Set<Long> changedCustomerIds) {
+        Set<Long> ids = new HashSet<>();
+        Set<Long> customerIds = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        for(EmailDto emailDto : emailDtos) {
+            if(emailDto.getId() != null && emailDto.getCustomerId() != null && !isBlank(emailDto.getEmail())) {
+                ids.add(emailDto.getId());
+                customerIds.add(emailDto.getCustomerId());
+                emails.add(emailDto.getEmail().toLowerCase());
+            }
+        }
+        Map<Long, Email> emailsById = new HashMap<>();
+        if(!ids.isEmpty()) {
+            emailRepository.findAllById(ids).forEach(email -> emailsById.put(email.getId(), email));
+        }
+        Set<Long> customerIdsFound = customerIds.isEmpty()
+                ? Set.of() : new HashSet<>(customerRepository.findAllIdsByIdIn(customerIds));
+        Map<String, Long> emailIdsByValue = new HashMap<>();
+        if(!emails.isEmpty()) {
+            emailRepository.findAllByEmailLowerCaseIn(emails)
+                    .forEach(email -> emailIdsByValue.put(email.getEmail().toLowerCase(), email.getId()));
+        }
+        for(int i = 0; i < emailDtos.size(); i++) {
+            EmailDto emailDto = emailDtos.get(i);
+            BatchItemStatus status;
+            String msg = null;
+            if(emailDto.getId() == null) {
+                status = BatchItemStatus.INVALID;
+                msg = UserMessages.RECORD_ID_MUST_NOT_BE_NULL.getUserMessage();
+            } else if(emailDto.getCustomerId() == null) {
+                status = BatchItemStatus.INVALID;
+                msg = UserMessages.CUSTOMER_ID_MUST_NOT_BE_NULL.getUserMessage();
+            } else if(isBlank(emailDto.getEmail())) {
+                status = BatchItemStatus.INVALID;
+                msg = UserMessages.EMAIL_MUST_NOT_BE_BLANK.getUserMessage();
+            } else if(!emailsById.containsKey(emailDto.getId())) {
+                status = BatchItemStatus.NOT_FOUND;
+                msg = UserMessages.EMAIL_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                        .replace("%id%", emailDto.getId().toString());
+            } else if(!customerIdsFound.contains(emailDto.getCustomerId())) {
+                status = BatchItemStatus.CUSTOMER_NOT_FOUND;
+                msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                        .replace("%id%", emailDto.getCustomerId().toString());
+            } else if(!emailDto.getId().equals(emailIdsByValue.getOrDefault(emailDto.getEmail().toLowerCase(),
+                    emailDto.getId()))) {
+                status = BatchItemStatus.CONFLICT;
+                msg = UserMessages.EMAIL_ADDRESS_IS_IN_THE_DATABASE_ALREADY1.getUserMessage()
+                        .replace("%email%", emailDto.getEmail());
+            } else {
+                status = BatchItemStatus.UPDATED;
+                emailIdsByValue.put(emailDto.getEmail().toLowerCase(), emailDto.getId());
+            }
+            results.add(new BatchItemResultDto<>(i, status, emailDto, msg));
+        }
+        if(!ContactBatchExecutor.isApplicable(mode, results)) {
+            return;
+        }
+        for(BatchItemResultDto<EmailDto> result : results) {
+            if(result.getStatus() == BatchItemStatus.UPDATED) {
+                EmailDto emailDto = result.getItem();
+                Email email = emailsById.get(emailDto.getId());
+                changedCustomerIds.add(email.getCustomerId());
+                changedCustomerIds.add(emailDto.getCustomerId());
+                email.setCustomerId(emailDto.getCustomerId());
+                email.setEmail(emailDto.getEmail());
+                result.setItem(emailMapper.entityToDto(email));
+            }
+        }
+        emailRepository.flush();
+    }
+
+    /**
+     * Method deletes several email records in one transaction. Email records are read with one query and deleted
+     * with one statement. Every item gets DELETED, NOT_FOUND or INVALID outcome
+     * @param emailDtos list of EmailDto objects to delete from the database, only id fields are used
+     * @param mode batch mode: atomic (nothing is deleted if any item fails) or besteffort
+     * @return BatchResultDto with outcome of every item in the order of the request
+     */
+    public BatchResultDto<EmailDto> deleteEmails(List<EmailDto> emailDtos, String mode) {
+        return contactBatchExecutor.execute(emailDtos, mode, (batchMode, results, changedCustomerIds) ->
+                deleteEmailsInTransaction(emailDtos, batchMode, results, changedCustomerIds));
+    }
+
+    private void deleteEmailsInTransaction(List<EmailDto> emailDtos, BatchMode mode,
+                                           List<BatchItemResultDto<EmailDto>> results, Set<Long> changedCustomerIds) {
+        Set<Long> ids = new HashSet<>();
+        emailDtos.forEach(emailDto -> {
+            if(emailDto.getId() != null) {
+                ids.add(emailDto.getId());
+            }
+        });
+        Map<Long, Email> emailsById = new HashMap<>();
+        if(!ids.isEmpty()) {
+            emailRepository.findAllById(ids).forEach(email -> emailsById.put(email.getId(), email));
+        }
+        for(int i = 0; i < emailDtos.size(); i++) {
+            EmailDto emailDto = emailDtos.get(i);
+            if(emailDto.getId() == null) {
+                results.add(new BatchItemResultDto<>(i, BatchItemStatus.INVALID, emailDto,
+                        UserMessages.RECORD_ID_MUST_NOT_BE_NULL.getUserMessage()));
+            } else if(!emailsById.containsKey(emailDto.getId())) {
+                results.add(new BatchItemResultDto<>(i, BatchItemStatus.NOT_FOUND, emailDto,
+                        UserMessages.EMAIL_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                                .replace("%id%", emailDto.getId().toString())));
+            } else {
+                results.add(new BatchItemResultDto<>(i, BatchItemStatus.DELETED,
+                        emailMapper.entityToDto(emailsById.get(emailDto.getId())), null));
+            }
+        }
+        if(!ContactBatchExecutor.isApplicable(mode, results) || emailsById.isEmpty()) {
+            return;
+        }
+        emailRepository.deleteAllByIdInBatch(emailsById.keySet());
+        emailsById.values().forEach(email -> changedCustomerIds.add(email.getCustomerId()));
+    }
+
+    /**
+     * Called when update or delete with expected version didn't find the record: if the record exists, it was
+     * changed after the client had read it
+     */
+    private void checkVersionIsNotChanged(Long id, Long version) {
+        if(version == null) {
+            return;
+        }
+        Optional<Long> versionFound = emailRepository.findVersionById(id);
+        if(versionFound.isPresent()) {
+            String msg = UserMessages.VERSION_DOES_NOT_MATCH.getUserMessage().replace("%record%", "email")
+                    .replace("%id%", id.toString()).replace("%version%", versionFound.get().toString())
+                    .replace("%expected%", version.toString());
+            logger.error(msg);
+            throw new VersionDoesNotMatchException(msg);
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
     }
 
 }
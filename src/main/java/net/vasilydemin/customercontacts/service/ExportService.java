@@ -0,0 +1,82 @@
+package net.vasilydemin.customercontacts.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
+import net.vasilydemin.customercontacts.mapper.CustomerMapper;
+import net.vasilydemin.customercontacts.repository.ContactRow;
+import net.vasilydemin.customercontacts.repository.CustomerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Full export of customers with contacts as NDJSON stream (one CustomerWithContactsDto JSON object per line)
+ */
+@Service
+public class ExportService {
+
+    private final Logger logger = LoggerFactory.getLogger(ExportService.class);
+
+    private final CustomerRepository customerRepository;
+    private final CustomerMapper customerMapper;
+    private final ObjectMapper objectMapper;
+    private final int pageSize;
+
+    public ExportService(CustomerRepository customerRepository, CustomerMapper customerMapper,
+                         ObjectMapper objectMapper, @Value("${application.export.pagesize}") int pageSize) {
+        this.customerRepository = customerRepository;
+        this.customerMapper = customerMapper;
+        this.objectMapper = objectMapper;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Method writes all customers with emails and phones to the output stream. Customers are read by keyset pages of
+     * application.export.pagesize customers with their contacts, so the first customers are written before the rest
+     * are read and only one page is kept in memory. All pages are read from one snapshot of the database
+     * @param outputStream stream to write NDJSON to, it is not closed by the method
+     * @throws IOException if output stream can't be written
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void exportAllCustomers(OutputStream outputStream) throws IOException {
+        long count = 0;
+        try(SequenceWriter writer = objectMapper.writer()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .withRootValueSeparator("\n")
+                .writeValues(outputStream)) {
+            long afterId = 0L;
+            int pageCustomers;
+            do {
+                List<ContactRow> rows = customerRepository.findAllContactsOfCustomersAfter(afterId, pageSize);
+                pageCustomers = 0;
+                CustomerWithContactsDto customer = null;
+                for(ContactRow row : rows) {
+                    if(customer == null || !customer.getId().equals(row.getCustomerId())) {
+                        if(customer != null) {
+                            writer.write(customer);
+                        }
+                        customer = customerMapper.emptyCustomerWithContacts(row.getCustomerId());
+                        pageCustomers++;
+                    }
+                    customerMapper.addContactRow(customer, row);
+                }
+                if(customer != null) {
+                    writer.write(customer);
+                    afterId = customer.getId();
+                }
+                count += pageCustomers;
+            } while(pageCustomers == pageSize);
+        }
+        logger.info("Export finished: {} customers", count);
+    }
+
+}
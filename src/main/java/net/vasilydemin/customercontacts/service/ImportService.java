@@ -0,0 +1,258 @@
+package net.vasilydemin.customercontacts.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.vasilydemin.customercontacts.constant.UserMessages;
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
+import net.vasilydemin.customercontacts.dto.ImportRejectDto;
+import net.vasilydemin.customercontacts.dto.ImportReportDto;
+import net.vasilydemin.customercontacts.entity.Customer;
+import net.vasilydemin.customercontacts.entity.Email;
+import net.vasilydemin.customercontacts.entity.Phone;
+import net.vasilydemin.customercontacts.repository.CustomerRepository;
+import net.vasilydemin.customercontacts.repository.EmailRepository;
+import net.vasilydemin.customercontacts.repository.PhoneRepository;
+import net.vasilydemin.customercontacts.util.PhoneNumbers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bulk import of customers with contacts from NDJSON stream (one CustomerWithContactsDto JSON object per line,
+ * id is ignored). Stream is read line by line and loaded in chunks, one transaction per chunk, so memory usage
+ * doesn't depend on the size of the file
+ */
+@Service
+public class ImportService {
+
+    private final Logger logger = LoggerFactory.getLogger(ImportService.class);
+
+    @Value("${application.import.chunksize}")
+    private int chunkSize;
+
+    @Value("${application.import.maxrejects}")
+    private int maxRejects;
+
+    private final CustomerRepository customerRepository;
+    private final EmailRepository emailRepository;
+    private final PhoneRepository phoneRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ContactsCache contactsCache;
+    private final CustomerIdFilter customerIdFilter;
+    private final CustomerNameIndex customerNameIndex;
+
+    public ImportService(CustomerRepository customerRepository, EmailRepository emailRepository,
+                         PhoneRepository phoneRepository, ObjectMapper objectMapper,
+                         TransactionTemplate transactionTemplate, ContactsCache contactsCache,
+                         CustomerIdFilter customerIdFilter, CustomerNameIndex customerNameIndex) {
+        this.customerRepository = customerRepository;
+        this.emailRepository = emailRepository;
+        this.phoneRepository = phoneRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.contactsCache = contactsCache;
+        this.customerIdFilter = customerIdFilter;
+        this.customerNameIndex = customerNameIndex;
+    }
+
+    /**
+     * Method imports customers with emails and phones. Customers are matched by name ignoring letters case like
+     * CustomerService.createCustomer does, emails and phones which are owned by another customer already are rejected
+     * @param inputStream NDJSON stream
+     * @return ImportReportDto object with counts of created records and rejected values
+     * @throws IOException if input stream can't be read
+     */
+    public ImportReportDto importCustomers(InputStream inputStream) throws IOException {
+        ImportReportDto report = new ImportReportDto(0, 0, 0, 0, new ArrayList<>());
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        List<ImportLine> chunk = new ArrayList<>(chunkSize);
+        long lineNumber = 0;
+        String line;
+        while((line = reader.readLine()) != null) {
+            lineNumber++;
+            if(line.isBlank()) {
+                continue;
+            }
+            CustomerWithContactsDto customer;
+            try {
+                customer = objectMapper.readValue(line, CustomerWithContactsDto.class);
+            } catch (JsonProcessingException e) {
+                reject(report, lineNumber, line, UserMessages.IMPORT_LINE_IS_WRONG.getUserMessage()
+                        .replace("%line%", String.valueOf(lineNumber)));
+                continue;
+            }
+            if(customer.getName() == null || customer.getName().isBlank()) {
+                reject(report, lineNumber, line, UserMessages.CUSTOMER_NAME_MUST_NOT_BE_BLANK.getUserMessage());
+                continue;
+            }
+            chunk.add(new ImportLine(lineNumber, customer));
+            if(chunk.size() >= chunkSize) {
+                importChunk(chunk, report);
+                chunk.clear();
+            }
+        }
+        if(!chunk.isEmpty()) {
+            importChunk(chunk, report);
+        }
+        logger.info("Import finished: {} customers, {} emails, {} phones created, {} values rejected",
+                report.getCustomers(), report.getEmails(), report.getPhones(), report.getRejected());
+        return report;
+    }
+
+    /**
+     * Chunk is loaded with a fixed number of queries: existing customers, emails and phones are read with one
+     * query each, new records are inserted with JDBC batches. If concurrent writer inserts same email or phone
+     * between the check and the insert, chunk is retried once. Contacts cache entries of customers who got new
+     * emails or phones are invalidated and created customers are added to customer id filter and customer name index
+     * after the commit
+     */
+    private void importChunk(List<ImportLine> chunk, ImportReportDto report) {
+        for(int attempt = 1; ; attempt++) {
+            ImportReportDto chunkReport = new ImportReportDto(0, 0, 0, 0, new ArrayList<>());
+            List<Customer> createdCustomers = new ArrayList<>();
+            Set<Long> changedCustomerIds = new HashSet<>();
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        importChunkInTransaction(chunk, chunkReport, createdCustomers, changedCustomerIds));
+                for(Customer customer : createdCustomers) {
+                    customerIdFilter.add(customer.getId());
+                    customerNameIndex.put(customer.getId(), customer.getName());
+                }
+                contactsCache.invalidateAll(changedCustomerIds);
+                report.setCustomers(report.getCustomers() + chunkReport.getCustomers());
+                report.setEmails(report.getEmails() + chunkReport.getEmails());
+                report.setPhones(report.getPhones() + chunkReport.getPhones());
+                report.setRejected(report.getRejected() + chunkReport.getRejected());
+                for(ImportRejectDto importReject : chunkReport.getRejects()) {
+                    if(report.getRejects().size() < maxRejects) {
+                        report.getRejects().add(importReject);
+                    }
+                }
+                return;
+            } catch (DataIntegrityViolationException e) {
+                if(attempt > 1) {
+                    logger.error("Import of lines {}-{} failed", chunk.get(0).lineNumber(),
+                            chunk.get(chunk.size() - 1).lineNumber(), e);
+                    for(ImportLine importLine : chunk) {
+                        reject(report, importLine.lineNumber(), importLine.customer().getName(),
+                                UserMessages.IMPORT_CHUNK_FAILED.getUserMessage());
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    private void importChunkInTransaction(List<ImportLine> chunk, ImportReportDto chunkReport,
+                                          List<Customer> createdCustomers, Set<Long> changedCustomerIds) {
+        Map<String, Customer> customersByName = new HashMap<>();
+        Set<String> names = new HashSet<>();
+        chunk.forEach(importLine -> names.add(importLine.customer().getName().toLowerCase()));
+        customerRepository.findAllByNameLowerCaseIn(names)
+                .forEach(customer -> customersByName.putIfAbsent(customer.getName().toLowerCase(), customer));
+        List<Customer> newCustomers = new ArrayList<>();
+        for(ImportLine importLine : chunk) {
+            String name = importLine.customer().getName();
+            customersByName.computeIfAbsent(name.toLowerCase(), lowerCaseName -> {
+                Customer customer = new Customer(null, name);
+                newCustomers.add(customer);
+                return customer;
+            });
+        }
+        customerRepository.saveAll(newCustomers);
+        createdCustomers.addAll(newCustomers);
+        chunkReport.setCustomers(newCustomers.size());
+
+        Set<String> emailValues = new HashSet<>();
+        Set<Long> phoneKeys = new HashSet<>();
+        for(ImportLine importLine : chunk) {
+            contactsOf(importLine.customer().getEmails()).forEach(email -> emailValues.add(email.toLowerCase()));
+            for(String phone : contactsOf(importLine.customer().getPhones())) {
+                Long phoneKey = PhoneNumbers.toKey(phone);
+                if(phoneKey != null) {
+                    phoneKeys.add(phoneKey);
+                }
+            }
+        }
+        Map<String, Long> emailOwners = new HashMap<>();
+        if(!emailValues.isEmpty()) {
+            emailRepository.findAllByEmailLowerCaseIn(emailValues)
+                    .forEach(email -> emailOwners.put(email.getEmail().toLowerCase(), email.getCustomerId()));
+        }
+        Map<Long, Long> phoneOwners = new HashMap<>();
+        if(!phoneKeys.isEmpty()) {
+            phoneRepository.findAllByPhoneKeyIn(phoneKeys)
+                    .forEach(phone -> phoneOwners.put(phone.getPhoneKey(), phone.getCustomerId()));
+        }
+
+        List<Email> newEmails = new ArrayList<>();
+        List<Phone> newPhones = new ArrayList<>();
+        for(ImportLine importLine : chunk) {
+            Long customerId = customersByName.get(importLine.customer().getName().toLowerCase()).getId();
+            for(String email : contactsOf(importLine.customer().getEmails())) {
+                Long ownerId = emailOwners.putIfAbsent(email.toLowerCase(), customerId);
+                if(ownerId == null) {
+                    newEmails.add(new Email(null, customerId, email));
+                } else if(!ownerId.equals(customerId)) {
+                    reject(chunkReport, importLine.lineNumber(), email, UserMessages
+                            .EMAIL_ADDRESS_IS_IN_THE_DATABASE_ALREADY1.getUserMessage().replace("%email%", email));
+                }
+            }
+            for(String phone : contactsOf(importLine.customer().getPhones())) {
+                Long phoneKey = PhoneNumbers.toKey(phone);
+                if(phoneKey == null) {
+                    reject(chunkReport, importLine.lineNumber(), phone, UserMessages
+                            .PHONE_NUMBER_IS_WRONG.getUserMessage().replace("%phone%", phone));
+                    continue;
+                }
+                Long ownerId = phoneOwners.putIfAbsent(phoneKey, customerId);
+                if(ownerId == null) {
+                    newPhones.add(new Phone(null, customerId, phone));
+                } else if(!ownerId.equals(customerId)) {
+                    reject(chunkReport, importLine.lineNumber(), phone, UserMessages
+                            .PHONE_NUMBER_IS_IN_THE_DATABASE_ALREADY1.getUserMessage().replace("%phone%", phone));
+                }
+            }
+        }
+        emailRepository.saveAll(newEmails);
+        phoneRepository.saveAll(newPhones);
+        newEmails.forEach(email -> changedCustomerIds.add(email.getCustomerId()));
+        newPhones.forEach(phone -> changedCustomerIds.add(phone.getCustomerId()));
+        chunkReport.setEmails(newEmails.size());
+        chunkReport.setPhones(newPhones.size());
+    }
+
+    private List<String> contactsOf(List<String> contacts) {
+        if(contacts == null) {
+            return List.of();
+        }
+        return contacts.stream().filter(contact -> contact != null && !contact.isBlank()).toList();
+    }
+
+    private void reject(ImportReportDto report, long lineNumber, String value, String reason) {
+        report.setRejected(report.getRejected() + 1);
+        if(report.getRejects().size() < maxRejects) {
+            report.getRejects().add(new ImportRejectDto(lineNumber, value, reason));
+        }
+    }
+
+    private record ImportLine(long lineNumber, CustomerWithContactsDto customer) {
+    }
+
+}
@@ -0,0 +1,484 @@
+package net.vasilydemin.customercontacts.service;
+
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Off-heap storage of contacts cache (application.contactscache.offheap.enabled). Customer with all emails and
+ * phones is packed into one record of UTF-8 strings, records live in direct byte buffers and are found by primitive
+ * customer id in an open addressing hash table which is off-heap too. So millions of cached customers cost neither
+ * heap objects nor GC work, objects are created only for the customer being read.
+ * Record: int length, long customer id, long load time, long customer version, name, number of emails, emails,
+ * number of phones, phones;
+ * strings and numbers of contacts are unsigned 16-bit values, every string is its byte length and UTF-8 bytes.
+ * Records are appended to slabs of the log, replaced and removed records become garbage. When the log is full, live
+ * records are moved to its beginning in place; if that frees less than a quarter of the log, all records are dropped.
+ * Reads share a read lock, changes take the write lock
+ */
+public class OffHeapContactStore {
+
+    private static final int DEFAULT_SLAB_SIZE = 1 << 26;
+    private static final int SLOT_SIZE = 16;
+    private static final int INITIAL_SLOTS = 1 << 10;
+    private static final int MAX_SLOTS = 1 << 26;
+    private static final long EMPTY = 0;
+    private static final long REMOVED = -1;
+    private static final int HEADER_SIZE = Integer.BYTES + 3 * Long.BYTES;
+    private static final int ID_OFFSET = Integer.BYTES;
+    private static final int LOADED_AT_OFFSET = Integer.BYTES + Long.BYTES;
+    private static final int VERSION_OFFSET = Integer.BYTES + 2 * Long.BYTES;
+    private static final int MAX_UNSIGNED_SHORT = 0xFFFF;
+    private static final int GENERATION_STRIPES = 1 << 10;
+
+    private final int slabSize;
+    private final int maxSlabs;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final int[] slabEnds;
+    private int currentSlab;
+    private ByteBuffer table;
+    private int tableMask;
+    private int size;
+    private int removedSlots;
+    private long liveBytes;
+
+    /**
+     * @param maxBytes size of the record log, hash table is allocated in addition to it (16 bytes per slot, up to
+     *                 three quarters of slots are used)
+     * @param ttlMillis records older than this are not returned
+     */
+    public OffHeapContactStore(long maxBytes, long ttlMillis) {
+        this((int) Math.min(DEFAULT_SLAB_SIZE, maxBytes), maxBytes, ttlMillis, System::currentTimeMillis);
+    }
+
+    OffHeapContactStore(int slabSize, long maxBytes, long ttlMillis, LongSupplier clock) {
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.max(1, maxBytes / slabSize);
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.slabEnds = new int[maxSlabs];
+        this.table = ByteBuffer.allocateDirect(INITIAL_SLOTS * SLOT_SIZE);
+        this.tableMask = INITIAL_SLOTS - 1;
+    }
+
+    /**
+     * @return stored customer with unmodifiable lists of emails and phones, null if there is no record for the id or
+     * the record is expired
+     */
+    public CustomerWithContactsDto get(long customerId) {
+        lock.readLock().lock();
+        try {
+            int slot = customerId > 0 ? findSlot(customerId) : -1;
+            if(slot >= 0) {
+                long address = table.getLong(slot * SLOT_SIZE + Long.BYTES);
+                ByteBuffer slab = slabs.get(slabOf(address));
+                int offset = offsetOf(address);
+                if(!isExpired(slab.getLong(offset + LOADED_AT_OFFSET), clock.getAsLong())) {
+                    hits.increment();
+                    return decode(customerId, slab.getLong(offset + VERSION_OFFSET),
+                            slab.slice(offset + HEADER_SIZE, slab.getInt(offset) - HEADER_SIZE));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Generation of the id is changed by every remove. Caller reads it before loading the customer from the
+     * database and passes it to put, so data loaded before concurrent change isn't stored after the change
+     */
+    public long generation(long customerId) {
+        return generations.get(stripeOf(customerId));
+    }
+
+    /**
+     * Stores the customer replacing previous record of the same id
+     * @param generation generation of the id read before the customer was loaded
+     * @return false if the id was removed after the customer was loaded, or the customer doesn't fit into a record
+     */
+    public boolean put(long customerId, CustomerWithContactsDto customer, long generation) {
+        byte[] record = encode(customerId, customer);
+        if(customerId <= 0 || record == null) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            if(generation(customerId) != generation || !ensureTableCapacity()) {
+                return false;
+            }
+            long address = allocate(record.length);
+            slabs.get(slabOf(address)).put(offsetOf(address), record);
+            int slot = findSlot(customerId);
+            if(slot >= 0) {
+                liveBytes -= recordLength(table.getLong(slot * SLOT_SIZE + Long.BYTES));
+            } else {
+                slot = findFreeSlot(customerId);
+                if(table.getLong(slot * SLOT_SIZE) == REMOVED) {
+                    removedSlots--;
+                }
+                table.putLong(slot * SLOT_SIZE, customerId);
+                size++;
+            }
+            table.putLong(slot * SLOT_SIZE + Long.BYTES, address);
+            liveBytes += record.length;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes record of the id and changes its generation
+     */
+    public void remove(long customerId) {
+        lock.writeLock().lock();
+        try {
+            generations.incrementAndGet(stripeOf(customerId));
+            int slot = customerId > 0 ? findSlot(customerId) : -1;
+            if(slot >= 0) {
+                liveBytes -= recordLength(table.getLong(slot * SLOT_SIZE + Long.BYTES));
+                removeSlot(slot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all records and changes generations of all ids
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for(int i = 0; i < GENERATION_STRIPES; i++) {
+                generations.incrementAndGet(i);
+            }
+            dropAll();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return bytes of off-heap memory allocated for slabs of the log and for the hash table
+     */
+    public long allocatedBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) slabs.size() * slabSize + table.capacity();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of records dropped because the log was full or removed by compaction as expired
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    private static CustomerWithContactsDto decode(long customerId, long version, ByteBuffer record) {
+        String name = readString(record);
+        List<String> emails = readStrings(record);
+        List<String> phones = readStrings(record);
+        return new CustomerWithContactsDto(customerId, name, emails, phones, version);
+    }
+
+    private static List<String> readStrings(ByteBuffer record) {
+        String[] values = new String[record.getChar()];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = readString(record);
+        }
+        return List.of(values);
+    }
+
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getChar()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return record bytes, null if a string or a list of contacts is too long for the record format
+     */
+    private byte[] encode(long customerId, CustomerWithContactsDto customer) {
+        List<String> emails = customer.getEmails() == null ? List.of() : customer.getEmails();
+        List<String> phones = customer.getPhones() == null ? List.of() : customer.getPhones();
+        if(emails.size() > MAX_UNSIGNED_SHORT || phones.size() > MAX_UNSIGNED_SHORT) {
+            return null;
+        }
+        byte[][] strings = new byte[1 + emails.size() + phones.size()][];
+        strings[0] = utf8(customer.getName());
+        for(int i = 0; i < emails.size(); i++) {
+            strings[1 + i] = utf8(emails.get(i));
+        }
+        for(int i = 0; i < phones.size(); i++) {
+            strings[1 + emails.size() + i] = utf8(phones.get(i));
+        }
+        long length = HEADER_SIZE + 2 * Character.BYTES;
+        for(byte[] string : strings) {
+            if(string.length > MAX_UNSIGNED_SHORT) {
+                return null;
+            }
+            length += Character.BYTES + string.length;
+        }
+        if(length > slabSize) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate((int) length);
+        record.putInt((int) length).putLong(customerId).putLong(clock.getAsLong()).putLong(customer.getVersion());
+        writeString(record, strings[0]);
+        record.putChar((char) emails.size());
+        for(int i = 0; i < emails.size(); i++) {
+            writeString(record, strings[1 + i]);
+        }
+        record.putChar((char) phones.size());
+        for(int i = 0; i < phones.size(); i++) {
+            writeString(record, strings[1 + emails.size() + i]);
+        }
+        return record.array();
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(ByteBuffer record, byte[] string) {
+        record.putChar((char) string.length).put(string);
+    }
+
+    /**
+     * Takes space for a record at the end of the log, compacts the log or drops all records if it is full
+     * @return address of the space: slab number in high 32 bits, offset in the slab in low 32 bits
+     */
+    private long allocate(int length) {
+        long address = tryAllocate(length);
+        if(address < 0) {
+            compact();
+            if(liveBytes > (long) maxSlabs * slabSize / 4 * 3) {
+                evictions.add(size);
+                dropAll();
+            }
+            address = tryAllocate(length);
+        }
+        if(address < 0) {
+            evictions.add(size);
+            dropAll();
+            address = tryAllocate(length);
+        }
+        return address;
+    }
+
+    private long tryAllocate(int length) {
+        while(true) {
+            if(currentSlab == slabs.size()) {
+                slabs.add(ByteBuffer.allocateDirect(slabSize));
+            }
+            int end = slabEnds[currentSlab];
+            if(slabSize - end >= length) {
+                slabEnds[currentSlab] = end + length;
+                return ((long) currentSlab << 32) | end;
+            }
+            if(currentSlab + 1 == maxSlabs) {
+                return -1;
+            }
+            currentSlab++;
+        }
+    }
+
+    /**
+     * Moves live records to the beginning of the log in log order and removes expired ones. Records are only moved
+     * towards the beginning, so a record is never overwritten before it is read
+     */
+    private void compact() {
+        long now = clock.getAsLong();
+        byte[] buffer = new byte[0];
+        int targetSlab = 0;
+        int targetEnd = 0;
+        for(int sourceSlab = 0; sourceSlab < slabs.size(); sourceSlab++) {
+            ByteBuffer slab = slabs.get(sourceSlab);
+            int offset = 0;
+            while(offset < slabEnds[sourceSlab]) {
+                int length = slab.getInt(offset);
+                long address = ((long) sourceSlab << 32) | offset;
+                int slot = findSlot(slab.getLong(offset + ID_OFFSET));
+                if(slot >= 0 && table.getLong(slot * SLOT_SIZE + Long.BYTES) == address) {
+                    if(isExpired(slab.getLong(offset + LOADED_AT_OFFSET), now)) {
+                        liveBytes -= length;
+                        removeSlot(slot);
+                        evictions.increment();
+                    } else {
+                        if(slabSize - targetEnd < length) {
+                            slabEnds[targetSlab++] = targetEnd;
+                            targetEnd = 0;
+                        }
+                        long targetAddress = ((long) targetSlab << 32) | targetEnd;
+                        if(targetAddress != address) {
+                            if(buffer.length < length) {
+                                buffer = new byte[length];
+                            }
+                            slab.get(offset, buffer, 0, length);
+                            slabs.get(targetSlab).put(targetEnd, buffer, 0, length);
+                            table.putLong(slot * SLOT_SIZE + Long.BYTES, targetAddress);
+                        }
+                        targetEnd += length;
+                    }
+                }
+                offset += length;
+            }
+        }
+        for(int i = targetSlab; i < slabs.size(); i++) {
+            slabEnds[i] = 0;
+        }
+        if(!slabs.isEmpty()) {
+            slabEnds[targetSlab] = targetEnd;
+        }
+        currentSlab = targetSlab;
+        rehash(tableMask + 1);
+    }
+
+    private void dropAll() {
+        for(int i = 0; i < slabs.size(); i++) {
+            slabEnds[i] = 0;
+        }
+        currentSlab = 0;
+        table = ByteBuffer.allocateDirect(INITIAL_SLOTS * SLOT_SIZE);
+        tableMask = INITIAL_SLOTS - 1;
+        size = 0;
+        removedSlots = 0;
+        liveBytes = 0;
+    }
+
+    /**
+     * Keeps at most three quarters of slots used (removed slots included), so probing always ends at an empty slot
+     * @return false if the table can't grow any more
+     */
+    private boolean ensureTableCapacity() {
+        int slots = tableMask + 1;
+        if((long) (size + removedSlots + 1) * 4 <= (long) slots * 3) {
+            return true;
+        }
+        int newSlots = (long) (size + 1) * 8 > (long) slots * 3 ? slots * 2 : slots;
+        if(newSlots > MAX_SLOTS) {
+            return false;
+        }
+        rehash(newSlots);
+        return true;
+    }
+
+    private void rehash(int slots) {
+        ByteBuffer oldTable = table;
+        int oldSlots = tableMask + 1;
+        table = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+        tableMask = slots - 1;
+        removedSlots = 0;
+        for(int i = 0; i < oldSlots; i++) {
+            long key = oldTable.getLong(i * SLOT_SIZE);
+            if(key != EMPTY && key != REMOVED) {
+                int slot = findFreeSlot(key);
+                table.putLong(slot * SLOT_SIZE, key);
+                table.putLong(slot * SLOT_SIZE + Long.BYTES, oldTable.getLong(i * SLOT_SIZE + Long.BYTES));
+            }
+        }
+    }
+
+    /**
+     * @param customerId positive id, zero and -1 are markers of empty and removed slots
+     */
+    private int findSlot(long customerId) {
+        int slot = (int) mix(customerId) & tableMask;
+        while(true) {
+            long key = table.getLong(slot * SLOT_SIZE);
+            if(key == customerId) {
+                return slot;
+            }
+            if(key == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+    }
+
+    private int findFreeSlot(long customerId) {
+        int slot = (int) mix(customerId) & tableMask;
+        while(true) {
+            long key = table.getLong(slot * SLOT_SIZE);
+            if(key == EMPTY || key == REMOVED) {
+                return slot;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+    }
+
+    private void removeSlot(int slot) {
+        table.putLong(slot * SLOT_SIZE, REMOVED);
+        size--;
+        removedSlots++;
+    }
+
+    private int recordLength(long address) {
+        return slabs.get(slabOf(address)).getInt(offsetOf(address));
+    }
+
+    private boolean isExpired(long loadedAt, long now) {
+        return now - loadedAt > ttlMillis;
+    }
+
+    private static int slabOf(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offsetOf(long address) {
+        return (int) address;
+    }
+
+    private static int stripeOf(long customerId) {
+        return (int) mix(customerId) & (GENERATION_STRIPES - 1);
+    }
+
+    /**
+     * SplitMix64 finalizer, spreads sequential ids over all slots
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+}
@@ -1,19 +1,31 @@
 package net.vasilydemin.customercontacts.service;
 
+import net.vasilydemin.customercontacts.constant.BatchItemStatus;
+import net.vasilydemin.customercontacts.constant.BatchMode;
 import net.vasilydemin.customercontacts.constant.UserMessages;
+import net.vasilydemin.customercontacts.dto.BatchItemResultDto;
+import net.vasilydemin.customercontacts.dto.BatchResultDto;
 import net.vasilydemin.customercontacts.dto.PhoneDto;
-import net.vasilydemin.customercontacts.entity.Customer;
 import net.vasilydemin.customercontacts.entity.Phone;
 import net.vasilydemin.customercontacts.exception.*;
 import net.vasilydemin.customercontacts.mapper.PhoneMapper;
+import net.vasilydemin.customercontacts.repository.ContactUpdateRow;
 import net.vasilydemin.customercontacts.repository.CustomerRepository;
 import net.vasilydemin.customercontacts.repository.PhoneRepository;
+import net.vasilydemin.customercontacts.util.PhoneNumbers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class PhoneService {
@@ -22,11 +34,16 @@ public class PhoneService {
     private final PhoneRepository phoneRepository;
     private final PhoneMapper phoneMapper;
     private final CustomerRepository customerRepository;
+    private final ContactsCache contactsCache;
+    private final ContactBatchExecutor contactBatchExecutor;
 
-    public PhoneService(PhoneRepository phoneRepository, PhoneMapper phoneMapper, CustomerRepository customerRepository) {
+    public PhoneService(PhoneRepository phoneRepository, PhoneMapper phoneMapper, CustomerRepository customerRepository,
+                        ContactsCache contactsCache, ContactBatchExecutor contactBatchExecutor) {
         this.phoneRepository = phoneRepository;
         this.phoneMapper = phoneMapper;
         this.customerRepository = customerRepository;
+        this.contactsCache = contactsCache;
+        this.contactBatchExecutor = contactBatchExecutor;
     }
 
     /**
@@ -41,29 +58,59 @@ public class PhoneService {
      * another customer
      * @throws CustomerMustNotBeNullException if PhoneDto object customerId = null
      * @throws CustomerWithSuchIdNotFoundException if customer with specified customerId was not found in the database
+     * @throws PhoneNumberIsWrongException if specified phone is not a phone number
      */
     public PhoneDto createPhone(PhoneDto phoneDto) {
         if(phoneDto.getCustomerId() == null) {
             logger.error(UserMessages.CUSTOMER_ID_MUST_NOT_BE_NULL.getUserMessage());
             throw new CustomerMustNotBeNullException(UserMessages.CUSTOMER_ID_MUST_NOT_BE_NULL.getUserMessage());
         }
-        Optional<Customer> customerFound = customerRepository.findCustomerById(phoneDto.getCustomerId());
-        if(customerFound.isEmpty()) {
-            String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
-                    .replace("%id%", phoneDto.getCustomerId().toString());
-            logger.error(msg);
-            throw new CustomerWithSuchIdNotFoundException(msg);
-        }
-        Optional<Phone> phoneFound = phoneRepository.findPhoneByPhoneIgnoreCase(phoneDto.getPhone());
-        if(phoneFound.isPresent() && phoneFound.get().getCustomerId().equals(phoneDto.getCustomerId())) {
-            return phoneMapper.entityToDto(phoneFound.get());
-        } else if(phoneFound.isPresent() && !phoneFound.get().getCustomerId().equals(phoneDto.getCustomerId())) {
+        Phone phone = upsertPhone(phoneDto, phoneKeyOf(phoneDto.getPhone()));
+        if(!phone.getCustomerId().equals(phoneDto.getCustomerId())) {
             String msg = UserMessages.PHONE_NUMBER_IS_IN_THE_DATABASE_ALREADY1.getUserMessage()
                     .replace("%phone%", phoneDto.getPhone());
             logger.error(msg);
             throw new PhoneIsInTheDatabaseAlreadyException(msg);
-        } else {
-            return phoneMapper.entityToDto(phoneRepository.save(phoneMapper.dtoToEntity(phoneDto)));
+        }
+        contactsCache.invalidate(phone.getCustomerId());
+        return phoneMapper.entityToDto(phone);
+    }
+
+    /**
+     * @return canonical key of the phone number (see PhoneNumbers)
+     * @throws PhoneNumberIsWrongException if the value is not a phone number
+     */
+    private Long phoneKeyOf(String phone) {
+        Long phoneKey = PhoneNumbers.toKey(phone);
+        if(phoneKey == null) {
+            String msg = UserMessages.PHONE_NUMBER_IS_WRONG.getUserMessage().replace("%phone%", String.valueOf(phone));
+            logger.error(msg);
+            throw new PhoneNumberIsWrongException(msg);
+        }
+        return phoneKey;
+    }
+
+    /**
+     * Inserts new phone or reads existing one (same canonical key) with one statement. Foreign key on customer_id
+     * checks that customer exists. Statement is repeated once if conflicting phone was inserted by concurrent
+     * transaction after the statement had started, second statement sees it
+     */
+    private Phone upsertPhone(PhoneDto phoneDto, Long phoneKey) {
+        try {
+            Optional<Phone> phoneFound = phoneRepository.upsertPhone(phoneDto.getCustomerId(), phoneDto.getPhone(),
+                    phoneKey);
+            if(phoneFound.isEmpty()) {
+                phoneFound = phoneRepository.upsertPhone(phoneDto.getCustomerId(), phoneDto.getPhone(), phoneKey);
+            }
+            return phoneFound.orElseThrow();
+        } catch (DataIntegrityViolationException e) {
+            if(DataIntegrityViolations.isForeignKeyViolation(e)) {
+                String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                        .replace("%id%", phoneDto.getCustomerId().toString());
+                logger.error(msg);
+                throw new CustomerWithSuchIdNotFoundException(msg);
+            }
+            throw e;
         }
     }
 
@@ -73,10 +120,11 @@ public class PhoneService {
      * @return PhoneDto object with phone found record data
      * @throws PhoneWithSuchIdNotFoundException if phone record with specified id was not found in the database
      */
+    @Transactional(readOnly = true)
     public PhoneDto readPhoneById(Long id) {
-        Optional<Phone> phoneFound = phoneRepository.findById(id);
+        Optional<PhoneDto> phoneFound = phoneRepository.findPhoneDtoById(id);
         if(phoneFound.isPresent()) {
-            return phoneMapper.entityToDto(phoneFound.get());
+            return phoneFound.get();
         } else {
             String msg = UserMessages.PHONE_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
                     .replace("%id%", id.toString());
@@ -85,67 +133,364 @@ public class PhoneService {
         }
     }
 
+    /**
+     * Method reads version of phone record with specified id, it changes with every update of the record
+     * @param id phone id
+     * @return version of the phone record
+     * @throws PhoneWithSuchIdNotFoundException if phone record with specified id was not found in the database
+     */
+    public long readPhoneVersion(Long id) {
+        Optional<Long> versionFound = phoneRepository.findVersionById(id);
+        if(versionFound.isEmpty()) {
+            String msg = UserMessages.PHONE_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                    .replace("%id%", id.toString());
+            logger.error(msg);
+            throw new PhoneWithSuchIdNotFoundException(msg);
+        }
+        return versionFound.get();
+    }
+
     /**
      * Method looks for all phones owned by customer with specified id
      * @param customerId - customer id (surprise, surprise!)
      * @return List (array) of phoneDto objects found
      * @throws CustomerWithSuchIdNotFoundException if customer with specified id was not found in the database
      */
+    @Transactional(readOnly = true)
     public List<PhoneDto> findAllPhonesByCustomerId(Long customerId) {
-        Optional<Customer> customerFound = customerRepository.findCustomerById(customerId);
-        if(customerFound.isEmpty()) {
+        if(!customerRepository.existsById(customerId)) {
             String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
                     .replace("%id%", customerId.toString());
             logger.error(msg);
             throw new CustomerWithSuchIdNotFoundException(msg);
         }
-        return phoneRepository.findAllByCustomerId(customerId).stream()
-                .map(phoneMapper::entityToDto).toList();
+        return phoneRepository.findAllPhoneDtosByCustomerId(customerId);
 
     }
 
     /**
-     * Method updates existing phone record with data from PhoneDto object
+     * Method updates existing phone record with data from PhoneDto object. Update is done by one statement, foreign key
+     * checks that customer exists and unique index checks that phone isn't owned by another record
      * @param phoneDto PhoneDto object with data for updating
+     * @param version version of the record the client has (If-Match header), null to update any version
      * @return PhoneDto object with updated data
+     * @throws CustomerMustNotBeNullException if PhoneDto object customerId = null
      * @throws CustomerWithSuchIdNotFoundException if customer with specified customerId was not found in the database
      * @throws PhoneWithSuchIdNotFoundException if phone record with specified id was not found in the database
+     * @throws PhoneIsInTheDatabaseAlreadyException if specified phone is owned by another phone record
+     * @throws PhoneNumberIsWrongException if specified phone is not a phone number
+     * @throws VersionDoesNotMatchException if the phone record has another version
      */
-    public PhoneDto updatePhone(PhoneDto phoneDto) {
-        Optional<Phone> phoneFound = phoneRepository.findById(phoneDto.getId());
-        if(phoneFound.isEmpty()) {
+    public PhoneDto updatePhone(PhoneDto phoneDto, Long version) {
+        if(phoneDto.getCustomerId() == null) {
+            logger.error(UserMessages.CUSTOMER_ID_MUST_NOT_BE_NULL.getUserMessage());
+            throw new CustomerMustNotBeNullException(UserMessages.CUSTOMER_ID_MUST_NOT_BE_NULL.getUserMessage());
+        }
+        Long phoneKey = phoneKeyOf(phoneDto.getPhone());
+        Optional<ContactUpdateRow> phoneUpdated;
+        try {
+            phoneUpdated = phoneRepository.updatePhone(phoneDto.getId(), phoneDto.getCustomerId(), phoneDto.getPhone(),
+                    phoneKey, version);
+        } catch (DataIntegrityViolationException e) {
+            if(DataIntegrityViolations.isForeignKeyViolation(e)) {
+                String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                        .replace("%id%", phoneDto.getCustomerId().toString());
+                logger.error(msg);
+                throw new CustomerWithSuchIdNotFoundException(msg);
+            }
+            if(DataIntegrityViolations.isUniqueViolation(e)) {
+                String msg = UserMessages.PHONE_NUMBER_IS_IN_THE_DATABASE_ALREADY1.getUserMessage()
+                        .replace("%phone%", phoneDto.getPhone());
+                logger.error(msg);
+                throw new PhoneIsInTheDatabaseAlreadyException(msg);
+            }
+            throw e;
+        }
+        if(phoneUpdated.isEmpty()) {
+            checkVersionIsNotChanged(phoneDto.getId(), version);
             String msg = UserMessages.PHONE_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
                     .replace("%id%", phoneDto.getId().toString());
             logger.error(msg);
             throw new PhoneWithSuchIdNotFoundException(msg);
         }
-        Optional<Customer> customerFound = customerRepository.findCustomerById(phoneDto.getCustomerId());
-        if(customerFound.isEmpty()) {
-            String msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
-                    .replace("%id%", phoneDto.getCustomerId().toString());
-            logger.error(msg);
-            throw new CustomerWithSuchIdNotFoundException(msg);
-        }
-        return phoneMapper.entityToDto(phoneRepository.save(phoneMapper.dtoToEntity(phoneDto)));
+        ContactUpdateRow phoneRow = phoneUpdated.get();
+        contactsCache.invalidate(phoneRow.getPreviousCustomerId());
+        contactsCache.invalidate(phoneRow.getCustomerId());
+        return new PhoneDto(phoneRow.getId(), phoneRow.getCustomerId(), phoneRow.getValue());
     }
 
     /**
-     * Method deletes specified phone record from the database
+     * Method deletes specified phone record from the database with one statement
      * @param phoneDto PhoneDto object to delete from the database
-     * @return phoneDto object with deleted data
+     * @param version version of the record the client has (If-Match header), null to delete any version
+     * @return PhoneDto object with deleted data
      * @throws PhoneWithSuchIdNotFoundException if phone record with specified id (phoneDto.getId()) was not found
      * in the database
+     * @throws VersionDoesNotMatchException if the phone record has another version
      */
-     public PhoneDto deletePhone(PhoneDto phoneDto){
-        Optional<Phone> phoneFound = phoneRepository.findById(phoneDto.getId());
-        if(phoneFound.isEmpty()) {
+    public PhoneDto deletePhone(PhoneDto phoneDto, Long version){
+        Optional<Phone> phoneDeleted = phoneRepository.deletePhoneById(phoneDto.getId(), version);
+        if(phoneDeleted.isEmpty()) {
+            checkVersionIsNotChanged(phoneDto.getId(), version);
             String msg = UserMessages.PHONE_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
                     .replace("%id%", phoneDto.getId().toString());
             logger.error(msg);
             throw new PhoneWithSuchIdNotFoundException(msg);
         }
-        phoneRepository.delete(phoneFound.get());
-        return phoneMapper.entityToDto(phoneFound.get());
+        contactsCache.invalidate(phoneDeleted.get().getCustomerId());
+        return phoneMapper.entityToDto(phoneDeleted.get());
+    }
+
+    /**
+     * Method creates several phone records in one transaction. Existing customers and phones are read with one query
+     * each, new phone records are inserted with JDBC batches. Every item gets the outcome createPhone would give for
+     * it: CREATED, EXISTS (phone is owned by same customer already), CONFLICT (phone is owned by another customer),
+     * CUSTOMER_NOT_FOUND or INVALID
+     * @param phoneDtos list of PhoneDto objects, id fields are ignored
+     * @param mode batch mode: atomic (nothing is written if any item fails) or besteffort
+     * @return BatchResultDto with outcome of every item in the order of the request
+     */
+    public BatchResultDto<PhoneDto> createPhones(List<PhoneDto> phoneDtos, String mode) {
+        return contactBatchExecutor.execute(phoneDtos, mode, (batchMode, results, changedCustomerIds) ->
+                createPhonesInTransaction(phoneDtos, batchMode, results, changedCustomerIds));
+    }
+
+    private void createPhonesInTransaction(List<PhoneDto> phoneDtos, BatchMode mode,
+                                           List<BatchItemResultDto<PhoneDto>> results, Set<Long> changedCustomerIds) {
+        Set<Long> customerIds = new HashSet<>();
+        Long[] phoneKeys = phoneKeysOf(phoneDtos);
+        for(int i = 0; i < phoneDtos.size(); i++) {
+            if(phoneDtos.get(i).getCustomerId() != null && phoneKeys[i] != null) {
+                customerIds.add(phoneDtos.get(i).getCustomerId());
+            }
+        }
+        Set<Long> customerIdsFound = customerIds.isEmpty()
+                ? Set.of() : new HashSet<>(customerRepository.findAllIdsByIdIn(customerIds));
+        Map<Long, Phone> phonesByKey = new HashMap<>();
+        findAllByPhoneKeys(phoneKeys).forEach(phone -> phonesByKey.put(phone.getPhoneKey(), phone));
+        List<Phone> newPhones = new ArrayList<>();
+        Map<Integer, Phone> phonesByIndex = new HashMap<>();
+        for(int i = 0; i < phoneDtos.size(); i++) {
+            PhoneDto phoneDto = phoneDtos.get(i);
+            BatchItemStatus status;
+            String msg = null;
+            if(phoneDto.getCustomerId() == null) {
+                status = BatchItemStatus.INVALID;
+                msg = UserMessages.CUSTOMER_ID_MUST_NOT_BE_NULL.getUserMessage();
+            } else if(isBlank(phoneDto.getPhone())) {
+                status = BatchItemStatus.INVALID;
+                msg = UserMessages.PHONE_MUST_NOT_BE_BLANK.getUserMessage();
+            } else if(phoneKeys[i] == null) {
+                status = BatchItemStatus.INVALID;
+                msg = UserMessages.PHONE_NUMBER_IS_WRONG.getUserMessage().replace("%phone%", phoneDto.getPhone());
+            } else if(!customerIdsFound.contains(phoneDto.getCustomerId())) {
+                status = BatchItemStatus.CUSTOMER_NOT_FOUND;
+                msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                        .replace("%id%", phoneDto.getCustomerId().toString());
+            } else {
+                Phone phone = phonesByKey.get(phoneKeys[i]);
+                if(phone == null) {
+                    phone = new Phone(null, phoneDto.getCustomerId(), phoneDto.getPhone());
+                    phonesByKey.put(phoneKeys[i], phone);
+                    newPhones.add(phone);
+                    status = BatchItemStatus.CREATED;
+                } else if(phone.getCustomerId().equals(phoneDto.getCustomerId())) {
+                    status = BatchItemStatus.EXISTS;
+                } else {
+                    status = BatchItemStatus.CONFLICT;
+                    msg = UserMessages.PHONE_NUMBER_IS_IN_THE_DATABASE_ALREADY1.getUserMessage()
+                            .replace("%phone%", phoneDto.getPhone());
+                }
+                if(status.isSuccess()) {
+                    phonesByIndex.put(i, phone);
+                }
+            }
+            results.add(new BatchItemResultDto<>(i, status, phoneDto, msg));
+        }
+        if(!ContactBatchExecutor.isApplicable(mode, results)) {
+            return;
+        }
+        if(!newPhones.isEmpty()) {
+            phoneRepository.saveAll(newPhones);
+            phoneRepository.flush();
+            newPhones.forEach(phone -> changedCustomerIds.add(phone.getCustomerId()));
+        }
+        phonesByIndex.forEach((i, phone) -> results.get(i).setItem(phoneMapper.entityToDto(phone)));
+    }
+
+    /**
+     * Method updates several phone records in one transaction. Phone records, customers and owners of new phones are
+     * read with one query each, changed phone records are written with JDBC batches. Every item gets UPDATED,
+     * NOT_FOUND, CUSTOMER_NOT_FOUND, CONFLICT (phone is owned by another phone record) or INVALID outcome
+     * @param phoneDtos list of PhoneDto objects with data for updating
+     * @param mode batch mode: atomic (nothing is written if any item fails) or besteffort
+     * @return BatchResultDto with outcome of every item in the order of the request
+     */
+    public BatchResultDto<PhoneDto> updatePhones(List<PhoneDto> phoneDtos, String mode) {
+        return contactBatchExecutor.execute(phoneDtos, mode, (batchMode, results, changedCustomerIds) ->
+                updatePhonesInTransaction(phoneDtos, batchMode, results, changedCustomerIds));
+    }
+
+    private void updatePhonesInTransaction(List<PhoneDto> phoneDtos, BatchMode mode,
+                                           List<BatchItemResultDto<PhoneDto>> results, Set<Long> changedCustomerIds) {
+        Set<Long> ids = new HashSet<>();
+        Set<Long> customerIds = new HashSet<>();
+        Long[] phoneKeys = phoneKeysOf(phoneDtos);
+        for(int i = 0; i < phoneDtos.size(); i++) {
+            PhoneDto phoneDto = phoneDtos.get(i);
+            if(phoneDto.getId() != null && phoneDto.getCustomerId() != null && phoneKeys[i] != null) {
+                ids.add(phoneDto.getId());
+                customerIds.add(phoneDto.getCustomerId());
+            }
+        }
+        Map<Long, Phone> phonesById = new HashMap<>();
+        if(!ids.isEmpty()) {
+            phoneRepository.findAllById(ids).forEach(phone -> phonesById.put(phone.getId(), phone));
+        }
+        Set<Long> customerIdsFound = customerIds.isEmpty()
+                ? Set.of() : new HashSet<>(customerRepository.findAllIdsByIdIn(customerIds));
+        Map<Long, Long> phoneIdsByKey = new HashMap<>();
+        findAllByPhoneKeys(phoneKeys).forEach(phone -> phoneIdsByKey.put(phone.getPhoneKey(), phone.getId()));
+        for(int i = 0; i < phoneDtos.size(); i++) {
+            PhoneDto phoneDto = phoneDtos.get(i);
+            BatchItemStatus status;
+            String msg = null;
+            if(phoneDto.getId() == null) {
+                status = BatchItemStatus.INVALID;
+                msg = UserMessages.RECORD_ID_MUST_NOT_BE_NULL.getUserMessage();
+            } else if(phoneDto.getCustomerId() == null) {
+                status = BatchItemStatus.INVALID;
+                msg = UserMessages.CUSTOMER_ID_MUST_NOT_BE_NULL.getUserMessage();
+            } else if(isBlank(phoneDto.getPhone())) {
+                status = BatchItemStatus.INVALID;
+                msg = UserMessages.PHONE_MUST_NOT_BE_BLANK.getUserMessage();
+            } else if(phoneKeys[i] == null) {
+                status = BatchItemStatus.INVALID;
+                msg = UserMessages.PHONE_NUMBER_IS_WRONG.getUserMessage().replace("%phone%", phoneDto.getPhone());
+            } else if(!phonesById.containsKey(phoneDto.getId())) {
+                status = BatchItemStatus.NOT_FOUND;
+                msg = UserMessages.PHONE_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                        .replace("%id%", phoneDto.getId().toString());
+            } else if(!customerIdsFound.contains(phoneDto.getCustomerId())) {
+                status = BatchItemStatus.CUSTOMER_NOT_FOUND;
+                msg = UserMessages.CUSTOMER_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                        .replace("%id%", phoneDto.getCustomerId().toString());
+            } else if(!phoneDto.getId().equals(phoneIdsByKey.getOrDefault(phoneKeys[i], phoneDto.getId()))) {
+                status = BatchItemStatus.CONFLICT;
+                msg = UserMessages.PHONE_NUMBER_IS_IN_THE_DATABASE_ALREADY1.getUserMessage()
+                        .replace("%phone%", phoneDto.getPhone());
+            } else {
+                status = BatchItemStatus.UPDATED;
+                phoneIdsByKey.put(phoneKeys[i], phoneDto.getId());
+            }
+            results.add(new BatchItemResultDto<>(i, status, phoneDto, msg));
+        }
+        if(!ContactBatchExecutor.isApplicable(mode, results)) {
+            return;
+        }
+        for(BatchItemResultDto<PhoneDto> result : results) {
+            if(result.getStatus() == BatchItemStatus.UPDATED) {
+                PhoneDto phoneDto = result.getItem();
+                Phone phone = phonesById.get(phoneDto.getId());
+                changedCustomerIds.add(phone.getCustomerId());
+                changedCustomerIds.add(phoneDto.getCustomerId());
+                phone.setCustomerId(phoneDto.getCustomerId());
+                phone.setPhone(phoneDto.getPhone());
+                result.setItem(phoneMapper.entityToDto(phone));
+            }
+        }
+        phoneRepository.flush();
+    }
+
+    /**
+     * Method deletes several phone records in one transaction. Phone records are read with one query and deleted
+     * with one statement. Every item gets DELETED, NOT_FOUND or INVALID outcome
+     * @param phoneDtos list of PhoneDto objects to delete from the database, only id fields are used
+     * @param mode batch mode: atomic (nothing is deleted if any item fails) or besteffort
+     * @return BatchResultDto with outcome of every item in the order of the request
+     */
+    public BatchResultDto<PhoneDto> deletePhones(List<PhoneDto> phoneDtos, String mode) {
+        return contactBatchExecutor.execute(phoneDtos, mode, (batchMode, results, changedCustomerIds) ->
+                deletePhonesInTransaction(phoneDtos, batchMode, results, changedCustomerIds));
+    }
+
+    private void deletePhonesInTransaction(List<PhoneDto> phoneDtos, BatchMode mode,
+                                           List<BatchItemResultDto<PhoneDto>> results, Set<Long> changedCustomerIds) {
+        Set<Long> ids = new HashSet<>();
+        phoneDtos.forEach(phoneDto -> {
+            if(phoneDto.getId() != null) {
+                ids.add(phoneDto.getId());
+            }
+        });
+        Map<Long, Phone> phonesById = new HashMap<>();
+        if(!ids.isEmpty()) {
+            phoneRepository.findAllById(ids).forEach(phone -> phonesById.put(phone.getId(), phone));
+        }
+        for(int i = 0; i < phoneDtos.size(); i++) {
+            PhoneDto phoneDto = phoneDtos.get(i);
+            if(phoneDto.getId() == null) {
+                results.add(new BatchItemResultDto<>(i, BatchItemStatus.INVALID, phoneDto,
+                        UserMessages.RECORD_ID_MUST_NOT_BE_NULL.getUserMessage()));
+            } else if(!phonesById.containsKey(phoneDto.getId())) {
+                results.add(new BatchItemResultDto<>(i, BatchItemStatus.NOT_FOUND, phoneDto,
+                        UserMessages.PHONE_WITH_SUCH_ID_NOT_FOUND.getUserMessage()
+                                .replace("%id%", phoneDto.getId().toString())));
+            } else {
+                results.add(new BatchItemResultDto<>(i, BatchItemStatus.DELETED,
+                        phoneMapper.entityToDto(phonesById.get(phoneDto.getId())), null));
+            }
+        }
+        if(!ContactBatchExecutor.isApplicable(mode, results) || phonesById.isEmpty()) {
+            return;
+        }
+        phoneRepository.deleteAllByIdInBatch(phonesById.keySet());
+        phonesById.values().forEach(phone -> changedCustomerIds.add(phone.getCustomerId()));
+    }
+
+    /**
+     * @return canonical keys of phones of the items, null for items without valid phone number
+     */
+    private static Long[] phoneKeysOf(List<PhoneDto> phoneDtos) {
+        Long[] phoneKeys = new Long[phoneDtos.size()];
+        for(int i = 0; i < phoneKeys.length; i++) {
+            phoneKeys[i] = PhoneNumbers.toKey(phoneDtos.get(i).getPhone());
+        }
+        return phoneKeys;
+    }
+
+    /**
+     * Reads existing phone records with any of specified keys with one query
+     */
+    private List<Phone> findAllByPhoneKeys(Long[] phoneKeys) {
+        Set<Long> keys = new HashSet<>();
+        for(Long phoneKey : phoneKeys) {
+            if(phoneKey != null) {
+                keys.add(phoneKey);
+            }
+        }
+        return keys.isEmpty() ? List.of() : phoneRepository.findAllByPhoneKeyIn(keys);
+    }
+
+    /**
+     * Called when update or delete with expected version didn't find the record: if the record exists, it was
+     * changed after the client had read it
+     */
+    private void checkVersionIsNotChanged(Long id, Long version) {
+        if(version == null) {
+            return;
+        }
+        Optional<Long> versionFound = phoneRepository.findVersionById(id);
+        if(versionFound.isPresent()) {
+            String msg = UserMessages.VERSION_DOES_NOT_MATCH.getUserMessage().replace("%record%", "phone")
+                    .replace("%id%", id.toString()).replace("%version%", versionFound.get().toString())
+                    .replace("%expected%", version.toString());
+            logger.error(msg);
+            throw new VersionDoesNotMatchException(msg);
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
     }
 
 }
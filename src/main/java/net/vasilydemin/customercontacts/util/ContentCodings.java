@@ -0,0 +1,33 @@
+package net.vasilydemin.customercontacts.util;
+
+/**
+ * Content codings of Accept-Encoding and Content-Encoding headers
+ */
+public final class ContentCodings {
+
+    public static final String GZIP = "gzip";
+
+    private static final String ZERO_QUALITY = "q=0(\\.0*)?";
+
+    private ContentCodings() {
+    }
+
+    /**
+     * @param acceptEncoding value of Accept-Encoding header, null if it is absent
+     * @return true if the header lists gzip coding with non-zero quality. * is not taken as gzip, the client gets
+     * identity coding then
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if(acceptEncoding == null) {
+            return false;
+        }
+        for(String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            if(parameters[0].strip().equalsIgnoreCase(GZIP)) {
+                return parameters.length == 1 || !parameters[1].replace(" ", "").matches(ZERO_QUALITY);
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,86 @@
+package net.vasilydemin.customercontacts.util;
+
+/**
+ * Strong entity tags of records: version of the record in double quotes, like "12". Versions are incremented by
+ * database triggers (Liquibase changeset 8), customer version is incremented by changes of his emails and phones too.
+ * A gzipped response has its own tag, like "12-gzip", because its bytes differ from the identity response
+ */
+public final class ETags {
+
+    /**
+     * Version no record has. If-Match value which isn't a strong tag of a version is turned into it, so the
+     * condition fails
+     */
+    public static final long NO_VERSION = -1L;
+
+    private static final String ANY = "*";
+    private static final String QUOTE = "\"";
+    private static final String WEAK_PREFIX = "W/";
+    private static final String GZIP_SUFFIX = "-gzip";
+
+    private ETags() {
+    }
+
+    /**
+     * @return entity tag of the version
+     */
+    public static String of(long version) {
+        return QUOTE + version + QUOTE;
+    }
+
+    /**
+     * @return entity tag of the version sent gzipped
+     */
+    public static String ofGzipped(long version) {
+        return QUOTE + version + GZIP_SUFFIX + QUOTE;
+    }
+
+    /**
+     * @param ifMatch value of If-Match header with one entity tag. Weak tags never match (If-Match uses strong
+     * comparison)
+     * @return version from the tag, null if there is no condition (header is absent or *), NO_VERSION if the value
+     * isn't a strong tag of a version
+     */
+    public static Long versionOf(String ifMatch) {
+        if(ifMatch == null || ifMatch.isBlank() || ifMatch.strip().equals(ANY)) {
+            return null;
+        }
+        String tag = ifMatch.strip();
+        if(tag.length() < 3 || !tag.startsWith(QUOTE) || !tag.endsWith(QUOTE)) {
+            return NO_VERSION;
+        }
+        try {
+            long version = Long.parseLong(tag.substring(1, tag.length() - 1));
+            return version < 0 ? NO_VERSION : version;
+        } catch (NumberFormatException e) {
+            return NO_VERSION;
+        }
+    }
+
+    /**
+     * @param ifNoneMatch value of If-None-Match header, * or a list of entity tags. Weak tags match too (If-None-Match
+     * uses weak comparison)
+     * @param version current version of the record
+     * @return the tag matching the version in any content coding, so the client has the current record: "12" or
+     * "12-gzip" (tag of the version for *). Null if no tag matches
+     */
+    public static String matching(String ifNoneMatch, long version) {
+        if(ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return null;
+        }
+        for(String tag : ifNoneMatch.split(",")) {
+            String opaqueTag = tag.strip();
+            if(opaqueTag.startsWith(WEAK_PREFIX)) {
+                opaqueTag = opaqueTag.substring(WEAK_PREFIX.length());
+            }
+            if(opaqueTag.equals(ANY)) {
+                return of(version);
+            }
+            if(opaqueTag.equals(of(version)) || opaqueTag.equals(ofGzipped(version))) {
+                return opaqueTag;
+            }
+        }
+        return null;
+    }
+
+}
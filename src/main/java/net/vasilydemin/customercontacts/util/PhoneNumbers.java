@@ -0,0 +1,67 @@
+package net.vasilydemin.customercontacts.util;
+
+/**
+ * Canonical form of phone numbers: E.164 digits (country code and national number, up to 15 digits) stored as one
+ * bigint key, so "+7 (917) 123-45-67", "8 917 123-45-67" and "79171234567" are the same number.
+ * Numbers starting with + or 00 are international. Numbers without international prefix are Russian: 10 digits of
+ * national number, or 11 digits with trunk prefix 8 (or country code 7). Spaces, brackets, dots, slashes and
+ * hyphens are ignored, any other symbol makes the value not a phone number.
+ * Liquibase changeset 7 backfills keys of existing phones with the same rules
+ */
+public final class PhoneNumbers {
+
+    private static final String DEFAULT_COUNTRY_CODE = "7";
+    private static final int NATIONAL_NUMBER_LENGTH = 10;
+    private static final int MIN_DIGITS = 7;
+    private static final int MAX_DIGITS = 15;
+    private static final String SEPARATORS = " ()./-";
+
+    private PhoneNumbers() {
+    }
+
+    /**
+     * @param phone phone number in any usual notation
+     * @return E.164 digits of the number as long value, null if the value is not a phone number
+     */
+    public static Long toKey(String phone) {
+        if(phone == null) {
+            return null;
+        }
+        String value = phone.strip();
+        boolean international = value.startsWith("+");
+        StringBuilder digits = new StringBuilder(MAX_DIGITS + 1);
+        for(int i = international ? 1 : 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if(SEPARATORS.indexOf(c) < 0) {
+                return null;
+            }
+        }
+        String number = digits.toString();
+        if(!international) {
+            if(number.startsWith("00")) {
+                number = number.substring(2);
+            } else if(number.length() == NATIONAL_NUMBER_LENGTH) {
+                number = DEFAULT_COUNTRY_CODE + number;
+            } else if(number.length() == NATIONAL_NUMBER_LENGTH + 1
+                    && (number.charAt(0) == '8' || number.startsWith(DEFAULT_COUNTRY_CODE))) {
+                number = DEFAULT_COUNTRY_CODE + number.substring(1);
+            } else {
+                return null;
+            }
+        }
+        if(number.length() < MIN_DIGITS || number.length() > MAX_DIGITS || number.charAt(0) == '0') {
+            return null;
+        }
+        return Long.parseLong(number);
+    }
+
+    /**
+     * @return phone number in E.164 notation, like +79171234567
+     */
+    public static String format(long key) {
+        return "+" + key;
+    }
+
+}
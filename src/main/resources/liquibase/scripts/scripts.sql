@@ -20,4 +20,187 @@ CREATE TABLE phones (
 
 -- changeset vasilydemin:2
 ALTER TABLE emails ADD CONSTRAINT unique_email UNIQUE(email);
-ALTER TABLE phones ADD CONSTRAINT unique_phone UNIQUE(phone);
\ No newline at end of file
+ALTER TABLE phones ADD CONSTRAINT unique_phone UNIQUE(phone);
+
+-- changeset vasilydemin:3
+CREATE INDEX emails_customer_id_idx ON emails (customer_id) INCLUDE (email);
+CREATE INDEX phones_customer_id_idx ON phones (customer_id) INCLUDE (phone);
+
+
+-- changeset vasilydemin:4
+-- Case-insensitive lookups and uniqueness: indexes on lower() expressions replace case-sensitive constraints.
+-- Case variants of the same email or phone can't stay under the new indexes. The oldest record is kept, the others
+-- are moved to quarantined_emails and quarantined_phones with id of the kept record, to be resolved by hand
+CREATE TABLE quarantined_emails (
+    id bigint primary key,
+    customer_id bigint,
+    email varchar(255),
+    kept_id bigint,
+    reason varchar(255) NOT NULL,
+    quarantined_at timestamp NOT NULL DEFAULT now()
+);
+
+CREATE TABLE quarantined_phones (
+    id bigint primary key,
+    customer_id bigint,
+    phone varchar(255),
+    kept_id bigint,
+    reason varchar(255) NOT NULL,
+    quarantined_at timestamp NOT NULL DEFAULT now()
+);
+
+WITH moved AS (
+    DELETE FROM emails e
+     USING (SELECT id, min(id) OVER (PARTITION BY lower(email)) AS kept_id FROM emails WHERE email IS NOT NULL) d
+     WHERE e.id = d.id AND d.id <> d.kept_id
+    RETURNING e.id, e.customer_id, e.email, d.kept_id)
+INSERT INTO quarantined_emails (id, customer_id, email, kept_id, reason)
+SELECT id, customer_id, email, kept_id, 'same lower(email) as kept_id' FROM moved;
+
+WITH moved AS (
+    DELETE FROM phones p
+     USING (SELECT id, min(id) OVER (PARTITION BY lower(phone)) AS kept_id FROM phones WHERE phone IS NOT NULL) d
+     WHERE p.id = d.id AND d.id <> d.kept_id
+    RETURNING p.id, p.customer_id, p.phone, d.kept_id)
+INSERT INTO quarantined_phones (id, customer_id, phone, kept_id, reason)
+SELECT id, customer_id, phone, kept_id, 'same lower(phone) as kept_id' FROM moved;
+
+ALTER TABLE emails DROP CONSTRAINT unique_email;
+CREATE UNIQUE INDEX unique_email ON emails (lower(email));
+ALTER TABLE phones DROP CONSTRAINT unique_phone;
+CREATE UNIQUE INDEX unique_phone ON phones (lower(phone));
+CREATE INDEX customers_name_lower_idx ON customers (lower(name));
+
+
+-- changeset vasilydemin:5
+-- Hibernate pooled optimizer takes blocks of 50 ids per sequence call, increment must match allocationSize
+ALTER SEQUENCE customers_id_seq INCREMENT BY 50;
+ALTER SEQUENCE emails_id_seq INCREMENT BY 50;
+ALTER SEQUENCE phones_id_seq INCREMENT BY 50;
+
+
+-- changeset vasilydemin:6
+-- Customer names become unique ignoring letters case. Contacts of duplicate customers are moved to the oldest
+-- customer with the same name, then duplicates are moved to quarantined_customers with id of the kept customer, so
+-- removed ids can be mapped to the customer which has their contacts now
+CREATE TABLE quarantined_customers (
+    id bigint primary key,
+    name varchar(255),
+    kept_id bigint,
+    reason varchar(255) NOT NULL,
+    quarantined_at timestamp NOT NULL DEFAULT now()
+);
+
+UPDATE emails e SET customer_id = d.keep_id
+  FROM (SELECT id, min(id) OVER (PARTITION BY lower(name)) AS keep_id FROM customers WHERE name IS NOT NULL) d
+ WHERE e.customer_id = d.id AND d.id <> d.keep_id;
+UPDATE phones p SET customer_id = d.keep_id
+  FROM (SELECT id, min(id) OVER (PARTITION BY lower(name)) AS keep_id FROM customers WHERE name IS NOT NULL) d
+ WHERE p.customer_id = d.id AND d.id <> d.keep_id;
+
+WITH moved AS (
+    DELETE FROM customers c
+     USING (SELECT id, min(id) OVER (PARTITION BY lower(name)) AS kept_id FROM customers WHERE name IS NOT NULL) d
+     WHERE c.id = d.id AND d.id <> d.kept_id
+    RETURNING c.id, c.name, d.kept_id)
+INSERT INTO quarantined_customers (id, name, kept_id, reason)
+SELECT id, name, kept_id, 'same lower(name) as kept_id, contacts moved to kept_id' FROM moved;
+
+DROP INDEX customers_name_lower_idx;
+CREATE UNIQUE INDEX unique_customer_name ON customers (lower(name));
+
+
+-- changeset vasilydemin:7
+-- Phones get canonical key: E.164 digits as bigint, so different notations of the same number are one phone.
+-- Rules are the same as in PhoneNumbers class: + or 00 prefix is international, 10 digits or 11 digits starting
+-- with 8 or 7 are Russian numbers. The application doesn't accept values which aren't phone numbers, such legacy
+-- records are moved to quarantined_phones, like records with the same key except the oldest one. Then unique index
+-- on the key replaces unique index on lower(phone)
+ALTER TABLE phones ADD COLUMN phone_key bigint;
+ALTER TABLE quarantined_phones ADD COLUMN phone_key bigint;
+UPDATE phones p SET phone_key = canonical.digits::bigint
+  FROM (SELECT id,
+               CASE WHEN btrim(phone) LIKE '+%' THEN digits
+                    WHEN digits LIKE '00%' THEN substr(digits, 3)
+                    WHEN length(digits) = 10 THEN '7' || digits
+                    WHEN length(digits) = 11 AND left(digits, 1) IN ('7', '8') THEN '7' || substr(digits, 2)
+               END AS digits
+          FROM (SELECT id, phone, regexp_replace(phone, '[^0-9]', '', 'g') AS digits
+                  FROM phones
+                 WHERE btrim(phone) ~ '^\+?[0-9 ()./-]+$') d) canonical
+ WHERE p.id = canonical.id AND canonical.digits ~ '^[1-9][0-9]{6,14}$';
+
+WITH moved AS (
+    DELETE FROM phones p WHERE p.phone IS NOT NULL AND p.phone_key IS NULL
+    RETURNING p.id, p.customer_id, p.phone)
+INSERT INTO quarantined_phones (id, customer_id, phone, reason)
+SELECT id, customer_id, phone, 'not a phone number' FROM moved;
+
+WITH moved AS (
+    DELETE FROM phones p
+     USING (SELECT id, min(id) OVER (PARTITION BY phone_key) AS kept_id FROM phones WHERE phone_key IS NOT NULL) d
+     WHERE p.id = d.id AND d.id <> d.kept_id
+    RETURNING p.id, p.customer_id, p.phone, p.phone_key, d.kept_id)
+INSERT INTO quarantined_phones (id, customer_id, phone, phone_key, kept_id, reason)
+SELECT id, customer_id, phone, phone_key, kept_id, 'same phone_key as kept_id' FROM moved;
+
+DROP INDEX unique_phone;
+CREATE UNIQUE INDEX unique_phone_key ON phones (phone_key);
+
+
+-- changeset vasilydemin:8 splitStatements:false
+-- Record versions for ETags and If-Match. Update of a record increments its version; insert, update or delete of
+-- emails and phones increments version of their customer, so customer version changes whenever his contacts do.
+-- Versions are kept by triggers, so single statements, JDBC batches and imports of the application don't set them.
+-- Customer rows are locked in id order, so concurrent batches touching the same customers don't deadlock
+ALTER TABLE customers ADD COLUMN version bigint NOT NULL DEFAULT 0;
+ALTER TABLE emails ADD COLUMN version bigint NOT NULL DEFAULT 0;
+ALTER TABLE phones ADD COLUMN version bigint NOT NULL DEFAULT 0;
+
+CREATE FUNCTION increment_version() RETURNS trigger AS $$
+BEGIN
+    NEW.version := OLD.version + 1;
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION increment_customer_version() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        PERFORM 1 FROM customers WHERE id IN (SELECT customer_id FROM new_rows) ORDER BY id FOR NO KEY UPDATE;
+        UPDATE customers SET version = version + 1 WHERE id IN (SELECT customer_id FROM new_rows);
+    ELSIF TG_OP = 'DELETE' THEN
+        PERFORM 1 FROM customers WHERE id IN (SELECT customer_id FROM old_rows) ORDER BY id FOR NO KEY UPDATE;
+        UPDATE customers SET version = version + 1 WHERE id IN (SELECT customer_id FROM old_rows);
+    ELSE
+        PERFORM 1 FROM customers
+         WHERE id IN (SELECT customer_id FROM old_rows UNION SELECT customer_id FROM new_rows)
+         ORDER BY id FOR NO KEY UPDATE;
+        UPDATE customers SET version = version + 1
+         WHERE id IN (SELECT customer_id FROM old_rows UNION SELECT customer_id FROM new_rows);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER customers_version BEFORE UPDATE OF name ON customers
+    FOR EACH ROW EXECUTE FUNCTION increment_version();
+CREATE TRIGGER emails_version BEFORE UPDATE ON emails
+    FOR EACH ROW EXECUTE FUNCTION increment_version();
+CREATE TRIGGER phones_version BEFORE UPDATE ON phones
+    FOR EACH ROW EXECUTE FUNCTION increment_version();
+
+CREATE TRIGGER emails_customer_version_insert AFTER INSERT ON emails REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION increment_customer_version();
+CREATE TRIGGER emails_customer_version_update AFTER UPDATE ON emails
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION increment_customer_version();
+CREATE TRIGGER emails_customer_version_delete AFTER DELETE ON emails REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION increment_customer_version();
+CREATE TRIGGER phones_customer_version_insert AFTER INSERT ON phones REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION increment_customer_version();
+CREATE TRIGGER phones_customer_version_update AFTER UPDATE ON phones
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION increment_customer_version();
+CREATE TRIGGER phones_customer_version_delete AFTER DELETE ON phones REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION increment_customer_version();
@@ -0,0 +1,92 @@
+package net.vasilydemin.customercontacts.configuration;
+
+import net.vasilydemin.customercontacts.dto.ConnectionPermitStatsDto;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Standalone harness for ConnectionPermitDataSource (not a test, surefire does not run it): clients on virtual
+ * threads, and then on a pool of platform threads, take a connection of an embedded H2 database through the
+ * permits, run a query, hold the connection for a while and close it. Reports elapsed time and permit statistics.
+ * It checks the limiter under many concurrent clients, it is not a comparison of the application modes: that needs
+ * PostgreSQL and a load generator against the application started with spring.threads.virtual.enabled on and off.
+ * Run after mvn test-compile, e.g.
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt;
+ * net.vasilydemin.customercontacts.configuration.ConnectionPermitDataSourceBenchmark 5000 10 2
+ */
+public class ConnectionPermitDataSourceBenchmark {
+
+    private static final int PLATFORM_THREADS = 200;
+    private static final long TIMEOUT_MILLIS = 30_000L;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int permits = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long holdMillis = args.length > 2 ? Long.parseLong(args[2]) : 2L;
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName(UUID.randomUUID().toString())
+                .build();
+        try {
+            // the first round warms up H2 and the JIT
+            for(int round = 0; round < ROUNDS; round++) {
+                try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                    run("virtual threads", executor, database, clients, permits, holdMillis);
+                }
+                try (ExecutorService executor = Executors.newFixedThreadPool(PLATFORM_THREADS)) {
+                    run(PLATFORM_THREADS + " platform threads", executor, database, clients, permits, holdMillis);
+                }
+            }
+        } finally {
+            database.shutdown();
+        }
+    }
+
+    private static void run(String mode, ExecutorService executor, EmbeddedDatabase database, int clients,
+                            int permits, long holdMillis) throws InterruptedException {
+        ConnectionPermitDataSource dataSource = new ConnectionPermitDataSource(database, permits, TIMEOUT_MILLIS);
+        long start = System.nanoTime();
+        List<Future<?>> requests = new ArrayList<>(clients);
+        for(int i = 0; i < clients; i++) {
+            requests.add(executor.submit(() -> {
+                try (Connection connection = dataSource.getConnection();
+                     Statement statement = connection.createStatement()) {
+                    statement.execute("SELECT 1");
+                    Thread.sleep(holdMillis);
+                }
+                return null;
+            }));
+        }
+        int failed = 0;
+        for(Future<?> request : requests) {
+            try {
+                request.get();
+            } catch (ExecutionException e) {
+                if(!(e.getCause() instanceof SQLException)) {
+                    throw new IllegalStateException(e.getCause());
+                }
+                failed++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        ConnectionPermitStatsDto stats = dataSource.getStats();
+        System.out.printf("%s: %d clients, %d permits, %d ms hold: %.2f s, %d failed, acquired %d, waited %d, "
+                        + "timed out %d, average wait %.1f ms, max wait %.1f ms%n",
+                mode, clients, permits, holdMillis, seconds, failed, stats.getAcquired(), stats.getWaited(),
+                stats.getTimedOut(), stats.getAverageWaitMillis(), stats.getMaxWaitMillis());
+    }
+
+}
@@ -0,0 +1,87 @@
+package net.vasilydemin.customercontacts.configuration;
+
+import net.vasilydemin.customercontacts.dto.ConnectionPermitStatsDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ConnectionPermitDataSourceTest {
+
+    private EmbeddedDatabase database;
+
+    @BeforeEach
+    public void createDatabase() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName(UUID.randomUUID().toString())
+                .build();
+    }
+
+    @AfterEach
+    public void shutdownDatabase() {
+        database.shutdown();
+    }
+
+    @Test
+    public void connectionWithoutPermitTimesOutTest() throws Exception {
+        ConnectionPermitDataSource dataSource = new ConnectionPermitDataSource(database, 1, 50);
+
+        Connection connection = dataSource.getConnection();
+        assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+
+        connection.close();
+        connection.close();
+        assertThat(connection.isClosed()).isTrue();
+        try (Connection next = dataSource.getConnection()) {
+            assertThat(next.isValid(1)).isTrue();
+        }
+
+        ConnectionPermitStatsDto stats = dataSource.getStats();
+        assertThat(stats.getAvailablePermits()).isEqualTo(1);
+        assertThat(stats.getAcquired()).isEqualTo(2);
+        assertThat(stats.getTimedOut()).isEqualTo(1);
+        assertThat(stats.getMaxWaitMillis()).isGreaterThanOrEqualTo(50);
+    }
+
+    @Test
+    public void waitingThreadGetsPermitOfClosedConnectionTest() throws Exception {
+        ConnectionPermitDataSource dataSource = new ConnectionPermitDataSource(database, 1, 10_000);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Connection connection = dataSource.getConnection();
+            CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> {
+                try (Connection next = dataSource.getConnection()) {
+                    return next.isValid(1);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, executor);
+            while(dataSource.getStats().getWaiting() == 0) {
+                Thread.onSpinWait();
+            }
+            connection.close();
+
+            assertThat(waiting.get(5, TimeUnit.SECONDS)).isTrue();
+        }
+
+        ConnectionPermitStatsDto stats = dataSource.getStats();
+        assertThat(stats.getWaited()).isEqualTo(1);
+        assertThat(stats.getTimedOut()).isZero();
+        assertThat(stats.getAvailablePermits()).isEqualTo(1);
+    }
+
+}
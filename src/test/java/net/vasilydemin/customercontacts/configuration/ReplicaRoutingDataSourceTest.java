@@ -0,0 +1,105 @@
+package net.vasilydemin.customercontacts.configuration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two embedded H2 databases stand in for the primary database and the replica, each of them knows its own name
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private static final String REPLICA = "replica-0";
+
+    private EmbeddedDatabase primary;
+    private EmbeddedDatabase replica;
+    private ReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+
+    @BeforeEach
+    public void createDatabases() {
+        primary = createDatabase(ReplicaRoutingDataSource.PRIMARY);
+        replica = createDatabase(REPLICA);
+        routingDataSource = new ReplicaRoutingDataSource(List.of(REPLICA));
+        routingDataSource.setTargetDataSources(Map.of(ReplicaRoutingDataSource.PRIMARY, primary, REPLICA, replica));
+        routingDataSource.afterPropertiesSet();
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+    }
+
+    @AfterEach
+    public void shutdownDatabases() {
+        ReplicaRoutingDataSource.unpin();
+        primary.shutdown();
+        replica.shutdown();
+    }
+
+    @Test
+    public void readOnlyTransactionGoesToReplicaTest() {
+        assertThat(databaseName(true)).isEqualTo(REPLICA);
+    }
+
+    @Test
+    public void readWriteTransactionGoesToPrimaryTest() {
+        assertThat(databaseName(false)).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+    }
+
+    @Test
+    public void queryWithoutTransactionGoesToPrimaryTest() {
+        assertThat(jdbcTemplate.queryForObject("SELECT name FROM database_name", String.class))
+                .isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+    }
+
+    @Test
+    public void readsArePinnedToPrimaryAfterWriteTest() {
+        assertThat(databaseName(true)).isEqualTo(REPLICA);
+        assertThat(databaseName(false)).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+        assertThat(databaseName(true)).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+
+        ReplicaRoutingDataSource.unpin();
+        assertThat(databaseName(true)).isEqualTo(REPLICA);
+    }
+
+    @Test
+    public void unavailableReplicaIsSkippedTest() {
+        routingDataSource.setReplicaAvailable(REPLICA, false);
+        assertThat(databaseName(true)).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+
+        routingDataSource.setReplicaAvailable(REPLICA, true);
+        assertThat(databaseName(true)).isEqualTo(REPLICA);
+    }
+
+    private String databaseName(boolean readOnly) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate.execute(status ->
+                jdbcTemplate.queryForObject("SELECT name FROM database_name", String.class));
+    }
+
+    private EmbeddedDatabase createDatabase(String name) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName(name + "-" + UUID.randomUUID())
+                .build();
+        JdbcTemplate template = new JdbcTemplate(database);
+        template.execute("CREATE TABLE database_name (name varchar(255))");
+        template.update("INSERT INTO database_name (name) VALUES (?)", name);
+        return database;
+    }
+
+}
@@ -1,36 +1,72 @@
 package net.vasilydemin.customercontacts.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import net.vasilydemin.customercontacts.dto.CustomerDto;
 import net.vasilydemin.customercontacts.dto.EmailDto;
 import net.vasilydemin.customercontacts.dto.PhoneDto;
 import net.vasilydemin.customercontacts.entity.Customer;
 import net.vasilydemin.customercontacts.entity.Email;
 import net.vasilydemin.customercontacts.entity.Phone;
+import net.vasilydemin.customercontacts.exception.DataIntegrityViolations;
 import net.vasilydemin.customercontacts.mapper.CustomerMapper;
 import net.vasilydemin.customercontacts.mapper.EmailMapper;
 import net.vasilydemin.customercontacts.mapper.PhoneMapper;
+import net.vasilydemin.customercontacts.repository.ContactRow;
 import net.vasilydemin.customercontacts.repository.CustomerRepository;
 import net.vasilydemin.customercontacts.repository.EmailRepository;
 import net.vasilydemin.customercontacts.repository.PhoneRepository;
+import net.vasilydemin.customercontacts.service.ContactBatchExecutor;
+import net.vasilydemin.customercontacts.service.ContactOwnerIndex;
+import net.vasilydemin.customercontacts.service.ContactsCache;
+import net.vasilydemin.customercontacts.service.ContactsFanOut;
+import net.vasilydemin.customercontacts.service.ContactsJsonCache;
+import net.vasilydemin.customercontacts.service.CustomerIdFilter;
+import net.vasilydemin.customercontacts.service.CustomerNameIndex;
 import net.vasilydemin.customercontacts.service.CustomerService;
 import net.vasilydemin.customercontacts.service.EmailService;
+import net.vasilydemin.customercontacts.service.ExportService;
+import net.vasilydemin.customercontacts.service.ImportService;
 import net.vasilydemin.customercontacts.service.PhoneService;
 import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.ByteArrayInputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -68,17 +104,61 @@ public class CustomerControllerTest {
     @SpyBean
     private CustomerMapper customerMapper;
 
+    @SpyBean
+    private ImportService importService;
+
+    @SpyBean
+    private ExportService exportService;
+
+    @MockBean
+    private TransactionTemplate transactionTemplate;
+
+    @MockBean
+    private PlatformTransactionManager transactionManager;
+
+    @SpyBean
+    private ContactsCache contactsCache;
+
+    @SpyBean
+    private ContactBatchExecutor contactBatchExecutor;
+
+    @SpyBean
+    private CustomerIdFilter customerIdFilter;
+
+    @SpyBean
+    private CustomerNameIndex customerNameIndex;
+
+    @SpyBean
+    private ContactOwnerIndex contactOwnerIndex;
+
+    @SpyBean
+    private ContactsFanOut contactsFanOut;
+
+    @SpyBean
+    private ContactsJsonCache contactsJsonCache;
+
     @InjectMocks
     private CustomerController customerController;
 
     @Autowired
     private ObjectMapper objectMapper;
+
+    @BeforeEach
+    public void stubVersions() {
+        when(customerRepository.findVersionById(any(Long.class))).thenReturn(Optional.of(1L));
+    }
+
+    @BeforeEach
+    public void clearContactsCache() {
+        contactsCache.invalidateAll();
+        contactOwnerIndex.clear();
+    }
+
     @Test
     public void createCustomerTest() throws Exception {
         Customer customer = new Customer(1L, "Vasily Demin");
 
-        when(customerRepository.findCustomerByNameIgnoreCase(any(String.class))).thenReturn(Optional.empty());
-        when(customerRepository.save(any(Customer.class))).thenReturn(customer);
+        when(customerRepository.upsertCustomer(any(String.class))).thenReturn(Optional.of(customer));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .post("/customer")
@@ -93,21 +173,90 @@ public class CustomerControllerTest {
     public void createCustomerWhenCustomerAlreadyExistsInTheDatabaseTest() throws Exception {
         Customer customer = new Customer(1L, "Vasily Demin");
 
-        when(customerRepository.findCustomerByNameIgnoreCase(any(String.class))).thenReturn(Optional.of(customer));
+        when(customerRepository.upsertCustomer(any(String.class))).thenReturn(Optional.of(customer));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .post("/customer")
-                        .param("name", "Vasily Demin"))
+                        .param("name", "VASILY DEMIN"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.id").value(1L))
                 .andExpect(jsonPath("$.name").value("Vasily Demin"));
     }
 
     @Test
-    public void readCustomerByIdTest() throws Exception {
+    public void importCustomersTest() throws Exception {
         Customer customer = new Customer(1L, "Vasily Demin");
+        Email email = new Email(1L, 2L, "ivan.ivanov@mail.org");
+
+        doAnswer(invocation -> {
+            Consumer<TransactionStatus> action = invocation.getArgument(0);
+            action.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(customerRepository.findAllByNameLowerCaseIn(any())).thenReturn(List.of(customer));
+        when(customerRepository.saveAll(any())).thenAnswer(invocation -> {
+            Iterable<Customer> customers = invocation.getArgument(0);
+            long id = 3L;
+            for(Customer newCustomer : customers) {
+                newCustomer.setId(id++);
+            }
+            return customers;
+        });
+        when(emailRepository.findAllByEmailLowerCaseIn(any())).thenReturn(List.of(email));
 
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.of(customer));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/customer/import")
+                        .content("""
+                                {"name":"Vasily Demin","emails":["vvdemin@t2.ru","Ivan.Ivanov@mail.org"],"phones":[]}
+                                not a json
+                                {"name":"Petr Petrov","emails":["vvdemin@t2.ru"],"phones":["+79012345678"]}
+                                """)
+                        .contentType(MediaType.APPLICATION_NDJSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.customers").value(1))
+                .andExpect(jsonPath("$.emails").value(1))
+                .andExpect(jsonPath("$.phones").value(1))
+                .andExpect(jsonPath("$.rejected").value(3))
+                .andExpect(jsonPath("$.rejects[0].line").value(2))
+                .andExpect(jsonPath("$.rejects[1].line").value(1))
+                .andExpect(jsonPath("$.rejects[1].value").value("Ivan.Ivanov@mail.org"))
+                .andExpect(jsonPath("$.rejects[2].line").value(3))
+                .andExpect(jsonPath("$.rejects[2].value").value("vvdemin@t2.ru"));
+
+        verify(contactsCache).invalidateAll(Set.of(1L, 3L));
+    }
+
+    @Test
+    public void exportCustomersTest() throws Exception {
+        when(customerRepository.findAllContactsOfCustomersAfter(0L, 2)).thenReturn(List.of(
+                contactRow(1L, "customer", "Vasily Demin"),
+                contactRow(1L, "email", "vvdemin@t2.ru"),
+                contactRow(1L, "phone", "+79012345678"),
+                contactRow(2L, "customer", "Ivan Ivanov")));
+        when(customerRepository.findAllContactsOfCustomersAfter(2L, 2)).thenReturn(List.of(
+                contactRow(3L, "customer", "Petr Petrov"),
+                contactRow(3L, "phone", "+79102345678")));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().string("""
+                        {"id":1,"name":"Vasily Demin","emails":["vvdemin@t2.ru"],"phones":["+79012345678"]}
+                        {"id":2,"name":"Ivan Ivanov","emails":[],"phones":[]}
+                        {"id":3,"name":"Petr Petrov","emails":[],"phones":["+79102345678"]}"""));
+        verify(customerRepository, never()).findAllContactsOfCustomersAfter(eq(3L), anyInt());
+    }
+
+    @Test
+    public void readCustomerByIdTest() throws Exception {
+        CustomerDto customer = new CustomerDto(1L, "Vasily Demin");
+
+        when(customerRepository.findCustomerDtoById(any(Long.class))).thenReturn(Optional.of(customer));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/customer/{id}", 1L))
@@ -118,7 +267,7 @@ public class CustomerControllerTest {
 
     @Test
     public void readCustomerByIdAndNoSuchIdTest() throws Exception {
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.empty());
+        when(customerRepository.findCustomerDtoById(any(Long.class))).thenReturn(Optional.empty());
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/customer/{id}", 2L))
@@ -127,9 +276,9 @@ public class CustomerControllerTest {
 
     @Test
     public void readCustomerByNameTest() throws Exception {
-        Customer customer = new Customer(1L, "Vasily Demin");
+        CustomerDto customer = new CustomerDto(1L, "Vasily Demin");
 
-        when(customerRepository.findCustomerByNameIgnoreCase(any(String.class))).thenReturn(Optional.of(customer));
+        when(customerRepository.findCustomerDtoByNameIgnoreCase(any(String.class))).thenReturn(Optional.of(customer));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/customer")
@@ -138,13 +287,84 @@ public class CustomerControllerTest {
                 .andExpect(content().json("[{'id':1,'name':'Vasily Demin'}]"));
     }
 
+    @Test
+    public void searchCustomersByNameBeforeIndexIsBuiltTest() throws Exception {
+        CustomerDto customer = new CustomerDto(1L, "Vasily Demin");
+
+        when(customerRepository.findAllCustomerDtosByNameContaining(eq("demin"), any(Pageable.class)))
+                .thenReturn(List.of(customer));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/search")
+                        .param("q", " demin "))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{'id':1,'name':'Vasily Demin'}]"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/search")
+                        .param("q", "50%"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+
+        verify(customerRepository).findAllCustomerDtosByNameContaining(eq("50\\%"), any(Pageable.class));
+    }
+
+    @Test
+    public void readCustomersAfterTest() throws Exception {
+        CustomerDto customer1 = new CustomerDto(1L, "Vasily Demin");
+        CustomerDto customer2 = new CustomerDto(2L, "Ivan Ivanov");
+
+        when(customerRepository.findAllCustomerDtosByIdGreaterThan(any(Long.class), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(customer1, customer2), PageRequest.of(0, 2), true));
+
+        String nextPageToken = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer")
+                        .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(CustomerController.NEXT_PAGE_TOKEN_HEADER))
+                .andExpect(content().json("[{'id':1,'name':'Vasily Demin'},{'id':2,'name':'Ivan Ivanov'}]"))
+                .andReturn().getResponse().getHeader(CustomerController.NEXT_PAGE_TOKEN_HEADER);
+
+        when(customerRepository.findAllCustomerDtosByIdGreaterThan(eq(2L), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(), PageRequest.of(0, 2), false));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer")
+                        .param("after", nextPageToken)
+                        .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(CustomerController.NEXT_PAGE_TOKEN_HEADER))
+                .andExpect(content().json("[]"));
+    }
+
+    @Test
+    public void readCustomersAfterWithTooBigLimitTest() throws Exception {
+        when(customerRepository.findAllCustomerDtosByIdGreaterThan(any(Long.class), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(), PageRequest.of(0, 1000), false));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer")
+                        .param("limit", "100000000"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+
+        verify(customerRepository).findAllCustomerDtosByIdGreaterThan(0L, PageRequest.of(0, 1000));
+    }
+
+    @Test
+    public void readCustomersAfterWithWrongTokenTest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer")
+                        .param("after", "wrong token"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void readAllEmailsByCustomerIdTest() throws Exception {
-        Customer customer = new Customer(1L, "Vasily Demin");
         EmailDto email1 = new EmailDto(1L, 1L, "vvdemin@t2.ru");
         EmailDto email2 = new EmailDto(2L, 1L, "vasily.demin@t3.com");
 
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.of(customer));
+        when(customerRepository.existsById(any(Long.class))).thenReturn(true);
         when(emailService.findAllEmailsByCustomerId(any(Long.class))).thenReturn(List.of(email1, email2));
 
         mockMvc.perform(MockMvcRequestBuilders
@@ -157,11 +377,10 @@ public class CustomerControllerTest {
 
     @Test
     public void readAllPhonesByCustomerIdTest() throws Exception {
-        Customer customer = new Customer(1L, "Vasily Demin");
         PhoneDto email1 = new PhoneDto(1L, 1L, "vvdemin@t2.ru");
         PhoneDto email2 = new PhoneDto(2L, 1L, "vasily.demin@t3.com");
 
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.of(customer));
+        when(customerRepository.existsById(any(Long.class))).thenReturn(true);
         when(phoneService.findAllPhonesByCustomerId(any(Long.class))).thenReturn(List.of(email1, email2));
 
         mockMvc.perform(MockMvcRequestBuilders
@@ -180,9 +399,12 @@ public class CustomerControllerTest {
         Email email1 = new Email(1L, 1L, "vvdemin@t2.ru");
         Email email2 = new Email(2L, 1L, "vasily.demin@t3.com");
 
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.of(customer));
-        when(emailRepository.findAllByCustomerId(any(Long.class))).thenReturn(List.of(email1, email2));
-        when(phoneRepository.findAllByCustomerId(any(Long.class))).thenReturn(List.of(phone1, phone2));
+        when(customerRepository.findAllContactsByCustomerId(any(Long.class))).thenReturn(List.of(
+                contactRow(customer.getId(), "customer", customer.getName()),
+                contactRow(email1.getCustomerId(), "email", email1.getEmail()),
+                contactRow(email2.getCustomerId(), "email", email2.getEmail()),
+                contactRow(phone1.getCustomerId(), "phone", phone1.getPhone()),
+                contactRow(phone2.getCustomerId(), "phone", phone2.getPhone())));
 
 
         mockMvc.perform(MockMvcRequestBuilders
@@ -192,6 +414,211 @@ public class CustomerControllerTest {
                         "'emails':['vvdemin@t2.ru','vasily.demin@t3.com'],'phones':['+79012345678','+79102345678']}"));
     }
 
+    @Test
+    public void readAllContactsByCustomerIdWithFanOutTest() throws Exception {
+        doReturn(true).when(contactsFanOut).isEnabled();
+        when(customerRepository.findCustomerRowById(1L)).thenReturn(Optional.of(
+                contactRow(1L, "customer", "Vasily Demin")));
+        when(emailRepository.findAllEmailDtosByCustomerId(1L)).thenReturn(List.of(
+                new EmailDto(1L, 1L, "vvdemin@t2.ru")));
+        when(phoneRepository.findAllPhoneDtosByCustomerId(1L)).thenReturn(List.of(
+                new PhoneDto(1L, 1L, "+79012345678"), new PhoneDto(2L, 1L, "+79102345678")));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/{id}/allcontacts", 1L))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{'id':1,'name':'Vasily Demin','emails':['vvdemin@t2.ru']," +
+                        "'phones':['+79012345678','+79102345678']}"));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/{id}/allcontacts", 2L))
+                .andExpect(status().isNotFound());
+
+        verify(customerRepository, never()).findAllContactsByCustomerId(any(Long.class));
+    }
+
+    @Test
+    public void readAllContactsByCustomerIdChangedDuringFanOutTest() throws Exception {
+        doReturn(true).when(contactsFanOut).isEnabled();
+        when(customerRepository.findCustomerRowById(1L)).thenReturn(Optional.of(
+                contactRow(1L, "customer", "Vasily Demin")));
+        when(emailRepository.findAllEmailDtosByCustomerId(1L)).thenReturn(List.of(
+                new EmailDto(1L, 1L, "vvdemin@t2.ru")));
+        when(phoneRepository.findAllPhoneDtosByCustomerId(1L)).thenReturn(List.of());
+        // version 1 is read with the customer, version 2 after the contacts
+        when(customerRepository.findVersionById(1L)).thenReturn(Optional.of(2L));
+
+        for(int i = 0; i < 2; i++) {
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/customer/{id}/allcontacts", 1L))
+                    .andExpect(status().isOk())
+                    .andExpect(header().doesNotExist(HttpHeaders.ETAG))
+                    .andExpect(jsonPath("$.emails[0]").value("vvdemin@t2.ru"));
+        }
+        // the customer without version is not cached
+        verify(customerRepository, times(2)).findCustomerRowById(1L);
+    }
+
+    @Test
+    public void readAllContactsByCustomerIdFromCacheTest() throws Exception {
+        when(customerRepository.findAllContactsByCustomerId(any(Long.class))).thenReturn(List.of(
+                contactRow(1L, "customer", "Vasily Demin"),
+                contactRow(1L, "email", "vvdemin@t2.ru")));
+
+        for(int i = 0; i < 3; i++) {
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/customer/{id}/allcontacts", 1L))
+                    .andExpect(status().isOk())
+                    .andExpect(content().json("{'id':1,'name':'Vasily Demin','emails':['vvdemin@t2.ru'],'phones':[]}"));
+        }
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/{id}/allcontactsbytype", 1L)
+                        .param("type", "email"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("['vvdemin@t2.ru']"));
+
+        verify(customerRepository, times(1)).findAllContactsByCustomerId(1L);
+    }
+
+    @Test
+    public void readCustomerByContactTest() throws Exception {
+        when(customerRepository.findAllContactsByContactValue("VVDemin@t2.ru", null)).thenReturn(List.of(
+                contactRow(1L, "customer", "Vasily Demin"),
+                contactRow(1L, "email", "vvdemin@t2.ru"),
+                contactRow(1L, "phone", "+79012345678")));
+
+        for(int i = 0; i < 3; i++) {
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/customer/by-contact")
+                            .param("value", "VVDemin@t2.ru"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().json("{'id':1,'name':'Vasily Demin','emails':['vvdemin@t2.ru']," +
+                            "'phones':['+79012345678']}"));
+        }
+
+        verify(customerRepository, times(1)).findAllContactsByContactValue("VVDemin@t2.ru", null);
+        verify(customerRepository, never()).findAllContactsByCustomerId(any(Long.class));
+    }
+
+    @Test
+    public void readCustomerByContactAfterItMovedTest() throws Exception {
+        when(customerRepository.findAllContactsByContactValue("+79012345678", 79012345678L)).thenReturn(List.of(
+                contactRow(1L, "customer", "Vasily Demin"),
+                contactRow(1L, "phone", "+79012345678")));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/by-contact")
+                        .param("value", "+79012345678"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1L));
+
+        // phone was moved to another customer, contacts cache entry of the previous owner was invalidated
+        contactsCache.invalidate(1L);
+        when(customerRepository.findAllContactsByCustomerId(1L)).thenReturn(List.of(
+                contactRow(1L, "customer", "Vasily Demin")));
+        when(customerRepository.findAllContactsByContactValue("+79012345678", 79012345678L)).thenReturn(List.of(
+                contactRow(2L, "customer", "Ivan Ivanov"),
+                contactRow(2L, "phone", "+79012345678")));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/by-contact")
+                        .param("value", "+79012345678"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{'id':2,'name':'Ivan Ivanov','emails':[],'phones':['+79012345678']}"));
+    }
+
+    @Test
+    public void readCustomerByFormattedPhoneTest() throws Exception {
+        when(customerRepository.findAllContactsByContactValue("+79012345678", 79012345678L)).thenReturn(List.of(
+                contactRow(1L, "customer", "Vasily Demin"),
+                contactRow(1L, "phone", "8 (901) 234-56-78")));
+
+        for(String phone : List.of("+79012345678", "8 (901) 234-56-78", "89012345678")) {
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/customer/by-contact")
+                            .param("value", phone))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.id").value(1L));
+        }
+
+        verify(customerRepository, times(1)).findAllContactsByContactValue(any(String.class), any());
+    }
+
+    @Test
+    public void readCustomerByContactWhenNotFoundTest() throws Exception {
+        when(customerRepository.findAllContactsByContactValue(any(String.class), any())).thenReturn(List.of());
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/by-contact")
+                        .param("value", "nobody@mail.org"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void readAllContactsByCustomerIdAfterUpdateTest() throws Exception {
+        when(customerRepository.findAllContactsByCustomerId(any(Long.class))).thenReturn(List.of(
+                contactRow(1L, "customer", "Vasily Demin")));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/{id}/allcontacts", 1L))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{'id':1,'name':'Vasily Demin','emails':[],'phones':[]}"));
+
+        JSONObject customerObject = new JSONObject();
+        customerObject.put("id", 1L);
+        customerObject.put("name", "Vasily Demin1");
+
+        when(customerRepository.updateCustomerName(any(Long.class), any(String.class), any()))
+                .thenReturn(Optional.of(new Customer(1L, "Vasily Demin1")));
+        when(customerRepository.findAllContactsByCustomerId(any(Long.class))).thenReturn(List.of(
+                contactRow(1L, "customer", "Vasily Demin1")));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/customer")
+                        .content(customerObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/{id}/allcontacts", 1L))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{'id':1,'name':'Vasily Demin1','emails':[],'phones':[]}"));
+    }
+
+    @Test
+    public void readAllContactsByCustomerIdAndNoSuchIdTest() throws Exception {
+        when(customerRepository.findAllContactsByCustomerId(any(Long.class))).thenReturn(List.of());
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/{id}/allcontacts", 2L))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void readAllContactsByCustomerIdsTest() throws Exception {
+        CustomerDto customer1 = new CustomerDto(1L, "Vasily Demin");
+        CustomerDto customer2 = new CustomerDto(2L, "Ivan Ivanov");
+        PhoneDto phone1 = new PhoneDto(1L, 1L, "+79012345678");
+        PhoneDto phone2 = new PhoneDto(2L, 2L, "+79102345678");
+        EmailDto email1 = new EmailDto(1L, 1L, "vvdemin@t2.ru");
+        EmailDto email2 = new EmailDto(2L, 1L, "vasily.demin@t3.com");
+
+        when(customerRepository.findAllCustomerDtosByIdIn(any())).thenReturn(List.of(customer2, customer1));
+        when(emailRepository.findAllEmailDtosByCustomerIdIn(any())).thenReturn(List.of(email1, email2));
+        when(phoneRepository.findAllPhoneDtosByCustomerIdIn(any())).thenReturn(List.of(phone1, phone2));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/customer/allcontacts:batchGet")
+                        .content("[1, 3, 2, 1]")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{'customers':[{'id':1,'name':'Vasily Demin'," +
+                        "'emails':['vvdemin@t2.ru','vasily.demin@t3.com'],'phones':['+79012345678']}," +
+                        "{'id':2,'name':'Ivan Ivanov','emails':[],'phones':['+79102345678']}]," +
+                        "'missingIds':[3]}"));
+    }
+
     @Test
     public void readAllContactsByCustomerIdAndByTypeEmailTest() throws Exception {
         Customer customer = new Customer(1L, "Vasily Demin");
@@ -200,9 +627,12 @@ public class CustomerControllerTest {
         Email email1 = new Email(1L, 1L, "vvdemin@t2.ru");
         Email email2 = new Email(2L, 1L, "vasily.demin@t3.com");
 
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.of(customer));
-        when(emailRepository.findAllByCustomerId(any(Long.class))).thenReturn(List.of(email1, email2));
-        when(phoneRepository.findAllByCustomerId(any(Long.class))).thenReturn(List.of(phone1, phone2));
+        when(customerRepository.findAllContactsByCustomerId(any(Long.class))).thenReturn(List.of(
+                contactRow(customer.getId(), "customer", customer.getName()),
+                contactRow(email1.getCustomerId(), "email", email1.getEmail()),
+                contactRow(email2.getCustomerId(), "email", email2.getEmail()),
+                contactRow(phone1.getCustomerId(), "phone", phone1.getPhone()),
+                contactRow(phone2.getCustomerId(), "phone", phone2.getPhone())));
 
 
         mockMvc.perform(MockMvcRequestBuilders
@@ -220,9 +650,12 @@ public class CustomerControllerTest {
         Email email1 = new Email(1L, 1L, "vvdemin@t2.ru");
         Email email2 = new Email(2L, 1L, "vasily.demin@t3.com");
 
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.of(customer));
-        when(emailRepository.findAllByCustomerId(any(Long.class))).thenReturn(List.of(email1, email2));
-        when(phoneRepository.findAllByCustomerId(any(Long.class))).thenReturn(List.of(phone1, phone2));
+        when(customerRepository.findAllContactsByCustomerId(any(Long.class))).thenReturn(List.of(
+                contactRow(customer.getId(), "customer", customer.getName()),
+                contactRow(email1.getCustomerId(), "email", email1.getEmail()),
+                contactRow(email2.getCustomerId(), "email", email2.getEmail()),
+                contactRow(phone1.getCustomerId(), "phone", phone1.getPhone()),
+                contactRow(phone2.getCustomerId(), "phone", phone2.getPhone())));
 
 
         mockMvc.perform(MockMvcRequestBuilders
@@ -234,7 +667,6 @@ public class CustomerControllerTest {
 
     @Test
     public void updateCustomerTest() throws Exception {
-        Customer customer = new Customer(1L, "Vasily Demin");
         Customer customer1 = new Customer(1L, "Vasily Demin1");
 
         JSONObject customerObject = new JSONObject();
@@ -242,8 +674,8 @@ public class CustomerControllerTest {
         customerObject.put("name", "Vasily Demin1");
 
 
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.of(customer));
-        when(customerRepository.save(any(Customer.class))).thenReturn(customer1);
+        when(customerRepository.updateCustomerName(any(Long.class), any(String.class), any()))
+                .thenReturn(Optional.of(customer1));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .put("/customer")
@@ -255,6 +687,157 @@ public class CustomerControllerTest {
                 .andExpect(jsonPath("$.name").value("Vasily Demin1"));
     }
 
+    @Test
+    public void updateCustomerWhenNoSuchIdTest() throws Exception {
+        JSONObject customerObject = new JSONObject();
+        customerObject.put("id", 2L);
+        customerObject.put("name", "Ivan Ivanov");
+
+        when(customerRepository.updateCustomerName(any(Long.class), any(String.class), any()))
+                .thenReturn(Optional.empty());
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/customer")
+                        .content(customerObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void updateCustomerWithNameOfAnotherCustomerTest() throws Exception {
+        JSONObject customerObject = new JSONObject();
+        customerObject.put("id", 1L);
+        customerObject.put("name", "Ivan Ivanov");
+
+        when(customerRepository.updateCustomerName(any(Long.class), any(String.class), any())).thenThrow(
+                new DataIntegrityViolationException("unique_customer_name violation",
+                        new SQLException("duplicate key value violates unique constraint",
+                                DataIntegrityViolations.UNIQUE_VIOLATION)));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/customer")
+                        .content(customerObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void readAllContactsByCustomerIdWhenNotModifiedTest() throws Exception {
+        when(customerRepository.findVersionById(1L)).thenReturn(Optional.of(5L));
+        when(customerRepository.findAllContactsByCustomerId(1L)).thenReturn(List.of(
+                contactRow(1L, "customer", "Vasily Demin", 5L), contactRow(1L, "email", "vvdemin@t2.ru")));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/{id}/allcontacts", 1L)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"5\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5\""))
+                .andExpect(content().string(""));
+        verify(customerRepository, never()).findAllContactsByCustomerId(any(Long.class));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/{id}/allcontacts", 1L)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"4\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5\""))
+                .andExpect(jsonPath("$.emails[0]").value("vvdemin@t2.ru"));
+    }
+
+    @Test
+    public void readAllContactsByCustomerIdFromJsonCacheTest() throws Exception {
+        List<ContactRow> rows = new ArrayList<>();
+        rows.add(contactRow(1L, "customer", "Vasily Demin"));
+        for(int i = 0; i < 10; i++) {
+            rows.add(contactRow(1L, "email", "vasily.demin" + i + "@example.com"));
+        }
+        when(customerRepository.findAllContactsByCustomerId(1L)).thenReturn(rows);
+
+        MvcResult gzipped = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/{id}/allcontacts", 1L)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1-gzip\""))
+                .andReturn();
+        try(GZIPInputStream json = new GZIPInputStream(
+                new ByteArrayInputStream(gzipped.getResponse().getContentAsByteArray()))) {
+            assertThat(objectMapper.readTree(json).get("emails")).hasSize(10);
+        }
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/{id}/allcontacts", 1L))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""))
+                .andExpect(jsonPath("$.emails[9]").value("vasily.demin9@example.com"));
+        verify(contactsCache, times(1)).get(eq(1L), any());
+
+        for(String eTag : List.of("\"1-gzip\"", "\"1\"")) {
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/customer/{id}/allcontacts", 1L)
+                            .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                    .andExpect(status().isNotModified())
+                    .andExpect(header().string(HttpHeaders.ETAG, eTag));
+        }
+        verify(customerRepository, times(1)).findAllContactsByCustomerId(1L);
+    }
+
+    @Test
+    public void readAllContactsByCustomerIdVersionFromCacheTest() throws Exception {
+        when(customerRepository.findAllContactsByCustomerId(1L)).thenReturn(List.of(
+                contactRow(1L, "customer", "Vasily Demin", 1L), contactRow(1L, "email", "vvdemin@t2.ru")));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/{id}/allcontacts", 1L))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""));
+
+        // version of the cached customer is taken from the cache entry, without a query
+        for(String path : List.of("/customer/{id}", "/customer/{id}/allemails", "/customer/{id}/allphones",
+                "/customer/{id}/allcontacts")) {
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get(path, 1L)
+                            .header(HttpHeaders.IF_NONE_MATCH, "\"1\""))
+                    .andExpect(status().isNotModified());
+        }
+        verify(customerRepository, times(1)).findVersionById(1L);
+
+        // the entry is invalidated by every change, then the version is read from the database again
+        contactsCache.invalidate(1L);
+        when(customerRepository.findVersionById(1L)).thenReturn(Optional.of(2L));
+        when(customerRepository.findAllContactsByCustomerId(1L)).thenReturn(List.of(
+                contactRow(1L, "customer", "Vasily Demin", 2L), contactRow(1L, "email", "vasily@mail.org")));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/customer/{id}/allcontacts", 1L)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"1\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"2\""))
+                .andExpect(jsonPath("$.emails[0]").value("vasily@mail.org"));
+        verify(customerRepository, times(2)).findVersionById(1L);
+        verify(customerRepository, times(2)).findAllContactsByCustomerId(1L);
+    }
+
+    @Test
+    public void updateCustomerWhenVersionChangedTest() throws Exception {
+        JSONObject customerObject = new JSONObject();
+        customerObject.put("id", 1L);
+        customerObject.put("name", "Ivan Ivanov");
+
+        when(customerRepository.updateCustomerName(1L, "Ivan Ivanov", 4L)).thenReturn(Optional.empty());
+        when(customerRepository.findVersionById(1L)).thenReturn(Optional.of(5L));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/customer")
+                        .header(HttpHeaders.IF_MATCH, "\"4\"")
+                        .content(customerObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isPreconditionFailed());
+        verify(customerRepository, times(1)).updateCustomerName(1L, "Ivan Ivanov", 4L);
+    }
+
     @Test
     public void deleteCustomerTest() throws Exception {
         Customer customer = new Customer(1L, "Vasily Demin");
@@ -264,7 +847,7 @@ public class CustomerControllerTest {
         customerObject.put("name", "Vasily Demin");
 
 
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.of(customer));
+        when(customerRepository.deleteCustomerById(any(Long.class), any())).thenReturn(Optional.of(customer));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .delete("/customer")
@@ -276,5 +859,35 @@ public class CustomerControllerTest {
                 .andExpect(jsonPath("$.name").value("Vasily Demin"));
     }
 
+    /**
+     * Row with version 1 (version stubbed in stubVersions) for customer rows
+     */
+    private static ContactRow contactRow(Long customerId, String type, String value) {
+        return contactRow(customerId, type, value, "customer".equals(type) ? 1L : null);
+    }
+
+    private static ContactRow contactRow(Long customerId, String type, String value, Long version) {
+        return new ContactRow() {
+            @Override
+            public Long getCustomerId() {
+                return customerId;
+            }
+
+            @Override
+            public String getType() {
+                return type;
+            }
+
+            @Override
+            public String getValue() {
+                return value;
+            }
+
+            @Override
+            public Long getVersion() {
+                return version;
+            }
+        };
+    }
 
 }
@@ -1,26 +1,44 @@
 package net.vasilydemin.customercontacts.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import net.vasilydemin.customercontacts.entity.Customer;
+import net.vasilydemin.customercontacts.dto.EmailDto;
+import net.vasilydemin.customercontacts.exception.DataIntegrityViolations;
 import net.vasilydemin.customercontacts.entity.Email;
 import net.vasilydemin.customercontacts.mapper.EmailMapper;
+import net.vasilydemin.customercontacts.repository.ContactUpdateRow;
 import net.vasilydemin.customercontacts.repository.CustomerRepository;
 import net.vasilydemin.customercontacts.repository.EmailRepository;
+import net.vasilydemin.customercontacts.service.ContactBatchExecutor;
+import net.vasilydemin.customercontacts.service.ContactsCache;
+import net.vasilydemin.customercontacts.service.ContactsJsonCache;
 import net.vasilydemin.customercontacts.service.EmailService;
+import org.json.JSONArray;
 import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.SQLException;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -43,24 +61,48 @@ public class EmailControllerTest {
     @SpyBean
     private EmailMapper emailMapper;
 
+    @SpyBean
+    private ContactsCache contactsCache;
+
+    @SpyBean
+    private ContactsJsonCache contactsJsonCache;
+
+    @SpyBean
+    private ContactBatchExecutor contactBatchExecutor;
+
+    @MockBean
+    private TransactionTemplate transactionTemplate;
+
     @InjectMocks
     private EmailController emailController;
 
     @Autowired
     private ObjectMapper objectMapper;
 
+    @BeforeEach
+    public void stubVersions() {
+        when(emailRepository.findVersionById(any(Long.class))).thenReturn(Optional.of(1L));
+    }
+
+    @BeforeEach
+    public void executeTransactionCallbacks() {
+        doAnswer(invocation -> {
+            Consumer<TransactionStatus> action = invocation.getArgument(0);
+            action.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
     @Test
     public void createEmailTest() throws Exception {
         Email email1 = new Email(1L, 1L, "vasily.demin@mail.org");
-        Customer customer1 = new Customer(1L, "Vasily Demin");
 
         JSONObject emailObject = new JSONObject();
         emailObject.put("id", 0L);
         emailObject.put("customerId", 1L);
         emailObject.put("email", "vasily.demin@mail.org");
 
-        when(emailRepository.save(any(Email.class))).thenReturn(email1);
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.of(customer1));
+        when(emailRepository.upsertEmail(any(Long.class), any(String.class))).thenReturn(Optional.of(email1));
 
         mockMvc.perform(MockMvcRequestBuilders
                 .post("/emails")
@@ -76,6 +118,26 @@ public class EmailControllerTest {
 
     @Test
     public void createEmailWhenCustomerNotFoundTest() throws Exception {
+        JSONObject emailObject = new JSONObject();
+        emailObject.put("id", 0L);
+        emailObject.put("customerId", 2L);
+        emailObject.put("email", "vasily.demin@mail.org");
+
+        when(emailRepository.upsertEmail(any(Long.class), any(String.class))).thenThrow(
+                new DataIntegrityViolationException("customer_id foreign key violation",
+                        new SQLException("insert or update violates foreign key constraint",
+                                DataIntegrityViolations.FOREIGN_KEY_VIOLATION)));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/emails")
+                        .content(emailObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void createEmailWhenOwnedByAnotherCustomerTest() throws Exception {
         Email email1 = new Email(1L, 1L, "vasily.demin@mail.org");
 
         JSONObject emailObject = new JSONObject();
@@ -83,27 +145,26 @@ public class EmailControllerTest {
         emailObject.put("customerId", 2L);
         emailObject.put("email", "vasily.demin@mail.org");
 
-        when(emailRepository.save(any(Email.class))).thenReturn(email1);
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.empty());
+        when(emailRepository.upsertEmail(any(Long.class), any(String.class))).thenReturn(Optional.of(email1));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .post("/emails")
                         .content(emailObject.toString())
                         .contentType(MediaType.APPLICATION_JSON_VALUE)
                         .accept(MediaType.APPLICATION_JSON_VALUE))
-                .andExpect(status().isNotFound());
+                .andExpect(status().isBadRequest());
     }
 
     @Test
     public void readEmailByIdTest() throws Exception {
-        Email email1 = new Email(1L, 1L, "vasily.demin@mail.org");
+        EmailDto email1 = new EmailDto(1L, 1L, "vasily.demin@mail.org");
 
         JSONObject emailObject = new JSONObject();
         emailObject.put("id", 1L);
         emailObject.put("customerId", 1L);
         emailObject.put("email", "vasily.demin@mail.org");
 
-        when(emailRepository.findById(any(Long.class))).thenReturn(Optional.of(email1));
+        when(emailRepository.findEmailDtoById(any(Long.class))).thenReturn(Optional.of(email1));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/emails/{id}", 1L)
@@ -118,18 +179,13 @@ public class EmailControllerTest {
 
     @Test
     public void updateEmailTest() throws Exception {
-        Email email1 = new Email(1L, 1L, "vasily.demin@mail.org");
-        Customer customer1 = new Customer(1L, "Vasily Demin");
-        Email email2 = new Email(1L, 1L, "vvdemin@mail.org");
-
         JSONObject emailObject = new JSONObject();
         emailObject.put("id", 1L);
         emailObject.put("customerId", 1L);
         emailObject.put("email", "vvdemin@mail.org");
 
-        when(emailRepository.findById(any(Long.class))).thenReturn(Optional.of(email1));
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.of(customer1));
-        when(emailRepository.save(any(Email.class))).thenReturn(email2);
+        when(emailRepository.updateEmail(any(Long.class), any(Long.class), any(String.class), any()))
+                .thenReturn(Optional.of(contactUpdateRow(1L, 1L, "vvdemin@mail.org", 1L)));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .put("/emails")
@@ -142,18 +198,104 @@ public class EmailControllerTest {
                 .andExpect(jsonPath("$.email").value("vvdemin@mail.org"));
     }
 
+    @Test
+    public void updateEmailWhenNoSuchIdTest() throws Exception {
+        JSONObject emailObject = new JSONObject();
+        emailObject.put("id", 2L);
+        emailObject.put("customerId", 1L);
+        emailObject.put("email", "vvdemin@mail.org");
+
+        when(emailRepository.updateEmail(any(Long.class), any(Long.class), any(String.class), any()))
+                .thenReturn(Optional.empty());
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/emails")
+                        .content(emailObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void updateEmailWhenCustomerNotFoundTest() throws Exception {
+        JSONObject emailObject = new JSONObject();
+        emailObject.put("id", 1L);
+        emailObject.put("customerId", 2L);
+        emailObject.put("email", "vvdemin@mail.org");
+
+        when(emailRepository.updateEmail(any(Long.class), any(Long.class), any(String.class), any())).thenThrow(
+                new DataIntegrityViolationException("customer_id foreign key violation",
+                        new SQLException("insert or update violates foreign key constraint",
+                                DataIntegrityViolations.FOREIGN_KEY_VIOLATION)));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/emails")
+                        .content(emailObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void updateEmailWhenOwnedByAnotherRecordTest() throws Exception {
+        JSONObject emailObject = new JSONObject();
+        emailObject.put("id", 1L);
+        emailObject.put("customerId", 1L);
+        emailObject.put("email", "vvdemin@mail.org");
+
+        when(emailRepository.updateEmail(any(Long.class), any(Long.class), any(String.class), any())).thenThrow(
+                new DataIntegrityViolationException("unique_email violation",
+                        new SQLException("duplicate key value violates unique constraint",
+                                DataIntegrityViolations.UNIQUE_VIOLATION)));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/emails")
+                        .content(emailObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void readEmailByIdWhenNotModifiedTest() throws Exception {
+        when(emailRepository.findVersionById(1L)).thenReturn(Optional.of(2L));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/emails/{id}", 1L)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"2\""))
+                .andExpect(status().isNotModified());
+        verify(emailRepository, never()).findEmailDtoById(any(Long.class));
+    }
+
+    @Test
+    public void deleteEmailWhenVersionChangedTest() throws Exception {
+        JSONObject emailObject = new JSONObject();
+        emailObject.put("id", 1L);
+        emailObject.put("customerId", 1L);
+        emailObject.put("email", "vasily.demin@mail.org");
+
+        when(emailRepository.deleteEmailById(1L, 1L)).thenReturn(Optional.empty());
+        when(emailRepository.findVersionById(1L)).thenReturn(Optional.of(2L));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .delete("/emails")
+                        .header(HttpHeaders.IF_MATCH, "\"1\"")
+                        .content(emailObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     public void deleteEmailTest() throws Exception {
         Email email1 = new Email(1L, 1L, "vasily.demin@mail.org");
-        Customer customer1 = new Customer(1L, "Vasily Demin");
 
         JSONObject emailObject = new JSONObject();
         emailObject.put("id", 1L);
         emailObject.put("customerId", 1L);
         emailObject.put("email", "vasily.demin@mail.org");
 
-        when(emailRepository.findById(any(Long.class))).thenReturn(Optional.of(email1));
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.of(customer1));
+        when(emailRepository.deleteEmailById(any(Long.class), any())).thenReturn(Optional.of(email1));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .delete("/emails")
@@ -166,4 +308,129 @@ public class EmailControllerTest {
                 .andExpect(jsonPath("$.email").value("vasily.demin@mail.org"));
     }
 
+    @Test
+    public void createEmailsBestEffortTest() throws Exception {
+        when(customerRepository.findAllIdsByIdIn(any())).thenReturn(List.of(1L));
+        when(emailRepository.findAllByEmailLowerCaseIn(any()))
+                .thenReturn(List.of(new Email(5L, 2L, "ivan.ivanov@mail.org")));
+        doAnswer(invocation -> {
+            Iterable<Email> emails = invocation.getArgument(0);
+            emails.forEach(email -> email.setId(10L));
+            return null;
+        }).when(emailRepository).saveAll(any());
+
+        JSONArray emailArray = new JSONArray();
+        emailArray.put(new JSONObject().put("customerId", 1L).put("email", "vasily.demin@mail.org"));
+        emailArray.put(new JSONObject().put("customerId", 1L).put("email", "Ivan.Ivanov@mail.org"));
+        emailArray.put(new JSONObject().put("customerId", 3L).put("email", "petr.petrov@mail.org"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/emails/batch?mode=besteffort")
+                        .content(emailArray.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.succeeded").value(1))
+                .andExpect(jsonPath("$.failed").value(2))
+                .andExpect(jsonPath("$.items[0].status").value("CREATED"))
+                .andExpect(jsonPath("$.items[0].item.id").value(10L))
+                .andExpect(jsonPath("$.items[1].status").value("CONFLICT"))
+                .andExpect(jsonPath("$.items[2].status").value("CUSTOMER_NOT_FOUND"));
+    }
+
+    @Test
+    public void createEmailsAtomicWhenItemFailsTest() throws Exception {
+        when(customerRepository.findAllIdsByIdIn(any())).thenReturn(List.of(1L));
+
+        JSONArray emailArray = new JSONArray();
+        emailArray.put(new JSONObject().put("customerId", 1L).put("email", "vasily.demin@mail.org"));
+        emailArray.put(new JSONObject().put("customerId", 3L).put("email", "petr.petrov@mail.org"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/emails/batch")
+                        .content(emailArray.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.succeeded").value(0))
+                .andExpect(jsonPath("$.failed").value(2))
+                .andExpect(jsonPath("$.items[0].status").value("NOT_APPLIED"))
+                .andExpect(jsonPath("$.items[1].status").value("CUSTOMER_NOT_FOUND"));
+
+        verify(emailRepository, never()).saveAll(any());
+    }
+
+    @Test
+    public void deleteEmailsBestEffortTest() throws Exception {
+        when(emailRepository.findAllById(any())).thenReturn(List.of(new Email(1L, 1L, "vasily.demin@mail.org")));
+
+        JSONArray emailArray = new JSONArray();
+        emailArray.put(new JSONObject().put("id", 1L));
+        emailArray.put(new JSONObject().put("id", 2L));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .delete("/emails/batch?mode=besteffort")
+                        .content(emailArray.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].status").value("DELETED"))
+                .andExpect(jsonPath("$.items[0].item.email").value("vasily.demin@mail.org"))
+                .andExpect(jsonPath("$.items[1].status").value("NOT_FOUND"));
+
+        verify(emailRepository).deleteAllByIdInBatch(Set.of(1L));
+    }
+
+    @Test
+    public void createEmailsWhenTooManyItemsTest() throws Exception {
+        JSONArray emailArray = new JSONArray();
+        for(int i = 0; i < 1001; i++) {
+            emailArray.put(new JSONObject().put("customerId", 1L).put("email", "email" + i + "@mail.org"));
+        }
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/emails/batch")
+                        .content(emailArray.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void createEmailsWhenModeIsWrongTest() throws Exception {
+        JSONArray emailArray = new JSONArray();
+        emailArray.put(new JSONObject().put("customerId", 1L).put("email", "vasily.demin@mail.org"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/emails/batch?mode=sometimes")
+                        .content(emailArray.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static ContactUpdateRow contactUpdateRow(Long id, Long customerId, String value, Long previousCustomerId) {
+        return new ContactUpdateRow() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Long getCustomerId() {
+                return customerId;
+            }
+
+            @Override
+            public String getValue() {
+                return value;
+            }
+
+            @Override
+            public Long getPreviousCustomerId() {
+                return previousCustomerId;
+            }
+        };
+    }
+
 }
@@ -1,26 +1,42 @@
 package net.vasilydemin.customercontacts.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import net.vasilydemin.customercontacts.entity.Customer;
+import net.vasilydemin.customercontacts.dto.PhoneDto;
+import net.vasilydemin.customercontacts.exception.DataIntegrityViolations;
 import net.vasilydemin.customercontacts.entity.Phone;
 import net.vasilydemin.customercontacts.mapper.PhoneMapper;
+import net.vasilydemin.customercontacts.repository.ContactUpdateRow;
 import net.vasilydemin.customercontacts.repository.CustomerRepository;
 import net.vasilydemin.customercontacts.repository.PhoneRepository;
+import net.vasilydemin.customercontacts.service.ContactBatchExecutor;
+import net.vasilydemin.customercontacts.service.ContactsCache;
+import net.vasilydemin.customercontacts.service.ContactsJsonCache;
 import net.vasilydemin.customercontacts.service.PhoneService;
+import org.json.JSONArray;
 import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.SQLException;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -43,24 +59,49 @@ public class PhoneControllerTest {
     @SpyBean
     private PhoneMapper phoneMapper;
 
+    @SpyBean
+    private ContactsCache contactsCache;
+
+    @SpyBean
+    private ContactsJsonCache contactsJsonCache;
+
+    @SpyBean
+    private ContactBatchExecutor contactBatchExecutor;
+
+    @MockBean
+    private TransactionTemplate transactionTemplate;
+
     @InjectMocks
     private PhoneController phoneController;
 
     @Autowired
     private ObjectMapper objectMapper;
 
+    @BeforeEach
+    public void stubVersions() {
+        when(phoneRepository.findVersionById(any(Long.class))).thenReturn(Optional.of(1L));
+    }
+
+    @BeforeEach
+    public void executeTransactionCallbacks() {
+        doAnswer(invocation -> {
+            Consumer<TransactionStatus> action = invocation.getArgument(0);
+            action.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
     @Test
     public void createPhoneTest() throws Exception {
         Phone phone1 = new Phone(1L, 1L, "+79012345678");
-        Customer customer1 = new Customer(1L, "Vasily Demin");
 
         JSONObject phoneObject = new JSONObject();
         phoneObject.put("id", 0L);
         phoneObject.put("customerId", 1L);
         phoneObject.put("phone", "+79012345678");
 
-        when(phoneRepository.save(any(Phone.class))).thenReturn(phone1);
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.of(customer1));
+        when(phoneRepository.upsertPhone(any(Long.class), any(String.class), any(Long.class)))
+                .thenReturn(Optional.of(phone1));
 
         mockMvc.perform(MockMvcRequestBuilders
                 .post("/phones")
@@ -76,6 +117,26 @@ public class PhoneControllerTest {
 
     @Test
     public void createPhoneWhenCustomerNotFoundTest() throws Exception {
+        JSONObject phoneObject = new JSONObject();
+        phoneObject.put("id", 0L);
+        phoneObject.put("customerId", 2L);
+        phoneObject.put("phone", "+79012345678");
+
+        when(phoneRepository.upsertPhone(any(Long.class), any(String.class), any(Long.class))).thenThrow(
+                new DataIntegrityViolationException("customer_id foreign key violation",
+                        new SQLException("insert or update violates foreign key constraint",
+                                DataIntegrityViolations.FOREIGN_KEY_VIOLATION)));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/phones")
+                        .content(phoneObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void createPhoneWhenOwnedByAnotherCustomerTest() throws Exception {
         Phone phone1 = new Phone(1L, 1L, "+79012345678");
 
         JSONObject phoneObject = new JSONObject();
@@ -83,27 +144,64 @@ public class PhoneControllerTest {
         phoneObject.put("customerId", 2L);
         phoneObject.put("phone", "+79012345678");
 
-        when(phoneRepository.save(any(Phone.class))).thenReturn(phone1);
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.empty());
+        when(phoneRepository.upsertPhone(any(Long.class), any(String.class), any(Long.class)))
+                .thenReturn(Optional.of(phone1));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .post("/phones")
                         .content(phoneObject.toString())
                         .contentType(MediaType.APPLICATION_JSON_VALUE)
                         .accept(MediaType.APPLICATION_JSON_VALUE))
-                .andExpect(status().isNotFound());
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void createPhoneWhenNumberIsWrongTest() throws Exception {
+        JSONObject phoneObject = new JSONObject();
+        phoneObject.put("id", 0L);
+        phoneObject.put("customerId", 1L);
+        phoneObject.put("phone", "12-34");
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/phones")
+                        .content(phoneObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isBadRequest());
+        verify(phoneRepository, never()).upsertPhone(any(Long.class), any(String.class), any(Long.class));
+    }
+
+    @Test
+    public void createPhoneWithFormattedNumberTest() throws Exception {
+        Phone phone1 = new Phone(1L, 1L, "8 (901) 234-56-78");
+
+        JSONObject phoneObject = new JSONObject();
+        phoneObject.put("id", 0L);
+        phoneObject.put("customerId", 1L);
+        phoneObject.put("phone", "8 (901) 234-56-78");
+
+        when(phoneRepository.upsertPhone(1L, "8 (901) 234-56-78", 79012345678L)).thenReturn(Optional.of(phone1));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/phones")
+                        .content(phoneObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1L))
+                .andExpect(jsonPath("$.phone").value("8 (901) 234-56-78"));
     }
 
     @Test
     public void readPhoneByIdTest() throws Exception {
-        Phone phone1 = new Phone(1L, 1L, "+79012345678");
+        PhoneDto phone1 = new PhoneDto(1L, 1L, "+79012345678");
 
         JSONObject phoneObject = new JSONObject();
         phoneObject.put("id", 1L);
         phoneObject.put("customerId", 1L);
         phoneObject.put("phone", "+79012345678");
 
-        when(phoneRepository.findById(any(Long.class))).thenReturn(Optional.of(phone1));
+        when(phoneRepository.findPhoneDtoById(any(Long.class))).thenReturn(Optional.of(phone1));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/phones/{id}", 1L)
@@ -118,18 +216,13 @@ public class PhoneControllerTest {
 
     @Test
     public void updatePhoneTest() throws Exception {
-        Phone phone1 = new Phone(1L, 1L, "+79012345678");
-        Customer customer1 = new Customer(1L, "Vasily Demin");
-        Phone phone2 = new Phone(1L, 1L, "+79102345678");
-
         JSONObject phoneObject = new JSONObject();
         phoneObject.put("id", 1L);
         phoneObject.put("customerId", 1L);
         phoneObject.put("phone", "+79102345678");
 
-        when(phoneRepository.findById(any(Long.class))).thenReturn(Optional.of(phone1));
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.of(customer1));
-        when(phoneRepository.save(any(Phone.class))).thenReturn(phone2);
+        when(phoneRepository.updatePhone(any(Long.class), any(Long.class), any(String.class), any(Long.class), any()))
+                .thenReturn(Optional.of(contactUpdateRow(1L, 1L, "+79102345678", 1L)));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .put("/phones")
@@ -142,18 +235,74 @@ public class PhoneControllerTest {
                 .andExpect(jsonPath("$.phone").value("+79102345678"));
     }
 
+    @Test
+    public void updatePhoneWhenNoSuchIdTest() throws Exception {
+        JSONObject phoneObject = new JSONObject();
+        phoneObject.put("id", 2L);
+        phoneObject.put("customerId", 1L);
+        phoneObject.put("phone", "+79102345678");
+
+        when(phoneRepository.updatePhone(any(Long.class), any(Long.class), any(String.class), any(Long.class), any()))
+                .thenReturn(Optional.empty());
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/phones")
+                        .content(phoneObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void updatePhoneWhenCustomerNotFoundTest() throws Exception {
+        JSONObject phoneObject = new JSONObject();
+        phoneObject.put("id", 1L);
+        phoneObject.put("customerId", 2L);
+        phoneObject.put("phone", "+79102345678");
+
+        when(phoneRepository.updatePhone(any(Long.class), any(Long.class), any(String.class), any(Long.class), any()))
+                .thenThrow(new DataIntegrityViolationException("customer_id foreign key violation",
+                        new SQLException("insert or update violates foreign key constraint",
+                                DataIntegrityViolations.FOREIGN_KEY_VIOLATION)));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/phones")
+                        .content(phoneObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void updatePhoneWhenOwnedByAnotherRecordTest() throws Exception {
+        JSONObject phoneObject = new JSONObject();
+        phoneObject.put("id", 1L);
+        phoneObject.put("customerId", 1L);
+        phoneObject.put("phone", "+79102345678");
+
+        when(phoneRepository.updatePhone(any(Long.class), any(Long.class), any(String.class), any(Long.class), any()))
+                .thenThrow(new DataIntegrityViolationException("unique_phone violation",
+                        new SQLException("duplicate key value violates unique constraint",
+                                DataIntegrityViolations.UNIQUE_VIOLATION)));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/phones")
+                        .content(phoneObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void deletePhoneTest() throws Exception {
         Phone phone1 = new Phone(1L, 1L, "+79012345678");
-        Customer customer1 = new Customer(1L, "Vasily Demin");
 
         JSONObject phoneObject = new JSONObject();
         phoneObject.put("id", 1L);
         phoneObject.put("customerId", 1L);
         phoneObject.put("phone", "+79012345678");
 
-        when(phoneRepository.findById(any(Long.class))).thenReturn(Optional.of(phone1));
-        when(customerRepository.findCustomerById(any(Long.class))).thenReturn(Optional.of(customer1));
+        when(phoneRepository.deletePhoneById(any(Long.class), any())).thenReturn(Optional.of(phone1));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .delete("/phones")
@@ -166,4 +315,122 @@ public class PhoneControllerTest {
                 .andExpect(jsonPath("$.phone").value("+79012345678"));
     }
 
+    @Test
+    public void createPhonesBestEffortTest() throws Exception {
+        when(customerRepository.findAllIdsByIdIn(any())).thenReturn(List.of(1L));
+        when(phoneRepository.findAllByPhoneKeyIn(any())).thenReturn(List.of(new Phone(5L, 1L, "+79023456789")));
+        doAnswer(invocation -> {
+            Iterable<Phone> phones = invocation.getArgument(0);
+            phones.forEach(phone -> phone.setId(10L));
+            return null;
+        }).when(phoneRepository).saveAll(any());
+
+        JSONArray phoneArray = new JSONArray();
+        phoneArray.put(new JSONObject().put("customerId", 1L).put("phone", "+79012345678"));
+        phoneArray.put(new JSONObject().put("customerId", 1L).put("phone", "8 (902) 345-67-89"));
+        phoneArray.put(new JSONObject().put("customerId", 1L).put("phone", " "));
+        phoneArray.put(new JSONObject().put("customerId", 1L).put("phone", "call me"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/phones/batch?mode=besteffort")
+                        .content(phoneArray.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.succeeded").value(2))
+                .andExpect(jsonPath("$.failed").value(2))
+                .andExpect(jsonPath("$.items[0].status").value("CREATED"))
+                .andExpect(jsonPath("$.items[0].item.id").value(10L))
+                .andExpect(jsonPath("$.items[1].status").value("EXISTS"))
+                .andExpect(jsonPath("$.items[1].item.id").value(5L))
+                .andExpect(jsonPath("$.items[1].item.phone").value("+79023456789"))
+                .andExpect(jsonPath("$.items[2].status").value("INVALID"))
+                .andExpect(jsonPath("$.items[3].status").value("INVALID"));
+    }
+
+    @Test
+    public void updatePhonesAtomicTest() throws Exception {
+        Phone phone1 = new Phone(1L, 1L, "+79012345678");
+        Phone phone2 = new Phone(2L, 1L, "+79023456789");
+        when(phoneRepository.findAllById(any())).thenReturn(List.of(phone1, phone2));
+        when(customerRepository.findAllIdsByIdIn(any())).thenReturn(List.of(1L, 2L));
+        when(phoneRepository.findAllByPhoneKeyIn(any())).thenReturn(List.of(phone1));
+
+        JSONArray phoneArray = new JSONArray();
+        phoneArray.put(new JSONObject().put("id", 1L).put("customerId", 2L).put("phone", "+79012345678"));
+        phoneArray.put(new JSONObject().put("id", 2L).put("customerId", 1L).put("phone", "+79034567890"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/phones/batch")
+                        .content(phoneArray.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.succeeded").value(2))
+                .andExpect(jsonPath("$.items[0].status").value("UPDATED"))
+                .andExpect(jsonPath("$.items[0].item.customerId").value(2L))
+                .andExpect(jsonPath("$.items[1].status").value("UPDATED"))
+                .andExpect(jsonPath("$.items[1].item.phone").value("+79034567890"));
+    }
+
+    @Test
+    public void updatePhonesWhenOwnedByAnotherRecordTest() throws Exception {
+        Phone phone1 = new Phone(1L, 1L, "+79012345678");
+        Phone phone2 = new Phone(2L, 1L, "+79023456789");
+        when(phoneRepository.findAllById(any())).thenReturn(List.of(phone1, phone2));
+        when(customerRepository.findAllIdsByIdIn(any())).thenReturn(List.of(1L));
+        when(phoneRepository.findAllByPhoneKeyIn(any())).thenReturn(List.of(phone2));
+
+        JSONArray phoneArray = new JSONArray();
+        phoneArray.put(new JSONObject().put("id", 1L).put("customerId", 1L).put("phone", "+79023456789"));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/phones/batch")
+                        .content(phoneArray.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.succeeded").value(0))
+                .andExpect(jsonPath("$.items[0].status").value("CONFLICT"));
+    }
+
+    @Test
+    public void deletePhonesWhenTooManyItemsTest() throws Exception {
+        JSONArray phoneArray = new JSONArray();
+        for(int i = 0; i < 1001; i++) {
+            phoneArray.put(new JSONObject().put("id", (long) i));
+        }
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .delete("/phones/batch")
+                        .content(phoneArray.toString())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static ContactUpdateRow contactUpdateRow(Long id, Long customerId, String value, Long previousCustomerId) {
+        return new ContactUpdateRow() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Long getCustomerId() {
+                return customerId;
+            }
+
+            @Override
+            public String getValue() {
+                return value;
+            }
+
+            @Override
+            public Long getPreviousCustomerId() {
+                return previousCustomerId;
+            }
+        };
+    }
+
 }
@@ -0,0 +1,169 @@
+package net.vasilydemin.customercontacts.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Standalone harness for id generation of entities (not a test, surefire does not run it): inserts emails with
+ * Hibernate, first mapped with IDENTITY ids as Email was before (every insert is a separate round trip, batching is
+ * off), then with the pooled sequence of Email (one sequence call per 50 ids, inserts batched by 50), and reports rows
+ * per second of both. Batching settings are the same as in application.properties.
+ * Without arguments runs against in-memory H2 with the tables created by the harness; there is no network round
+ * trip, so the difference is smaller than with a database server. Pass JDBC url, user and password of PostgreSQL
+ * with Liquibase changelog applied to measure it there (add reWriteBatchedInserts=true to the url as the application
+ * does); a customer is created for the emails and deleted with them afterwards.
+ * Run after mvn test-compile, e.g.
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt;
+ * net.vasilydemin.customercontacts.entity.EmailInsertBenchmark 100000
+ * "jdbc:postgresql://localhost:5432/customers?reWriteBatchedInserts=true" user password
+ */
+public class EmailInsertBenchmark {
+
+    private static final String H2_URL = "jdbc:h2:mem:emailinsertbenchmark;DB_CLOSE_DELAY=-1";
+    private static final int BATCH_SIZE = 50;
+
+    /**
+     * Email mapped the way it was before pooled sequences
+     */
+    @Entity(name = "identity_emails")
+    @Table(name = "emails")
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    public static class IdentityEmail {
+
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        private Long id;
+
+        private Long customerId;
+
+        private String email;
+
+    }
+
+    public static void main(String[] args) throws SQLException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        String url = args.length > 1 ? args[1] : H2_URL;
+        String user = args.length > 2 ? args[2] : "sa";
+        String password = args.length > 3 ? args[3] : "";
+
+        try (Connection connection = DriverManager.getConnection(url, user, password)) {
+            if(url.equals(H2_URL)) {
+                createTables(connection);
+            }
+            long customerId = createCustomer(connection);
+            try (SessionFactory sessionFactory = new Configuration()
+                    .addAnnotatedClass(Email.class)
+                    .addAnnotatedClass(IdentityEmail.class)
+                    // column names as Spring Boot maps them
+                    .setPhysicalNamingStrategy(new CamelCaseToUnderscoresNamingStrategy())
+                    .setProperty(AvailableSettings.JAKARTA_JDBC_URL, url)
+                    .setProperty(AvailableSettings.JAKARTA_JDBC_USER, user)
+                    .setProperty(AvailableSettings.JAKARTA_JDBC_PASSWORD, password)
+                    .setProperty(AvailableSettings.STATEMENT_BATCH_SIZE, String.valueOf(BATCH_SIZE))
+                    .setProperty(AvailableSettings.ORDER_INSERTS, "true")
+                    .setProperty(AvailableSettings.ORDER_UPDATES, "true")
+                    .buildSessionFactory()) {
+                // the first round warms up the JIT and the database
+                for(int round = 0; round < 2; round++) {
+                    int roundRows = round == 0 ? Math.max(1, rows / 10) : rows;
+                    double identity = rowsPerSecond(sessionFactory, roundRows,
+                            i -> new IdentityEmail(null, customerId, email("identity", i)));
+                    deleteEmails(connection, customerId);
+                    double sequence = rowsPerSecond(sessionFactory, roundRows,
+                            i -> new Email(null, customerId, email("sequence", i)));
+                    deleteEmails(connection, customerId);
+                    if(round > 0) {
+                        System.out.printf("%d emails: IDENTITY %.0f rows/s, pooled sequence %.0f rows/s (x%.1f)%n",
+                                rows, identity, sequence, sequence / identity);
+                    }
+                }
+            } finally {
+                deleteCustomer(connection, customerId);
+            }
+        }
+    }
+
+    private static double rowsPerSecond(SessionFactory sessionFactory, int rows, Function<Integer, Object> entity) {
+        long start = System.nanoTime();
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            for(int i = 0; i < rows; i++) {
+                session.persist(entity.apply(i));
+                if(i % BATCH_SIZE == BATCH_SIZE - 1) {
+                    session.flush();
+                    session.clear();
+                }
+            }
+            session.getTransaction().commit();
+        }
+        return rows / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static String email(String mode, int i) {
+        return mode + i + "@benchmark.example.com";
+    }
+
+    /**
+     * Tables and sequence as bigserial columns of Liquibase changelog with sequence increment of changeset 5
+     */
+    private static void createTables(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE SEQUENCE customers_id_seq INCREMENT BY 50");
+            statement.execute("CREATE TABLE customers (id bigint DEFAULT NEXT VALUE FOR customers_id_seq PRIMARY KEY, "
+                    + "name varchar(255))");
+            statement.execute("CREATE SEQUENCE emails_id_seq INCREMENT BY 50");
+            statement.execute("CREATE TABLE emails (id bigint DEFAULT NEXT VALUE FOR emails_id_seq PRIMARY KEY, "
+                    + "customer_id bigint REFERENCES customers(id) ON DELETE CASCADE, email varchar(255))");
+            statement.execute("CREATE UNIQUE INDEX unique_email ON emails (email)");
+        }
+    }
+
+    private static long createCustomer(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO customers (name) VALUES (?)",
+                new String[] {"id"})) {
+            statement.setString(1, "Email insert benchmark " + UUID.randomUUID());
+            statement.executeUpdate();
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                keys.next();
+                return keys.getLong(1);
+            }
+        }
+    }
+
+    private static void deleteEmails(Connection connection, long customerId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM emails WHERE customer_id = ?")) {
+            statement.setLong(1, customerId);
+            statement.executeUpdate();
+        }
+    }
+
+    private static void deleteCustomer(Connection connection, long customerId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM customers WHERE id = ?")) {
+            statement.setLong(1, customerId);
+            statement.executeUpdate();
+        }
+    }
+
+}
@@ -0,0 +1,215 @@
+package net.vasilydemin.customercontacts.repository;
+
+import net.vasilydemin.customercontacts.dto.CustomerDto;
+import net.vasilydemin.customercontacts.dto.EmailDto;
+import net.vasilydemin.customercontacts.entity.Customer;
+import net.vasilydemin.customercontacts.entity.Email;
+import net.vasilydemin.customercontacts.mapper.CustomerMapper;
+import net.vasilydemin.customercontacts.mapper.EmailMapper;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.function.BiFunction;
+
+/**
+ * Standalone harness for DTO projection reads (not a test, surefire does not run it): reads emails of a customer and
+ * a page of customers with Hibernate, first as entities copied through EmailMapper and CustomerMapper as the services
+ * did before, then with the JPQL constructor expressions of EmailRepository and CustomerRepository. Every read is a
+ * read-only transaction of its own session, set up the way Spring sets up @Transactional(readOnly = true) for
+ * Hibernate (read-only session, manual flush). Reports bytes allocated per read by the reading thread (the counter
+ * JMH -prof gc reports as gc.alloc.rate.norm) and reads per second of both paths.
+ * Without arguments runs against in-memory H2 with the tables created by the harness. Pass JDBC url, user and
+ * password of PostgreSQL with Liquibase changelog applied to measure it there; customers are created for the reads
+ * and deleted with their emails afterwards.
+ * Run after mvn test-compile, e.g.
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt;
+ * net.vasilydemin.customercontacts.repository.DtoProjectionAllocationBenchmark 10000 20000
+ * "jdbc:postgresql://localhost:5432/customers" user password
+ */
+public class DtoProjectionAllocationBenchmark {
+
+    private static final String H2_URL = "jdbc:h2:mem:dtoprojectionallocationbenchmark;DB_CLOSE_DELAY=-1";
+    private static final int EMAILS_PER_CUSTOMER = 5;
+    private static final int PAGE_SIZE = 100;
+    private static final int BATCH_SIZE = 1_000;
+
+    private static final String EMAIL_ENTITIES = "select e from emails e where e.customerId = :customerId "
+            + "order by e.id";
+    private static final String EMAIL_DTOS = "select new net.vasilydemin.customercontacts.dto.EmailDto(e.id, "
+            + "e.customerId, e.email) from emails e where e.customerId = :customerId order by e.id";
+    private static final String CUSTOMER_ENTITIES = "select c from customers c where c.id > :afterId order by c.id";
+    private static final String CUSTOMER_DTOS = "select new net.vasilydemin.customercontacts.dto.CustomerDto(c.id, "
+            + "c.name) from customers c where c.id > :afterId order by c.id";
+
+    /**
+     * Read path under measurement: takes the session and a customer id, returns DTOs
+     */
+    private interface Read extends BiFunction<Session, Long, List<?>> {
+    }
+
+    public static void main(String[] args) throws SQLException {
+        int customers = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int reads = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        String url = args.length > 2 ? args[2] : H2_URL;
+        String user = args.length > 3 ? args[3] : "sa";
+        String password = args.length > 4 ? args[4] : "";
+
+        EmailMapper emailMapper = new EmailMapper();
+        CustomerMapper customerMapper = new CustomerMapper();
+        Read emailEntities = (session, customerId) -> session.createQuery(EMAIL_ENTITIES, Email.class)
+                .setParameter("customerId", customerId).getResultStream().map(emailMapper::entityToDto).toList();
+        Read emailDtos = (session, customerId) -> session.createQuery(EMAIL_DTOS, EmailDto.class)
+                .setParameter("customerId", customerId).getResultList();
+        Read customerEntities = (session, customerId) -> session.createQuery(CUSTOMER_ENTITIES, Customer.class)
+                .setParameter("afterId", customerId).setMaxResults(PAGE_SIZE).getResultStream()
+                .map(customerMapper::entityToDto).toList();
+        Read customerDtos = (session, customerId) -> session.createQuery(CUSTOMER_DTOS, CustomerDto.class)
+                .setParameter("afterId", customerId).setMaxResults(PAGE_SIZE).getResultList();
+
+        try (Connection connection = DriverManager.getConnection(url, user, password)) {
+            if(url.equals(H2_URL)) {
+                createTables(connection);
+            }
+            String namePrefix = "DTO projection benchmark " + UUID.randomUUID() + " ";
+            long[] customerIds = createCustomers(connection, namePrefix, customers);
+            try (SessionFactory sessionFactory = new Configuration()
+                    .addAnnotatedClass(Customer.class)
+                    .addAnnotatedClass(Email.class)
+                    // column names as Spring Boot maps them
+                    .setPhysicalNamingStrategy(new CamelCaseToUnderscoresNamingStrategy())
+                    .setProperty(AvailableSettings.JAKARTA_JDBC_URL, url)
+                    .setProperty(AvailableSettings.JAKARTA_JDBC_USER, user)
+                    .setProperty(AvailableSettings.JAKARTA_JDBC_PASSWORD, password)
+                    .buildSessionFactory()) {
+                // the first round warms up the JIT and the database
+                for(int round = 0; round < 2; round++) {
+                    int roundReads = round == 0 ? Math.max(1, reads / 10) : reads;
+                    compare(round > 0, "emails of a customer", sessionFactory, customerIds, roundReads,
+                            emailEntities, emailDtos);
+                    compare(round > 0, "page of " + PAGE_SIZE + " customers", sessionFactory, customerIds,
+                            roundReads, customerEntities, customerDtos);
+                }
+            } finally {
+                deleteCustomers(connection, namePrefix);
+            }
+        }
+    }
+
+    private static void compare(boolean report, String title, SessionFactory sessionFactory, long[] customerIds,
+                                int reads, Read entities, Read dtos) {
+        double[] entityResult = measure(sessionFactory, customerIds, reads, entities);
+        double[] dtoResult = measure(sessionFactory, customerIds, reads, dtos);
+        if(report) {
+            System.out.printf("%s: entities %.0f bytes/read, %.0f reads/s; DTO projection %.0f bytes/read, "
+                            + "%.0f reads/s (%.0f%% less allocated)%n", title, entityResult[0], entityResult[1],
+                    dtoResult[0], dtoResult[1], 100 * (1 - dtoResult[0] / entityResult[0]));
+        }
+    }
+
+    /**
+     * @return bytes allocated per read and reads per second
+     */
+    private static double[] measure(SessionFactory sessionFactory, long[] customerIds, int reads, Read read) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        // the same ids for both paths
+        SplittableRandom random = new SplittableRandom(1);
+        int found = 0;
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for(int i = 0; i < reads; i++) {
+            long customerId = customerIds[random.nextInt(customerIds.length)];
+            try (Session session = sessionFactory.openSession()) {
+                session.setDefaultReadOnly(true);
+                session.setHibernateFlushMode(FlushMode.MANUAL);
+                session.beginTransaction();
+                found += read.apply(session, customerId).size();
+                session.getTransaction().commit();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        if(found == 0) {
+            throw new IllegalStateException("Nothing was read");
+        }
+        return new double[] {(double) allocated / reads, reads / (nanos / 1e9)};
+    }
+
+    /**
+     * Tables as in Liquibase changelog, without the columns and indexes the reads don't use
+     */
+    private static void createTables(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE customers (id bigint AUTO_INCREMENT PRIMARY KEY, name varchar(255))");
+            statement.execute("CREATE TABLE emails (id bigint AUTO_INCREMENT PRIMARY KEY, "
+                    + "customer_id bigint REFERENCES customers(id) ON DELETE CASCADE, email varchar(255))");
+            statement.execute("CREATE INDEX emails_customer_id_idx ON emails (customer_id)");
+        }
+    }
+
+    /**
+     * Inserts customers named namePrefix + number with EMAILS_PER_CUSTOMER emails each
+     * @return ids of the customers
+     */
+    private static long[] createCustomers(Connection connection, String namePrefix, int customers)
+            throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO customers (name) VALUES (?)")) {
+            for(int i = 0; i < customers; i++) {
+                statement.setString(1, namePrefix + i);
+                statement.addBatch();
+                if(i % BATCH_SIZE == BATCH_SIZE - 1) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+        List<Long> ids = new ArrayList<>(customers);
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT id FROM customers WHERE name LIKE ? ORDER BY id")) {
+            statement.setString(1, namePrefix + "%");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while(resultSet.next()) {
+                    ids.add(resultSet.getLong(1));
+                }
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO emails (customer_id, email) VALUES (?, ?)")) {
+            int batched = 0;
+            for(long id : ids) {
+                for(int j = 0; j < EMAILS_PER_CUSTOMER; j++) {
+                    statement.setLong(1, id);
+                    statement.setString(2, "customer" + id + "." + j + "@benchmark.example.com");
+                    statement.addBatch();
+                    if(++batched % BATCH_SIZE == 0) {
+                        statement.executeBatch();
+                    }
+                }
+            }
+            statement.executeBatch();
+        }
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static void deleteCustomers(Connection connection, String namePrefix) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM customers WHERE name LIKE ?")) {
+            statement.setString(1, namePrefix + "%");
+            statement.executeUpdate();
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+package net.vasilydemin.customercontacts.repository;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks with EXPLAIN that repository queries use indexes created by Liquibase changelog. Repository methods are
+ * called and the SQL they have sent to the database is explained, so the test follows changes of the queries. Runs
+ * against the database with Liquibase changelog applied
+ */
+@SpringBootTest
+@Transactional
+public class RepositoryIndexesTest {
+
+    /**
+     * Remembers the last SQL statement prepared by Hibernate
+     */
+    static class LastStatement implements StatementInspector {
+
+        private volatile String sql;
+
+        @Override
+        public String inspect(String sql) {
+            this.sql = sql;
+            return sql;
+        }
+
+    }
+
+    @TestConfiguration
+    static class LastStatementConfiguration {
+
+        @Bean
+        public LastStatement lastStatement() {
+            return new LastStatement();
+        }
+
+        @Bean
+        public HibernatePropertiesCustomizer statementInspectorCustomizer(LastStatement lastStatement) {
+            return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, lastStatement);
+        }
+
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LastStatement lastStatement;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private EmailRepository emailRepository;
+
+    @Autowired
+    private PhoneRepository phoneRepository;
+
+    @BeforeEach
+    public void disableSequentialScans() {
+        // Test tables are tiny, so planner would prefer sequential scan even with the index in place
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+    }
+
+    @Test
+    public void findAllByCustomerIdUsesIndexTest() {
+        assertThat(explain(() -> emailRepository.findAllEmailDtosByCustomerId(1L), 1L))
+                .contains("emails_customer_id_idx").doesNotContain("Seq Scan");
+        assertThat(explain(() -> phoneRepository.findAllPhoneDtosByCustomerId(1L), 1L))
+                .contains("phones_customer_id_idx").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    public void findAllByCustomerIdInUsesIndexTest() {
+        assertThat(explain(() -> emailRepository.findAllEmailDtosByCustomerIdIn(List.of(1L, 2L, 3L)), 1L))
+                .contains("emails_customer_id_idx").doesNotContain("Seq Scan on emails");
+        assertThat(explain(() -> phoneRepository.findAllPhoneDtosByCustomerIdIn(List.of(1L, 2L, 3L)), 1L))
+                .contains("phones_customer_id_idx").doesNotContain("Seq Scan on phones");
+    }
+
+    @Test
+    public void findAllContactsByCustomerIdUsesIndexTest() {
+        assertThat(explain(() -> customerRepository.findAllContactsByCustomerId(1L), 1L))
+                .contains("emails_customer_id_idx").contains("phones_customer_id_idx").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    public void cascadeDeleteUsesIndexTest() {
+        // These are the statements "on delete cascade" foreign keys run for every deleted customer
+        assertThat(explain("DELETE FROM ONLY emails WHERE customer_id = 1"))
+                .contains("emails_customer_id_idx").doesNotContain("Seq Scan");
+        assertThat(explain("DELETE FROM ONLY phones WHERE customer_id = 1"))
+                .contains("phones_customer_id_idx").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    public void ignoreCaseLookupsUseIndexTest() {
+        assertThat(explain(() -> customerRepository.findCustomerDtoByNameIgnoreCase("Vasily Demin"), "Vasily Demin"))
+                .contains("unique_customer_name").doesNotContain("Seq Scan");
+        assertThat(explain(() -> emailRepository.findEmailByEmailIgnoreCase("VVDemin@t2.ru"), "VVDemin@t2.ru"))
+                .contains("unique_email").doesNotContain("Seq Scan");
+        assertThat(explain(() -> phoneRepository.findAllByPhoneKeyIn(List.of(79012345678L)), 79012345678L))
+                .contains("unique_phone_key").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    public void emailUniquenessIgnoresCaseTest() {
+        Long customerId = jdbcTemplate.queryForObject(
+                "INSERT INTO customers (name) VALUES ('Vasily Demin') RETURNING id", Long.class);
+        jdbcTemplate.update("INSERT INTO emails (customer_id, email) VALUES (?, 'vvdemin@t2.ru')", customerId);
+        assertThatThrownBy(() -> jdbcTemplate.update(
+                "INSERT INTO emails (customer_id, email) VALUES (?, 'VVDemin@T2.ru')", customerId))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    /**
+     * Calls repository method and explains the statement it has sent to the database
+     * @param parameter value bound to every parameter of the statement
+     */
+    private String explain(Runnable repositoryCall, Object parameter) {
+        lastStatement.sql = null;
+        repositoryCall.run();
+        String sql = lastStatement.sql;
+        assertThat(sql).isNotNull();
+        int parameters = (int) sql.chars().filter(c -> c == '?').count();
+        return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class,
+                Collections.nCopies(parameters, parameter).toArray()));
+    }
+
+    private String explain(String sql) {
+        return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class));
+    }
+
+}
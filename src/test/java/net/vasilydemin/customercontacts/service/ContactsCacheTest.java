@@ -0,0 +1,48 @@
+package net.vasilydemin.customercontacts.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.vasilydemin.customercontacts.configuration.ReplicaRoutingDataSource;
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ContactsCacheTest {
+
+    private final ContactsCache contactsCache = new ContactsCache(
+            new ContactsJsonCache(new ObjectMapper(), true, 1L << 20, 300L, false, 1024),
+            1000L, 300L, false, 0L, 60_000L, false);
+
+    @Test
+    public void invalidateAllSkipsNullIdsTest() {
+        contactsCache.get(1L, id -> new CustomerWithContactsDto(id, "Vasily Demin", List.of(), List.of()));
+        List<Long> customerIds = Arrays.asList(1L, null);
+
+        contactsCache.invalidateAll(customerIds);
+
+        CustomerWithContactsDto customer = contactsCache.get(1L,
+                id -> new CustomerWithContactsDto(id, "Ivan Ivanov", List.of(), List.of()));
+        assertThat(customer.getName()).isEqualTo("Ivan Ivanov");
+    }
+
+    @Test
+    public void customerIsLoadedFromPrimaryAfterInvalidationTest() {
+        contactsCache.invalidate(1L);
+
+        CustomerWithContactsDto invalidated = contactsCache.get(1L, this::loadWithDatabaseName);
+        CustomerWithContactsDto notInvalidated = contactsCache.get(2L, this::loadWithDatabaseName);
+
+        assertThat(invalidated.getName()).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+        assertThat(notInvalidated.getName()).isEqualTo("replica");
+        assertThat(ReplicaRoutingDataSource.isPinnedToPrimary()).isFalse();
+    }
+
+    private CustomerWithContactsDto loadWithDatabaseName(Long id) {
+        String database = ReplicaRoutingDataSource.isPinnedToPrimary() ? ReplicaRoutingDataSource.PRIMARY : "replica";
+        return new CustomerWithContactsDto(id, database, List.of(), List.of());
+    }
+
+}
@@ -0,0 +1,164 @@
+package net.vasilydemin.customercontacts.service;
+
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
+import net.vasilydemin.customercontacts.dto.EmailDto;
+import net.vasilydemin.customercontacts.exception.ContactsReadTimeoutException;
+import net.vasilydemin.customercontacts.repository.ContactRow;
+import net.vasilydemin.customercontacts.repository.CustomerRepository;
+import net.vasilydemin.customercontacts.repository.EmailRepository;
+import net.vasilydemin.customercontacts.repository.PhoneRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ContactsFanOutTest {
+
+    private final CustomerRepository customerRepository = mock(CustomerRepository.class);
+    private final EmailRepository emailRepository = mock(EmailRepository.class);
+    private final PhoneRepository phoneRepository = mock(PhoneRepository.class);
+
+    /**
+     * Queries in order of submission: customer, emails and phones
+     */
+    private final List<Future<?>> queries = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void slowQueryIsCancelledAfterDeadlineTest() {
+        when(customerRepository.findCustomerRowById(1L)).thenReturn(Optional.of(customerRow(1L, "Vasily Demin")));
+        when(emailRepository.findAllEmailDtosByCustomerId(1L)).thenReturn(List.of());
+        when(phoneRepository.findAllPhoneDtosByCustomerId(1L)).thenAnswer(invocation -> sleep());
+        ContactsFanOut contactsFanOut = createFanOut(50L);
+
+        assertThatThrownBy(() -> contactsFanOut.readAllContactsByCustomerId(1L))
+                .isInstanceOf(ContactsReadTimeoutException.class);
+        assertThat(queries.get(2).isCancelled()).isTrue();
+        contactsFanOut.shutdown();
+    }
+
+    @Test
+    public void contactsOfMissingCustomerAreCancelledTest() {
+        when(customerRepository.findCustomerRowById(2L)).thenReturn(Optional.empty());
+        when(emailRepository.findAllEmailDtosByCustomerId(2L)).thenAnswer(invocation -> sleep());
+        when(phoneRepository.findAllPhoneDtosByCustomerId(2L)).thenAnswer(invocation -> sleep());
+        ContactsFanOut contactsFanOut = createFanOut(10_000L);
+
+        assertThat(contactsFanOut.readAllContactsByCustomerId(2L)).isEmpty();
+        assertThat(queries.get(1).isCancelled()).isTrue();
+        assertThat(queries.get(2).isCancelled()).isTrue();
+        verify(customerRepository, never()).findVersionById(2L);
+        contactsFanOut.shutdown();
+    }
+
+    @Test
+    public void customerIsReadWithVersionTest() {
+        when(customerRepository.findCustomerRowById(4L)).thenReturn(Optional.of(customerRow(4L, "Petr Petrov")));
+        when(customerRepository.findVersionById(4L)).thenReturn(Optional.of(3L));
+        when(emailRepository.findAllEmailDtosByCustomerId(4L)).thenReturn(List.of(
+                new EmailDto(1L, 4L, "petrov@mail.org")));
+        when(phoneRepository.findAllPhoneDtosByCustomerId(4L)).thenReturn(List.of());
+        ContactsFanOut contactsFanOut = createFanOut(10_000L);
+
+        assertThat(contactsFanOut.readAllContactsByCustomerId(4L)).contains(new CustomerWithContactsDto(4L,
+                "Petr Petrov", List.of("petrov@mail.org"), List.of(), 3L));
+        contactsFanOut.shutdown();
+    }
+
+    @Test
+    public void customerChangedDuringReadHasNoVersionTest() {
+        when(customerRepository.findCustomerRowById(4L)).thenReturn(Optional.of(customerRow(4L, "Petr Petrov")));
+        when(customerRepository.findVersionById(4L)).thenReturn(Optional.of(4L));
+        when(emailRepository.findAllEmailDtosByCustomerId(4L)).thenReturn(List.of(
+                new EmailDto(1L, 4L, "petrov@mail.org")));
+        when(phoneRepository.findAllPhoneDtosByCustomerId(4L)).thenReturn(List.of());
+        ContactsFanOut contactsFanOut = createFanOut(10_000L);
+
+        assertThat(contactsFanOut.readAllContactsByCustomerId(4L)).contains(new CustomerWithContactsDto(4L,
+                "Petr Petrov", List.of("petrov@mail.org"), List.of(), CustomerWithContactsDto.NO_VERSION));
+        contactsFanOut.shutdown();
+    }
+
+    @Test
+    public void failedQueryCancelsOtherQueriesTest() {
+        CountDownLatch started = new CountDownLatch(1);
+        when(customerRepository.findCustomerRowById(3L)).thenReturn(Optional.of(customerRow(3L, "Ivan Ivanov")));
+        when(emailRepository.findAllEmailDtosByCustomerId(3L)).thenAnswer(invocation -> {
+            started.await();
+            throw new IllegalStateException("Emails query failed");
+        });
+        when(phoneRepository.findAllPhoneDtosByCustomerId(3L)).thenAnswer(invocation -> {
+            started.countDown();
+            return sleep();
+        });
+        ContactsFanOut contactsFanOut = createFanOut(10_000L);
+
+        assertThatThrownBy(() -> contactsFanOut.readAllContactsByCustomerId(3L))
+                .isInstanceOf(IllegalStateException.class).hasMessage("Emails query failed");
+        assertThat(queries.get(2).isCancelled()).isTrue();
+        contactsFanOut.shutdown();
+    }
+
+    private ContactsFanOut createFanOut(long deadlineMillis) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(3, 3, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>()) {
+            @Override
+            protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+                RunnableFuture<T> query = super.newTaskFor(callable);
+                queries.add(query);
+                return query;
+            }
+        };
+        return new ContactsFanOut(customerRepository, emailRepository, phoneRepository,
+                mock(PlatformTransactionManager.class), true, deadlineMillis, executor);
+    }
+
+    private static ContactRow customerRow(Long id, String name) {
+        return new ContactRow() {
+            @Override
+            public Long getCustomerId() {
+                return id;
+            }
+
+            @Override
+            public String getType() {
+                return "customer";
+            }
+
+            @Override
+            public String getValue() {
+                return name;
+            }
+
+            @Override
+            public Long getVersion() {
+                return 3L;
+            }
+        };
+    }
+
+    private static List<Object> sleep() {
+        try {
+            Thread.sleep(10_000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return List.of();
+    }
+
+}
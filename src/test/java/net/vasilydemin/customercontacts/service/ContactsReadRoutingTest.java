@@ -0,0 +1,165 @@
+package net.vasilydemin.customercontacts.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.vasilydemin.customercontacts.configuration.ReplicaRoutingDataSource;
+import net.vasilydemin.customercontacts.dto.EmailDto;
+import net.vasilydemin.customercontacts.dto.PhoneDto;
+import net.vasilydemin.customercontacts.mapper.CustomerMapper;
+import net.vasilydemin.customercontacts.repository.ContactRow;
+import net.vasilydemin.customercontacts.repository.CustomerRepository;
+import net.vasilydemin.customercontacts.repository.EmailRepository;
+import net.vasilydemin.customercontacts.repository.PhoneRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Contacts cache misses are loaded outside of @Transactional methods, these tests check where their queries go.
+ * Two embedded H2 databases stand in for the primary database and the replica, each of them knows its own name;
+ * repository mocks return customer named after the database they have queried
+ */
+public class ContactsReadRoutingTest {
+
+    private static final String REPLICA = "replica-0";
+
+    private final CustomerRepository customerRepository = mock(CustomerRepository.class);
+    private final EmailRepository emailRepository = mock(EmailRepository.class);
+    private final PhoneRepository phoneRepository = mock(PhoneRepository.class);
+    private final CustomerIdFilter customerIdFilter = mock(CustomerIdFilter.class);
+    private final ContactsFanOut disabledFanOut = mock(ContactsFanOut.class);
+
+    private EmbeddedDatabase primary;
+    private EmbeddedDatabase replica;
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+    private ContactsCache contactsCache;
+
+    @BeforeEach
+    public void createDatabases() {
+        primary = createDatabase(ReplicaRoutingDataSource.PRIMARY);
+        replica = createDatabase(REPLICA);
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(List.of(REPLICA));
+        routingDataSource.setTargetDataSources(Map.of(ReplicaRoutingDataSource.PRIMARY, primary, REPLICA, replica));
+        routingDataSource.afterPropertiesSet();
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        contactsCache = new ContactsCache(new ContactsJsonCache(new ObjectMapper(), true, 1L << 20, 300L, false, 1024),
+                1000L, 300L, false, 0L, 60_000L, false);
+
+        when(customerIdFilter.mightExist(1L)).thenReturn(true);
+        when(customerRepository.findAllContactsByCustomerId(1L))
+                .thenAnswer(invocation -> List.of(customerRow(1L, databaseName())));
+        when(customerRepository.findCustomerRowById(1L))
+                .thenAnswer(invocation -> Optional.of(customerRow(1L, databaseName())));
+        when(customerRepository.findVersionById(1L)).thenReturn(Optional.of(1L));
+        when(emailRepository.findAllEmailDtosByCustomerId(1L))
+                .thenAnswer(invocation -> List.of(new EmailDto(1L, 1L, databaseName() + "@t2.ru")));
+        when(phoneRepository.findAllPhoneDtosByCustomerId(1L))
+                .thenAnswer(invocation -> List.of(new PhoneDto(1L, 1L, databaseName())));
+    }
+
+    @AfterEach
+    public void shutdownDatabases() {
+        ReplicaRoutingDataSource.unpin();
+        primary.shutdown();
+        replica.shutdown();
+    }
+
+    @Test
+    public void cacheMissIsReadFromReplicaTest() {
+        CustomerService customerService = createService(disabledFanOut);
+
+        assertThat(customerService.readAllContactsByCustomerId(1L).getName()).isEqualTo(REPLICA);
+    }
+
+    @Test
+    public void missAfterInvalidationIsReadFromPrimaryTest() {
+        CustomerService customerService = createService(disabledFanOut);
+        assertThat(customerService.readAllContactsByCustomerId(1L).getName()).isEqualTo(REPLICA);
+
+        contactsCache.invalidate(1L);
+        assertThat(customerService.readAllContactsByCustomerId(1L).getName())
+                .isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+    }
+
+    @Test
+    public void fanOutQueriesAreReadFromReplicaTest() {
+        ContactsFanOut contactsFanOut = new ContactsFanOut(customerRepository, emailRepository, phoneRepository,
+                transactionManager, true, 10_000L);
+        CustomerService customerService = createService(contactsFanOut);
+
+        assertThat(customerService.readAllContactsByCustomerId(1L))
+                .hasFieldOrPropertyWithValue("name", REPLICA)
+                .hasFieldOrPropertyWithValue("emails", List.of(REPLICA + "@t2.ru"))
+                .hasFieldOrPropertyWithValue("phones", List.of(REPLICA));
+
+        contactsCache.invalidate(1L);
+        assertThat(customerService.readAllContactsByCustomerId(1L))
+                .hasFieldOrPropertyWithValue("name", ReplicaRoutingDataSource.PRIMARY)
+                .hasFieldOrPropertyWithValue("emails", List.of(ReplicaRoutingDataSource.PRIMARY + "@t2.ru"))
+                .hasFieldOrPropertyWithValue("phones", List.of(ReplicaRoutingDataSource.PRIMARY));
+        contactsFanOut.shutdown();
+    }
+
+    private CustomerService createService(ContactsFanOut contactsFanOut) {
+        return new CustomerService(customerRepository, new CustomerMapper(), emailRepository, phoneRepository,
+                contactsCache, customerIdFilter, mock(CustomerNameIndex.class), mock(ContactOwnerIndex.class),
+                contactsFanOut, mock(ContactsJsonCache.class), transactionManager);
+    }
+
+    private String databaseName() {
+        return jdbcTemplate.queryForObject("SELECT name FROM database_name", String.class);
+    }
+
+    private EmbeddedDatabase createDatabase(String name) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName(name + "-" + UUID.randomUUID())
+                .build();
+        JdbcTemplate template = new JdbcTemplate(database);
+        template.execute("CREATE TABLE database_name (name varchar(255))");
+        template.update("INSERT INTO database_name (name) VALUES (?)", name);
+        return database;
+    }
+
+    private static ContactRow customerRow(Long id, String name) {
+        return new ContactRow() {
+            @Override
+            public Long getCustomerId() {
+                return id;
+            }
+
+            @Override
+            public String getType() {
+                return "customer";
+            }
+
+            @Override
+            public String getValue() {
+                return name;
+            }
+
+            @Override
+            public Long getVersion() {
+                return 1L;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,84 @@
+package net.vasilydemin.customercontacts.service;
+
+import net.vasilydemin.customercontacts.dto.CustomerDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stress test of CustomerService.createCustomer: many threads create customers with the same names (in different
+ * letters case) at the same time, every name must end up in exactly one customer record.
+ * Runs against the database with Liquibase changelog applied
+ */
+@SpringBootTest
+public class CreateCustomerConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int NAMES = 20;
+    private static final int ROUNDS = 10;
+
+    private final String namePrefix = "Concurrency test " + UUID.randomUUID() + " ";
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void deleteTestCustomers() {
+        jdbcTemplate.update("DELETE FROM customers WHERE lower(name) LIKE lower(?)", namePrefix + "%");
+    }
+
+    @Test
+    public void createCustomerCreatesOneRecordPerNameTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        List<Future<List<CustomerDto>>> futures = new ArrayList<>();
+        try {
+            for(int thread = 0; thread < THREADS; thread++) {
+                boolean upperCase = thread % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    List<CustomerDto> created = new ArrayList<>();
+                    for(int round = 0; round < ROUNDS; round++) {
+                        barrier.await();
+                        for(int i = 0; i < NAMES; i++) {
+                            String name = namePrefix + round + " " + i;
+                            created.add(customerService.createCustomer(upperCase
+                                    ? name.toUpperCase(Locale.ROOT) : name));
+                        }
+                    }
+                    return created;
+                }));
+            }
+            ConcurrentMap<String, Long> idsByName = new ConcurrentHashMap<>();
+            for(Future<List<CustomerDto>> future : futures) {
+                for(CustomerDto customer : future.get(1, TimeUnit.MINUTES)) {
+                    Long id = idsByName.putIfAbsent(customer.getName().toLowerCase(Locale.ROOT), customer.getId());
+                    assertThat(id == null ? customer.getId() : id).isEqualTo(customer.getId());
+                }
+            }
+            assertThat(idsByName).hasSize(NAMES * ROUNDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Integer records = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM customers WHERE lower(name) LIKE lower(?)", Integer.class, namePrefix + "%");
+        Integer distinctNames = jdbcTemplate.queryForObject(
+                "SELECT count(DISTINCT lower(name)) FROM customers WHERE lower(name) LIKE lower(?)",
+                Integer.class, namePrefix + "%");
+        assertThat(records).isEqualTo(NAMES * ROUNDS).isEqualTo(distinctNames);
+    }
+
+}
@@ -0,0 +1,103 @@
+package net.vasilydemin.customercontacts.service;
+
+import net.vasilydemin.customercontacts.repository.CustomerRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CustomerIdFilterTest {
+
+    private static final int EXPECTED_SIZE = 10_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final CustomerRepository customerRepository = mock(CustomerRepository.class);
+
+    @BeforeEach
+    public void mockCustomerIds() {
+        // even ids from 2 to 20000 exist, sequence was moved further by pre-allocated block
+        when(customerRepository.findIdSequenceLastValue()).thenReturn(20_050L);
+        when(customerRepository.streamAllIds())
+                .thenAnswer(invocation -> LongStream.rangeClosed(1, EXPECTED_SIZE).map(i -> i * 2).boxed());
+    }
+
+    @Test
+    public void allIdsMightExistBeforeBuildTest() {
+        CustomerIdFilter customerIdFilter = createFilter(true);
+
+        assertThat(customerIdFilter.mightExist(1L)).isTrue();
+        assertThat(customerIdFilter.mightExist(3L)).isTrue();
+    }
+
+    @Test
+    public void disabledFilterIsNotBuiltTest() {
+        CustomerIdFilter customerIdFilter = createFilter(false);
+        customerIdFilter.rebuild();
+
+        assertThat(LongStream.rangeClosed(1, 1000).allMatch(customerIdFilter::mightExist)).isTrue();
+    }
+
+    @Test
+    public void existingIdsMightExistTest() {
+        CustomerIdFilter customerIdFilter = createFilter(true);
+        customerIdFilter.rebuild();
+
+        assertThat(LongStream.rangeClosed(1, EXPECTED_SIZE).map(i -> i * 2).allMatch(customerIdFilter::mightExist))
+                .isTrue();
+    }
+
+    @Test
+    public void unknownIdsAreRejectedWithConfiguredRateTest() {
+        CustomerIdFilter customerIdFilter = createFilter(true);
+        customerIdFilter.rebuild();
+
+        long falsePositives = LongStream.rangeClosed(0, EXPECTED_SIZE - 1).map(i -> i * 2 + 1)
+                .filter(customerIdFilter::mightExist).count();
+        assertThat(falsePositives).isLessThan((long) (EXPECTED_SIZE * FALSE_POSITIVE_RATE * 2));
+    }
+
+    @Test
+    public void idsAboveSequenceValueMightExistTest() {
+        CustomerIdFilter customerIdFilter = createFilter(true);
+        customerIdFilter.rebuild();
+
+        assertThat(LongStream.rangeClosed(20_051, 21_000).allMatch(customerIdFilter::mightExist)).isTrue();
+    }
+
+    @Test
+    public void addedIdMightExistTest() {
+        CustomerIdFilter customerIdFilter = createFilter(true);
+        customerIdFilter.rebuild();
+        long unknownId = LongStream.rangeClosed(0, EXPECTED_SIZE - 1).map(i -> i * 2 + 1)
+                .filter(id -> !customerIdFilter.mightExist(id)).findFirst().orElseThrow();
+
+        customerIdFilter.add(unknownId);
+
+        assertThat(customerIdFilter.mightExist(unknownId)).isTrue();
+    }
+
+    @Test
+    public void idCommittedAfterBuildMightExistTest() {
+        CustomerIdFilter customerIdFilter = createFilter(true);
+        customerIdFilter.rebuild();
+        // id was taken from the sequence before the build, its customer was committed after the build snapshot
+        long committedId = LongStream.rangeClosed(0, EXPECTED_SIZE - 1).map(i -> i * 2 + 1)
+                .filter(id -> !customerIdFilter.mightExist(id)).findFirst().orElseThrow();
+        when(customerRepository.existsById(committedId)).thenReturn(true);
+
+        assertThat(customerIdFilter.mightExist(committedId)).isTrue();
+        assertThat(customerIdFilter.mightExist(committedId)).isTrue();
+        verify(customerRepository, times(2)).existsById(committedId);
+    }
+
+    private CustomerIdFilter createFilter(boolean enabled) {
+        return new CustomerIdFilter(customerRepository, enabled, EXPECTED_SIZE, FALSE_POSITIVE_RATE);
+    }
+
+}
@@ -0,0 +1,94 @@
+package net.vasilydemin.customercontacts.service;
+
+import net.vasilydemin.customercontacts.dto.CustomerDto;
+import net.vasilydemin.customercontacts.repository.CustomerRepository;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.LongStream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Standalone harness for CustomerNameIndex (not a test, surefire does not run it): builds the index of synthetic
+ * names "First Last Number" and reports build time, average search time of selective and unselective queries and
+ * average time of a put and remove.
+ * Run after mvn test-compile, e.g.
+ * java -Xmx4g -cp target/classes:target/test-classes:&lt;dependencies&gt;
+ * net.vasilydemin.customercontacts.service.CustomerNameIndexBenchmark 2000000
+ */
+public class CustomerNameIndexBenchmark {
+
+    private static final String[] FIRST_NAMES = {"Vasily", "Ivan", "Pavel", "Anna", "Maria", "Petr", "Olga",
+            "Sergey", "Elena", "Dmitry", "Natalia", "Alexey", "Irina", "Nikolay", "Tatiana", "Andrey"};
+    private static final String[] LAST_NAMES = {"Demin", "Ivanov", "Demidov", "Kudemina", "Petrov", "Sidorova",
+            "Smirnov", "Kuznetsova", "Popov", "Vasilieva", "Sokolov", "Mikhailova", "Novikov", "Fedorova",
+            "Morozov", "Volkova", "Alekseev", "Lebedeva", "Semenov", "Egorova"};
+    /**
+     * Names of these customers (or their last words) are selective queries
+     */
+    private static final long[] SELECTIVE_IDS = {1_234, 77_777, 777_777, 1_999_999};
+    /**
+     * "ivanov" and "semenov" are the worst case of name prefix search: "Ivan Ivanov" and "Sergey Semenov" have the
+     * trigrams of the name beginning and all query trigrams, but don't start with the query
+     */
+    private static final List<String> UNSELECTIVE_QUERIES = List.of("demin", "ova", "an", "iv", "anna", "anna demin",
+            "ivanov", "semenov");
+    private static final int SEARCHES = 2_000;
+    private static final int UPDATES = 100_000;
+
+    public static void main(String[] args) {
+        int customers = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        CustomerRepository customerRepository = mock(CustomerRepository.class);
+        when(customerRepository.streamAllCustomerDtos()).thenAnswer(invocation -> LongStream
+                .rangeClosed(1, customers).mapToObj(id -> new CustomerDto(id, name(id))));
+        CustomerNameIndex customerNameIndex = new CustomerNameIndex(customerRepository, true, 0.3);
+
+        long start = System.nanoTime();
+        customerNameIndex.rebuild();
+        System.out.printf("build of %d names: %.1f s%n", customers, (System.nanoTime() - start) / 1e9);
+
+        for(long id : SELECTIVE_IDS) {
+            String name = name(id);
+            for(String query : List.of(name, name.substring(name.indexOf(' ') + 1))) {
+                System.out.printf("selective \"%s\": %.3f ms%n", query, millisPerSearch(customerNameIndex, query));
+            }
+        }
+        for(String query : UNSELECTIVE_QUERIES) {
+            System.out.printf("unselective \"%s\": %.3f ms%n", query, millisPerSearch(customerNameIndex, query));
+        }
+
+        SplittableRandom random = new SplittableRandom(1);
+        start = System.nanoTime();
+        for(int i = 0; i < UPDATES; i++) {
+            long id = random.nextLong(1, customers + 1L);
+            customerNameIndex.put(id, name(id + 1));
+            customerNameIndex.remove(random.nextLong(1, customers + 1L));
+        }
+        System.out.printf("put and remove: %.1f us%n", (System.nanoTime() - start) / 1e3 / UPDATES);
+    }
+
+    private static String name(long id) {
+        return FIRST_NAMES[(int) (id % FIRST_NAMES.length)] + " "
+                + LAST_NAMES[(int) (id / FIRST_NAMES.length % LAST_NAMES.length)] + " " + id;
+    }
+
+    private static double millisPerSearch(CustomerNameIndex customerNameIndex, String query) {
+        int found = 0;
+        // warm-up
+        for(int i = 0; i < SEARCHES / 10; i++) {
+            found += customerNameIndex.search(query, 10).size();
+        }
+        long start = System.nanoTime();
+        for(int i = 0; i < SEARCHES; i++) {
+            found += customerNameIndex.search(query, 10).size();
+        }
+        long nanos = System.nanoTime() - start;
+        if(found == 0) {
+            throw new IllegalStateException("Nothing was found by " + query);
+        }
+        return nanos / 1e6 / SEARCHES;
+    }
+
+}
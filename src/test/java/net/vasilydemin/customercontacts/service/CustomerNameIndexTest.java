@@ -0,0 +1,140 @@
+package net.vasilydemin.customercontacts.service;
+
+import net.vasilydemin.customercontacts.dto.CustomerDto;
+import net.vasilydemin.customercontacts.repository.CustomerRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CustomerNameIndexTest {
+
+    private final CustomerRepository customerRepository = mock(CustomerRepository.class);
+
+    @BeforeEach
+    public void mockCustomers() {
+        when(customerRepository.streamAllCustomerDtos()).thenAnswer(invocation -> Stream.of(
+                new CustomerDto(1L, "Vasily Demin"),
+                new CustomerDto(2L, "Ivan Ivanov"),
+                new CustomerDto(3L, "Pavel Demidov"),
+                new CustomerDto(4L, "Demin"),
+                new CustomerDto(5L, "Anna Kudemina")));
+    }
+
+    @Test
+    public void nothingIsFoundBeforeBuildTest() {
+        CustomerNameIndex customerNameIndex = createIndex(true);
+
+        assertThat(customerNameIndex.isReady()).isFalse();
+        assertThat(customerNameIndex.search("demin", 10)).isEmpty();
+    }
+
+    @Test
+    public void disabledIndexIsNotBuiltTest() {
+        CustomerNameIndex customerNameIndex = createIndex(false);
+        customerNameIndex.rebuild();
+
+        assertThat(customerNameIndex.isReady()).isFalse();
+    }
+
+    @Test
+    public void matchesAreRankedTest() {
+        CustomerNameIndex customerNameIndex = createIndex(true);
+        customerNameIndex.rebuild();
+
+        // exact match, word prefix, substring
+        assertThat(ids(customerNameIndex.search("DEMIN", 10))).containsExactly(4L, 1L, 5L);
+        assertThat(ids(customerNameIndex.search("demin", 2))).containsExactly(4L, 1L);
+        assertThat(ids(customerNameIndex.search("vasily dem", 10))).containsExactly(1L);
+    }
+
+    @Test
+    public void shortQueryMatchesBeginningsOfWordsTest() {
+        CustomerNameIndex customerNameIndex = createIndex(true);
+        customerNameIndex.rebuild();
+
+        assertThat(ids(customerNameIndex.search("iv", 10))).containsExactly(2L);
+        assertThat(ids(customerNameIndex.search("d", 10))).containsExactly(4L, 1L, 3L);
+    }
+
+    @Test
+    public void fuzzyMatchTest() {
+        CustomerNameIndex customerNameIndex = createIndex(true);
+        customerNameIndex.rebuild();
+
+        assertThat(ids(customerNameIndex.search("demn", 10))).containsExactly(4L);
+        assertThat(customerNameIndex.search("petrov", 10)).isEmpty();
+    }
+
+    @Test
+    public void nameWithQueryTrigramsInOtherOrderIsNotRankedTest() {
+        CustomerNameIndex customerNameIndex = createIndex(true);
+        customerNameIndex.rebuild();
+        customerNameIndex.put(6L, "Ivan Anovich");
+
+        // "Ivan Anovich" has every trigram of "ivanov" and the name beginning, but it is only a fuzzy match
+        assertThat(ids(customerNameIndex.search("ivanov", 10))).containsExactly(2L, 6L);
+    }
+
+    @Test
+    public void indexIsUpdatedIncrementallyTest() {
+        CustomerNameIndex customerNameIndex = createIndex(true);
+        customerNameIndex.rebuild();
+
+        customerNameIndex.put(6L, "Petr Deminov");
+        customerNameIndex.put(1L, "Vasily Petrov");
+        customerNameIndex.remove(4L);
+
+        assertThat(ids(customerNameIndex.search("demin", 10))).containsExactly(6L, 5L);
+        // "Petr Deminov" shares enough trigrams with "petrov" to be a fuzzy match after the word prefix match
+        assertThat(ids(customerNameIndex.search("petrov", 10))).containsExactly(1L, 6L);
+    }
+
+    @Test
+    public void exactMatchIsFoundAmongManySubstringMatchesTest() {
+        when(customerRepository.streamAllCustomerDtos()).thenAnswer(invocation -> Stream.concat(
+                LongStream.rangeClosed(1, 5_000).mapToObj(id -> new CustomerDto(id, "Anna Kudemina")),
+                Stream.of(new CustomerDto(10_000L, "Demin"), new CustomerDto(10_001L, "Demina Anna"))));
+        CustomerNameIndex customerNameIndex = createIndex(true);
+        customerNameIndex.rebuild();
+
+        assertThat(ids(customerNameIndex.search("demin", 3))).containsExactly(10_000L, 10_001L, 1L);
+    }
+
+    @Test
+    public void manyIncrementalUpdatesTest() {
+        CustomerNameIndex customerNameIndex = createIndex(true);
+        customerNameIndex.rebuild();
+
+        // ids are put out of order to insert into the middle of posting lists and split their chunks
+        List<Long> ids = new ArrayList<>(LongStream.rangeClosed(10, 3_009).boxed().toList());
+        Collections.shuffle(ids, new Random(1));
+        ids.forEach(id -> customerNameIndex.put(id, "Petr Petrov " + id));
+        ids.stream().filter(id -> id % 2 == 0).forEach(customerNameIndex::remove);
+
+        assertThat(ids(customerNameIndex.search("petrov", 5_000)))
+                .containsExactlyElementsOf(LongStream.rangeClosed(10, 3_009).filter(id -> id % 2 != 0).boxed()
+                        .toList());
+        assertThat(ids(customerNameIndex.search("petrov 2999", 10))).containsExactly(2_999L);
+        assertThat(customerNameIndex.search("petrov 3000", 10)).isEmpty();
+        assertThat(ids(customerNameIndex.search("demin", 10))).containsExactly(4L, 1L, 5L);
+    }
+
+    private CustomerNameIndex createIndex(boolean enabled) {
+        return new CustomerNameIndex(customerRepository, enabled, 0.3);
+    }
+
+    private static List<Long> ids(List<CustomerDto> customers) {
+        return customers.stream().map(CustomerDto::getId).toList();
+    }
+
+}
@@ -0,0 +1,92 @@
+package net.vasilydemin.customercontacts.service;
+
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.LongFunction;
+
+/**
+ * Standalone harness for OffHeapContactStore (not a test, surefire does not run it): fills a heap HashMap of DTOs and
+ * the off-heap store with the same customers having 2 emails and 2 phones each, then reports heap and direct memory
+ * used and average time of a random get.
+ * Run after mvn test-compile with a heap big enough for the HashMap, e.g.
+ * java -Xmx6g -cp target/classes:target/test-classes:&lt;dependencies&gt;
+ * net.vasilydemin.customercontacts.service.OffHeapContactStoreBenchmark 5000000
+ */
+public class OffHeapContactStoreBenchmark {
+
+    private static final int GETS = 10_000_000;
+
+    public static void main(String[] args) {
+        int customers = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+
+        long heapBefore = usedHeap();
+        Map<Long, CustomerWithContactsDto> heapMap = new HashMap<>();
+        for(long id = 1; id <= customers; id++) {
+            heapMap.put(id, customer(id));
+        }
+        long heapMapBytes = usedHeap() - heapBefore;
+        double heapMapNanos = nanosPerGet(customers, heapMap::get);
+        System.out.printf("heap HashMap of DTOs: %d MB heap, %.2f us per get%n",
+                heapMapBytes >> 20, heapMapNanos / 1000);
+        heapMap = null;
+
+        heapBefore = usedHeap();
+        long directBefore = usedDirect();
+        // log of 160 bytes per customer is enough for 2 emails and 2 phones of customer(id)
+        OffHeapContactStore store = new OffHeapContactStore(160L * customers, Long.MAX_VALUE);
+        for(long id = 1; id <= customers; id++) {
+            store.put(id, customer(id), store.generation(id));
+        }
+        long storeHeapBytes = usedHeap() - heapBefore;
+        long storeDirectBytes = usedDirect() - directBefore;
+        double storeNanos = nanosPerGet(customers, store::get);
+        System.out.printf("off-heap store: %d MB heap, %d MB direct memory, %.2f us per get (decoding included)%n",
+                Math.max(0, storeHeapBytes) >> 20, storeDirectBytes >> 20, storeNanos / 1000);
+    }
+
+    private static CustomerWithContactsDto customer(long id) {
+        return new CustomerWithContactsDto(id, "Customer " + id,
+                List.of("customer" + id + "@example.com", "customer" + id + "@mail.org"),
+                List.of("+7" + (9_000_000_000L + id), "+7" + (8_000_000_000L + id)), 1L);
+    }
+
+    private static double nanosPerGet(int customers, LongFunction<CustomerWithContactsDto> get) {
+        SplittableRandom random = new SplittableRandom(1);
+        long found = 0;
+        // warm-up
+        for(int i = 0; i < GETS / 10; i++) {
+            found += get.apply(random.nextLong(1, customers + 1L)) != null ? 1 : 0;
+        }
+        long start = System.nanoTime();
+        for(int i = 0; i < GETS; i++) {
+            found += get.apply(random.nextLong(1, customers + 1L)) != null ? 1 : 0;
+        }
+        long nanos = System.nanoTime() - start;
+        if(found == 0) {
+            throw new IllegalStateException("Nothing was found");
+        }
+        return (double) nanos / GETS;
+    }
+
+    private static long usedHeap() {
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long usedDirect() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+    }
+
+}
@@ -0,0 +1,102 @@
+package net.vasilydemin.customercontacts.service;
+
+import net.vasilydemin.customercontacts.dto.CustomerWithContactsDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapContactStoreTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+
+    @Test
+    public void storedCustomerIsReadTest() {
+        OffHeapContactStore store = createStore(1024, 4096);
+        CustomerWithContactsDto customer = new CustomerWithContactsDto(1L, "Василий Демин",
+                List.of("vvdemin@t2.ru", "vasily@mail.org"), List.of("+79012345678"), 7L);
+
+        assertThat(store.get(1L)).isNull();
+        assertThat(store.put(1L, customer, store.generation(1L))).isTrue();
+
+        assertThat(store.get(1L)).isEqualTo(customer);
+        assertThat(store.get(2L)).isNull();
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.hitCount()).isEqualTo(1);
+        assertThat(store.missCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void removedCustomerIsNotReadTest() {
+        OffHeapContactStore store = createStore(1024, 4096);
+        store.put(1L, customer(1L, "Vasily Demin"), store.generation(1L));
+        store.put(1L, customer(1L, "Ivan Ivanov"), store.generation(1L));
+
+        assertThat(store.get(1L).getName()).isEqualTo("Ivan Ivanov");
+        assertThat(store.size()).isEqualTo(1);
+
+        store.remove(1L);
+        assertThat(store.get(1L)).isNull();
+        assertThat(store.size()).isZero();
+    }
+
+    @Test
+    public void customerLoadedBeforeRemoveIsNotStoredTest() {
+        OffHeapContactStore store = createStore(1024, 4096);
+        long generation = store.generation(1L);
+        store.remove(1L);
+
+        assertThat(store.put(1L, customer(1L, "Vasily Demin"), generation)).isFalse();
+        assertThat(store.get(1L)).isNull();
+    }
+
+    @Test
+    public void expiredCustomerIsNotReadTest() {
+        OffHeapContactStore store = createStore(1024, 4096);
+        store.put(1L, customer(1L, "Vasily Demin"), store.generation(1L));
+
+        now.addAndGet(60_001L);
+        assertThat(store.get(1L)).isNull();
+    }
+
+    @Test
+    public void liveCustomersSurviveCompactionTest() {
+        OffHeapContactStore store = createStore(256, 1024);
+        for(long id = 1; id <= 2000; id++) {
+            store.put(id, customer(id, "Customer " + id), store.generation(id));
+            if(id > 10) {
+                store.remove(id - 10);
+            }
+        }
+
+        for(long id = 1991; id <= 2000; id++) {
+            assertThat(store.get(id).getName()).isEqualTo("Customer " + id);
+        }
+        assertThat(store.size()).isEqualTo(10);
+        assertThat(store.evictionCount()).isZero();
+    }
+
+    @Test
+    public void customersAreDroppedWhenStoreIsFullTest() {
+        OffHeapContactStore store = createStore(256, 1024);
+        for(long id = 1; id <= 2000; id++) {
+            assertThat(store.put(id, customer(id, "Customer " + id), store.generation(id))).isTrue();
+        }
+
+        assertThat(store.get(2000L).getName()).isEqualTo("Customer 2000");
+        assertThat(store.get(1L)).isNull();
+        assertThat(store.size()).isLessThan(2000);
+        assertThat(store.evictionCount()).isEqualTo(2000 - store.size());
+    }
+
+    private OffHeapContactStore createStore(int slabSize, long maxBytes) {
+        return new OffHeapContactStore(slabSize, maxBytes, 60_000L, now::get);
+    }
+
+    private static CustomerWithContactsDto customer(long id, String name) {
+        return new CustomerWithContactsDto(id, name, List.of(), List.of("+7901" + id));
+    }
+
+}
@@ -0,0 +1,26 @@
+package net.vasilydemin.customercontacts.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ContentCodingsTest {
+
+    @Test
+    public void gzipIsAcceptedTest() {
+        assertThat(ContentCodings.acceptsGzip("gzip")).isTrue();
+        assertThat(ContentCodings.acceptsGzip("br, GZIP, deflate")).isTrue();
+        assertThat(ContentCodings.acceptsGzip("deflate;q=1.0, gzip;q=0.5")).isTrue();
+    }
+
+    @Test
+    public void gzipIsNotAcceptedTest() {
+        assertThat(ContentCodings.acceptsGzip(null)).isFalse();
+        assertThat(ContentCodings.acceptsGzip("")).isFalse();
+        assertThat(ContentCodings.acceptsGzip("*")).isFalse();
+        assertThat(ContentCodings.acceptsGzip("br, deflate")).isFalse();
+        assertThat(ContentCodings.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(ContentCodings.acceptsGzip("br, gzip; q=0.00")).isFalse();
+    }
+
+}
@@ -0,0 +1,51 @@
+package net.vasilydemin.customercontacts.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ETagsTest {
+
+    @Test
+    public void versionIsReadFromStrongTagTest() {
+        assertThat(ETags.of(12L)).isEqualTo("\"12\"");
+        assertThat(ETags.versionOf("\"12\"")).isEqualTo(12L);
+        assertThat(ETags.versionOf(" \"0\" ")).isZero();
+    }
+
+    @Test
+    public void absentConditionHasNoVersionTest() {
+        assertThat(ETags.versionOf(null)).isNull();
+        assertThat(ETags.versionOf("")).isNull();
+        assertThat(ETags.versionOf("*")).isNull();
+    }
+
+    @Test
+    public void weakOrWrongTagNeverMatchesTest() {
+        assertThat(ETags.versionOf("W/\"12\"")).isEqualTo(ETags.NO_VERSION);
+        assertThat(ETags.versionOf("12")).isEqualTo(ETags.NO_VERSION);
+        assertThat(ETags.versionOf("\"\"")).isEqualTo(ETags.NO_VERSION);
+        assertThat(ETags.versionOf("\"abc\"")).isEqualTo(ETags.NO_VERSION);
+        assertThat(ETags.versionOf("\"-5\"")).isEqualTo(ETags.NO_VERSION);
+        assertThat(ETags.versionOf("\"1\", \"2\"")).isEqualTo(ETags.NO_VERSION);
+    }
+
+    @Test
+    public void ifNoneMatchUsesWeakComparisonTest() {
+        assertThat(ETags.matching("\"12\"", 12L)).isEqualTo("\"12\"");
+        assertThat(ETags.matching("\"11\", W/\"12\"", 12L)).isEqualTo("\"12\"");
+        assertThat(ETags.matching("*", 12L)).isEqualTo("\"12\"");
+        assertThat(ETags.matching("\"11\"", 12L)).isNull();
+        assertThat(ETags.matching("12", 12L)).isNull();
+        assertThat(ETags.matching(null, 12L)).isNull();
+    }
+
+    @Test
+    public void gzippedTagMatchesVersionTest() {
+        assertThat(ETags.ofGzipped(12L)).isEqualTo("\"12-gzip\"");
+        assertThat(ETags.matching("\"12-gzip\"", 12L)).isEqualTo("\"12-gzip\"");
+        assertThat(ETags.matching("\"11-gzip\"", 12L)).isNull();
+        assertThat(ETags.versionOf("\"12-gzip\"")).isEqualTo(ETags.NO_VERSION);
+    }
+
+}
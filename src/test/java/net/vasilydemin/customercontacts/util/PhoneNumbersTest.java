@@ -0,0 +1,38 @@
+package net.vasilydemin.customercontacts.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PhoneNumbersTest {
+
+    @Test
+    public void differentNotationsHaveSameKeyTest() {
+        assertThat(PhoneNumbers.toKey("+79012345678")).isEqualTo(79012345678L);
+        assertThat(PhoneNumbers.toKey(" +7 (901) 234-56-78 ")).isEqualTo(79012345678L);
+        assertThat(PhoneNumbers.toKey("8 901 234 56 78")).isEqualTo(79012345678L);
+        assertThat(PhoneNumbers.toKey("79012345678")).isEqualTo(79012345678L);
+        assertThat(PhoneNumbers.toKey("(901) 234-56-78")).isEqualTo(79012345678L);
+        assertThat(PhoneNumbers.toKey("007.901.234.56.78")).isEqualTo(79012345678L);
+    }
+
+    @Test
+    public void internationalNumbersKeepCountryCodeTest() {
+        assertThat(PhoneNumbers.toKey("+1 (202) 555-0123")).isEqualTo(12025550123L);
+        assertThat(PhoneNumbers.toKey("0044 20 7946 0958")).isEqualTo(442079460958L);
+        assertThat(PhoneNumbers.format(PhoneNumbers.toKey("0044 20 7946 0958"))).isEqualTo("+442079460958");
+    }
+
+    @Test
+    public void wrongNumbersHaveNoKeyTest() {
+        assertThat(PhoneNumbers.toKey(null)).isNull();
+        assertThat(PhoneNumbers.toKey("")).isNull();
+        assertThat(PhoneNumbers.toKey("12-34")).isNull();
+        assertThat(PhoneNumbers.toKey("+7 901 CALL-ME")).isNull();
+        assertThat(PhoneNumbers.toKey("+0 123 456 789")).isNull();
+        assertThat(PhoneNumbers.toKey("+1234567890123456")).isNull();
+        assertThat(PhoneNumbers.toKey("59012345678")).isNull();
+        assertThat(PhoneNumbers.toKey("vvdemin@t2.ru")).isNull();
+    }
+
+}